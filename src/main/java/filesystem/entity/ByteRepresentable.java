@@ -1,5 +1,6 @@
 package filesystem.entity;
 
+import java.nio.ByteBuffer;
 
 /**
  * Interface to transfer object to bytes.
@@ -13,4 +14,13 @@ public interface ByteRepresentable {
      * @return Returns bytes array as byte representation of given instance.
      */
     byte[] toByteArray();
+
+    /**
+     * Puts byte representation of given instance to the buffer (to avoid allocation of array).
+     *
+     * @param dst buffer to put bytes in
+     */
+    default void writeTo(ByteBuffer dst) {
+        dst.put(toByteArray());
+    }
 }
@@ -1,14 +1,19 @@
 package filesystem.entity;
 
+import static filesystem.utils.ByteArrayConverterUtils.intFromByteArray;
+
 /**
  * Custom ByteStream, after each operation internal pointer have to move ahead.
+ * Stream which isn't read till the end should be closed to free its resources.
  */
-public interface ByteStream {
+public interface ByteStream extends AutoCloseable {
     boolean hasNext();
 
     byte getByte();
 
-    int getInt();
+    default int getInt() {
+        return intFromByteArray(new byte[]{getByte(), getByte(), getByte(), getByte()});
+    }
 
     /**
      * Copies returned num of bytes to provided byte array.
@@ -20,5 +25,21 @@ public interface ByteStream {
     int getArr(byte[] arr);
 
 
-    String getString();
+    /**
+     * Strings are stored like size and bytes(not \0 byte)
+     *
+     * @return String from byte stream
+     */
+    default String getString() {
+        int size = getInt();
+        byte[] buff = new byte[size];
+        for (int i = 0; i < buff.length; i++) {
+            buff[i] = getByte();
+        }
+        return new String(buff);
+    }
+
+    @Override
+    default void close() {
+    }
 }
@@ -1,6 +1,9 @@
 package filesystem.entity.config;
 
 import filesystem.entity.exception.OneFileSystemException;
+import filesystem.service.SegmentAllocatorService;
+import filesystem.service.allocation.AllocationPolicyType;
+import filesystem.storage.StorageType;
 
 import java.io.File;
 import java.io.IOException;
@@ -14,8 +17,19 @@ public class FileSystemConfiguration {
     private final long size; // size of file system
     private final int pageSize; // pageSize (and default segment size)
     private final int numOfInodes; // regulates how many files could be created ( will be initially filled in super-block)
-    private final int concurrencyLevel; // regulates how many files could be created ( will be initially filled in super-block)
+    private final int concurrencyLevel; // num of threads expected to work with file system concurrently
     private final File file; // file to put file system in
+    private final boolean existingFileSystem; // file already has initialised file system (size, pages and inodes are stored in it)
+    private StorageType storageType = StorageType.FILE_CHANNEL; // how file system accesses the file
+    private long pageCacheSize; // how many bytes page cache can take (0 - no cache)
+    private int extentMapCacheSize = SegmentAllocatorService.DEFAULT_EXTENT_MAP_CACHE_SIZE; // how many files' extent maps are cached
+    private AllocationPolicyType allocationPolicy = AllocationPolicyType.BEST_FIT; // how free pages are chosen
+    private int allocationGroups = 1; // how many groups with independent locks pages are split on
+    private int writeBufferSize; // how many appended bytes of file are buffered before writing (0 - no buffer)
+    private int preallocationLimit; // max num of pages speculatively allocated for growing file (0 - no preallocation)
+    private int defragmentationMinSegments; // files with so many segments are defragmented in background (0 - off)
+    private long defragmentationRate; // max num of bytes moved by background defragmentation per second
+    private int inlineDataSize; // max num of bytes of file kept in its inode entry (0 - data is always in segments)
 
     private static String OS = System.getProperty("os.name").toLowerCase();
 
@@ -26,7 +40,8 @@ public class FileSystemConfiguration {
      * @param pageSize         pageSize (and default segment size)
      * @param numOfInodes      regulates how many files could be created ( will be initially filled in super-block)
      * @param file             file to put file system in
-     * @param concurrencyLevel num of working threads to concurrently work with file system (for windows always 1)
+     * @param concurrencyLevel num of working threads to concurrently work with file system (for windows always 1),
+     *                         it doesn't limit I/O, as storage is shared by all threads
      * @throws OneFileSystemException if file cannot be modified
      */
     public FileSystemConfiguration(
@@ -58,6 +73,23 @@ public class FileSystemConfiguration {
         this.pageSize = pageSize;
         this.numOfInodes = numOfInodes;
         this.file = file;
+        this.existingFileSystem = false;
+    }
+
+    private FileSystemConfiguration(File file, int concurrencyLevel) {
+        if (!file.exists()) {
+            throw new IllegalArgumentException("File doesn't exist!");
+        }
+        if (isWindows()) {
+            this.concurrencyLevel = 1;
+        } else {
+            this.concurrencyLevel = concurrencyLevel;
+        }
+        this.size = file.length();
+        this.pageSize = 0;
+        this.numOfInodes = 0;
+        this.file = file;
+        this.existingFileSystem = true;
     }
 
     public static FileSystemConfiguration of(
@@ -66,6 +98,170 @@ public class FileSystemConfiguration {
         return new FileSystemConfiguration(size, pageSize, numOfInodes, file, newFile, concurrencyLevel);
     }
 
+    /**
+     * Configuration to open file which already has initialised file system.
+     * Page size and num of inodes are taken from the file, so they are unknown (0) here.
+     *
+     * @param file             with initialised file system
+     * @param concurrencyLevel num of working threads to concurrently work with file system (for windows always 1)
+     * @return configuration of existing file system
+     */
+    public static FileSystemConfiguration ofExistingFile(File file, int concurrencyLevel) {
+        return new FileSystemConfiguration(file, concurrencyLevel);
+    }
+
+    /**
+     * Optional setting, by default file is accessed by positional reads and writes.
+     *
+     * @param storageType how file system accesses the file
+     * @return this configuration
+     */
+    public FileSystemConfiguration withStorageType(StorageType storageType) {
+        checkPageCache(storageType, pageCacheSize);
+        this.storageType = storageType;
+        return this;
+    }
+
+    /**
+     * Optional setting, by default there isn't page cache and every access goes to storage.
+     * Cache is supported only for {@link StorageType#FILE_CHANNEL}: memory mapped storage is already cached by OS,
+     * and cache would make every access of asynchronous storage synchronous.
+     *
+     * @param pageCacheSize how many bytes page cache can take (0 - no cache)
+     * @return this configuration
+     * @see filesystem.storage.CachedStorage
+     */
+    public FileSystemConfiguration withPageCacheSize(long pageCacheSize) {
+        if (pageCacheSize < 0) {
+            throw new IllegalArgumentException("Page cache size cannot be negative!");
+        }
+        checkPageCache(storageType, pageCacheSize);
+        this.pageCacheSize = pageCacheSize;
+        return this;
+    }
+
+    private static void checkPageCache(StorageType storageType, long pageCacheSize) {
+        if (pageCacheSize != 0 && storageType != StorageType.FILE_CHANNEL) {
+            throw new IllegalArgumentException("Page cache can be used only with file channel storage!");
+        }
+    }
+
+    /**
+     * Optional setting, extent maps let to find segment by position in file without walking of segments' sequence.
+     *
+     * @param extentMapCacheSize how many files' extent maps can be cached (0 - no cache)
+     * @return this configuration
+     * @see SegmentAllocatorService#getExtentMap(int)
+     */
+    public FileSystemConfiguration withExtentMapCacheSize(int extentMapCacheSize) {
+        if (extentMapCacheSize < 0) {
+            throw new IllegalArgumentException("Extent map cache size cannot be negative!");
+        }
+        this.extentMapCacheSize = extentMapCacheSize;
+        return this;
+    }
+
+    /**
+     * Optional setting, by default the smallest free segment where all pages fit is taken.
+     * Policy isn't stored in the file, so existing file system can be opened with any of them.
+     *
+     * @param allocationPolicy how free pages are chosen for allocation
+     * @return this configuration
+     */
+    public FileSystemConfiguration withAllocationPolicy(AllocationPolicyType allocationPolicy) {
+        this.allocationPolicy = allocationPolicy;
+        return this;
+    }
+
+    /**
+     * Optional setting, by default all pages are in one group. Allocations in different groups don't wait for each
+     * other, so for many concurrent writers it makes sense to have about concurrency level groups.
+     * Groups aren't stored in the file, so existing file system can be opened with any num of them.
+     *
+     * @param allocationGroups how many groups with independent locks pages are split on
+     * @return this configuration
+     * @see filesystem.service.allocation.AllocationGroups
+     */
+    public FileSystemConfiguration withAllocationGroups(int allocationGroups) {
+        if (allocationGroups <= 0) {
+            throw new IllegalArgumentException("Num of allocation groups should be positive!");
+        }
+        this.allocationGroups = allocationGroups;
+        return this;
+    }
+
+    /**
+     * Optional setting, by default every write to file allocates segments and writes data at once.
+     * With write buffer small appends to file are collected in memory (per file) and written by one allocation,
+     * when buffer is full, file is accessed by other operation or file system is synchronised or closed.
+     * Buffered data isn't written if process crashes.
+     *
+     * @param writeBufferSize how many appended bytes of file are buffered before writing (0 - no buffer)
+     * @return this configuration
+     */
+    public FileSystemConfiguration withWriteBufferSize(int writeBufferSize) {
+        if (writeBufferSize < 0) {
+            throw new IllegalArgumentException("Write buffer size cannot be negative!");
+        }
+        this.writeBufferSize = writeBufferSize;
+        return this;
+    }
+
+    /**
+     * Optional setting, by default file is extended exactly by needed pages. With preallocation every extension
+     * of file takes one free segment twice bigger than its last one (up to the limit), so appended file has
+     * a few big segments instead of many small ones. Unused pages are released on truncation of file and on close
+     * of file system.
+     *
+     * @param preallocationLimit max num of pages speculatively allocated for growing file (0 - no preallocation)
+     * @return this configuration
+     */
+    public FileSystemConfiguration withPreallocationLimit(int preallocationLimit) {
+        if (preallocationLimit < 0) {
+            throw new IllegalArgumentException("Preallocation limit cannot be negative!");
+        }
+        this.preallocationLimit = preallocationLimit;
+        return this;
+    }
+
+    /**
+     * Optional setting, by default files aren't defragmented. Background defragmentation is done only by
+     * {@link filesystem.manager.impl.FileManagerSynchronized}, as it runs concurrently with other operations.
+     * Every file which has at least minSegments segments is moved to one free segment (if there is such).
+     *
+     * @param minSegments    file with so many segments (at least) is considered fragmented
+     * @param bytesPerSecond max num of bytes moved per second, so that defragmentation doesn't slow down other I/O
+     * @return this configuration
+     */
+    public FileSystemConfiguration withBackgroundDefragmentation(int minSegments, long bytesPerSecond) {
+        if (minSegments < 2) {
+            throw new IllegalArgumentException("File with one segment cannot be defragmented!");
+        }
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Defragmentation rate should be positive!");
+        }
+        this.defragmentationMinSegments = minSegments;
+        this.defragmentationRate = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Optional format setting (it is stored in file system, so it is ignored for existing one), by default data of
+     * every file is kept in segments, so even empty file takes a page. With inline data every inode entry is
+     * enlarged by inlineDataSize bytes and file which data (together with its name stored at the start of file)
+     * fits there takes no segment. File is moved to segments, when it grows bigger.
+     *
+     * @param inlineDataSize max num of bytes of file kept in its inode entry (0 - data is always in segments)
+     * @return this configuration
+     */
+    public FileSystemConfiguration withInlineDataSize(int inlineDataSize) {
+        if (inlineDataSize < 0) {
+            throw new IllegalArgumentException("Inline data size cannot be negative!");
+        }
+        this.inlineDataSize = inlineDataSize;
+        return this;
+    }
+
     public long getSize() {
         return size;
     }
@@ -86,6 +282,50 @@ public class FileSystemConfiguration {
         return concurrencyLevel;
     }
 
+    public boolean isExistingFileSystem() {
+        return existingFileSystem;
+    }
+
+    public StorageType getStorageType() {
+        return storageType;
+    }
+
+    public long getPageCacheSize() {
+        return pageCacheSize;
+    }
+
+    public int getExtentMapCacheSize() {
+        return extentMapCacheSize;
+    }
+
+    public AllocationPolicyType getAllocationPolicy() {
+        return allocationPolicy;
+    }
+
+    public int getAllocationGroups() {
+        return allocationGroups;
+    }
+
+    public int getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    public int getPreallocationLimit() {
+        return preallocationLimit;
+    }
+
+    public int getDefragmentationMinSegments() {
+        return defragmentationMinSegments;
+    }
+
+    public long getDefragmentationRate() {
+        return defragmentationRate;
+    }
+
+    public int getInlineDataSize() {
+        return inlineDataSize;
+    }
+
     public static boolean isWindows() {
         return OS.contains("win");
     }
@@ -0,0 +1,149 @@
+package filesystem.entity.datastorage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * In memory description of the whole sequence of segments (extents) of one file
+ * | segment1 | ------> | segment2 | --> .... ---> | segmentLast |
+ * |0 ... occupied1|occupied1 ... occupied1 + occupied2| ...        <- logical bytes of file stored in segments
+ * So, segment with some logical position of file is found by binary search, without reading of segments' meta data.
+ */
+public class ExtentMap {
+    private int[] segments = new int[4];
+    private int[] numsOfContinuousBlocks = new int[4];
+    private int[] occupied = new int[4];
+    private long[] logicalStarts = new long[4];
+    private int size;
+    private final Map<Integer, Integer> indexBySegment = new HashMap<>();
+
+    /**
+     * Adds segment to the end of sequence.
+     *
+     * @param segment                start of segment
+     * @param numsOfContinuousBlocks how many pages in the segment
+     * @param occupied               num of occupied bytes in this segment
+     */
+    public void add(int segment, int numsOfContinuousBlocks, int occupied) {
+        if (size == segments.length) {
+            int newLength = size * 2;
+            segments = Arrays.copyOf(segments, newLength);
+            this.numsOfContinuousBlocks = Arrays.copyOf(this.numsOfContinuousBlocks, newLength);
+            this.occupied = Arrays.copyOf(this.occupied, newLength);
+            logicalStarts = Arrays.copyOf(logicalStarts, newLength);
+        }
+        segments[size] = segment;
+        this.numsOfContinuousBlocks[size] = numsOfContinuousBlocks;
+        this.occupied[size] = occupied;
+        logicalStarts[size] = size == 0 ? 0 : logicalStarts[size - 1] + this.occupied[size - 1];
+        indexBySegment.put(segment, size);
+        size++;
+    }
+
+    /**
+     * @param segment start of segment
+     * @return index of segment in sequence or -1 if there isn't such segment
+     */
+    public int indexOf(int segment) {
+        return indexBySegment.getOrDefault(segment, -1);
+    }
+
+    /**
+     * @param position logical position in file
+     * @return index of the last segment which starts before or at the position (empty segments are only at the end
+     * of sequence, so for position less than length of file it is segment which contains position)
+     */
+    public int findByPosition(long position) {
+        if (position < 0 || position > getLength())
+            throw new IndexOutOfBoundsException("Position " + position + " is out of file!");
+
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (logicalStarts[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Updates occupied bytes of segment, moving logical starts of the following segments.
+     *
+     * @param index    index of segment in sequence
+     * @param occupied new num of occupied bytes
+     */
+    public void setOccupied(int index, int occupied) {
+        int delta = occupied - this.occupied[index];
+        this.occupied[index] = occupied;
+        for (int i = index + 1; i < size; i++) {
+            logicalStarts[i] += delta;
+        }
+    }
+
+    /**
+     * @param index                  index of segment in sequence
+     * @param numsOfContinuousBlocks new num of pages in the segment
+     */
+    public void setNumOfContinuousBlocks(int index, int numsOfContinuousBlocks) {
+        this.numsOfContinuousBlocks[index] = numsOfContinuousBlocks;
+    }
+
+    /**
+     * Removes segments from the end of sequence.
+     *
+     * @param newSize num of segments to keep (at least one)
+     */
+    public void truncate(int newSize) {
+        if (newSize < 1 || newSize > size)
+            throw new IndexOutOfBoundsException("Sequence cannot be truncated to " + newSize + " segments!");
+        for (int i = newSize; i < size; i++) {
+            indexBySegment.remove(segments[i]);
+        }
+        size = newSize;
+    }
+
+    /**
+     * @param index index of segment in sequence
+     * @return meta data as it is stored in the segment
+     */
+    public SegmentMetaData getMetaData(int index) {
+        int next = index + 1 < size ? segments[index + 1] : -1;
+        return new SegmentMetaData(numsOfContinuousBlocks[index], next, occupied[index]);
+    }
+
+    public int getNumOfContinuousBlocks(int index) {
+        return numsOfContinuousBlocks[index];
+    }
+
+    public int getSegment(int index) {
+        return segments[index];
+    }
+
+    public long getLogicalStart(int index) {
+        return logicalStarts[index];
+    }
+
+    public int getOccupied(int index) {
+        return occupied[index];
+    }
+
+    public int getHead() {
+        return segments[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return num of bytes stored in all segments
+     */
+    public long getLength() {
+        return size == 0 ? 0 : logicalStarts[size - 1] + occupied[size - 1];
+    }
+}
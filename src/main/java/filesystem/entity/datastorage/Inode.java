@@ -9,7 +9,7 @@ import java.nio.ByteBuffer;
  * Inode (in this file system) will look like
  * ------------------
  * |      used*     | not in the structure, but in memory, without this field inode doesn't have sense
- * |     segment    | = the first segment in memory where file is located
+ * |     segment    | = the first segment in memory where file is located (INLINE_SEGMENT if data is in inode entry)
  * |      size      | = the size of the file
  * |     fileType   | = type of file
  * |     counter    | = num of file references
@@ -17,6 +17,8 @@ import java.nio.ByteBuffer;
  * ------------------
  */
 public class Inode implements ByteRepresentable {
+    public static final int INLINE_SEGMENT = -1; // data of file is kept in its inode entry instead of segments
+
     private int segment;
     private long size;
     private FileType fileType;
@@ -94,11 +96,27 @@ public class Inode implements ByteRepresentable {
     }
 
 
+    @Override
+    public void writeTo(ByteBuffer dst) {
+        dst.putInt(segment).putLong(size).put((byte) fileType.getValue()).putInt(counter).putInt(lastSegment);
+    }
+
     public static Inode fromByteArray(byte[] from) {
-        ByteBuffer buffer = ByteBuffer.wrap(from);
+        return fromByteBuffer(ByteBuffer.wrap(from));
+    }
+
+    public static Inode fromByteBuffer(ByteBuffer buffer) {
         return new Inode(buffer.getInt(), buffer.getLong(), FileType.getFileTypeFromInt(buffer.get()), buffer.getInt(), buffer.getInt());
     }
 
+    /**
+     * @return true if data of file is kept in its inode entry
+     * @see filesystem.service.SuperBlockService#readInlineData(int, long, ByteBuffer)
+     */
+    public boolean isInline() {
+        return segment == INLINE_SEGMENT;
+    }
+
     public int getSegment() {
         return segment;
     }
@@ -29,9 +29,13 @@ public class Segment implements Comparable<Segment> {
         return new Segment(start, end);
     }
 
+    /**
+     * Segments are ordered by size, segments of the same size by start, so that different segments aren't equal.
+     */
     @Override
     public int compareTo(Segment other) {
-        return Integer.compare(end - start, other.end - other.start);
+        int bySize = Integer.compare(end - start, other.end - other.start);
+        return bySize != 0 ? bySize : Integer.compare(start, other.start);
     }
 
     public int getStart() {
@@ -69,8 +69,16 @@ public class SegmentMetaData implements ByteRepresentable {
         return result;
     }
 
+    @Override
+    public void writeTo(ByteBuffer dst) {
+        dst.putInt(numsOfContinuousBlocks).putInt(nextSegment).putInt(occupied);
+    }
+
     public static SegmentMetaData fromByteArray(byte[] from) {
-        ByteBuffer buffer = ByteBuffer.wrap(from);
+        return fromByteBuffer(ByteBuffer.wrap(from));
+    }
+
+    public static SegmentMetaData fromByteBuffer(ByteBuffer buffer) {
         return new SegmentMetaData(buffer.getInt(), buffer.getInt(), buffer.getInt());
     }
 
@@ -2,6 +2,8 @@ package filesystem.manager;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 
 /**
@@ -20,4 +22,22 @@ public interface ExternalFileSystemInterface {
      * @param out        to copy data in
      */
     void copyDataFromFileToOutputStream(String pathToFile, OutputStream out);
+
+    /**
+     * Channel version of {@link #writeToFileFromInputStream(String, InputStream)}. If channel is FileChannel,
+     * data is transferred by kernel, without copying to java heap.
+     *
+     * @param pathToFile to file in one-file-system
+     * @param in         to copy data from (till its end)
+     */
+    void writeToFileFromChannel(String pathToFile, ReadableByteChannel in);
+
+    /**
+     * Channel version of {@link #copyDataFromFileToOutputStream(String, OutputStream)}. If channel is FileChannel
+     * (or socket), data is transferred by kernel, without copying to java heap.
+     *
+     * @param pathToFile to file in one-file-system
+     * @param out        to copy data in
+     */
+    void copyDataFromFileToChannel(String pathToFile, WritableByteChannel out);
 }
@@ -3,7 +3,9 @@ package filesystem.manager;
 import filesystem.entity.ByteStream;
 import filesystem.entity.filesystem.DirectoryReadResult;
 
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Api to work with files in oneFileSystem
@@ -18,6 +20,29 @@ public interface InternalFileSystemInterface {
      */
     void writeToFile(String pathToFile, byte[] data);
 
+    /**
+     * Positional write to content of file (without its name). Existing bytes of range are overwritten in place,
+     * the part of range which is farther than end of file is appended.
+     *
+     * @param pathToFile where to write
+     * @param offset     position in content of file to start write from (not farther than end of file)
+     * @param src        buffer to write (from its position till its limit)
+     * @return num of written bytes
+     * @throws filesystem.entity.exception.FileManagerException if offset is farther than end of file
+     */
+    int writeAt(String pathToFile, long offset, ByteBuffer src);
+
+    /**
+     * Truncates content of file (without its name) to the given length, like
+     * {@link java.nio.channels.FileChannel#truncate(long)}. Segments after the new end are released,
+     * the kept data isn't copied. If length isn't less than size of content, file isn't changed.
+     *
+     * @param pathToFile to truncate
+     * @param newLength  new length of content
+     * @throws filesystem.entity.exception.FileManagerException if length is negative
+     */
+    void truncate(String pathToFile, long newLength);
+
     /**
      * Remember, that by convention of this file system, the first bytes are related to name of file.
      * Use {@code stream.getString()}. Though one file can have many different names (links), the first name preserved
@@ -29,6 +54,51 @@ public interface InternalFileSystemInterface {
      */
     ByteStream readFileByByteStream(String pathToFile);
 
+    /**
+     * Reads the whole content of file (without its name) to the buffer. Every contiguous segment of file is read
+     * by one call.
+     *
+     * @param pathToFile to read
+     * @param dst        buffer to read in (from its position), should have enough space for content
+     * @return num of read bytes
+     * @throws filesystem.entity.exception.FileManagerException if buffer doesn't have enough space
+     */
+    int readFully(String pathToFile, ByteBuffer dst);
+
+    /**
+     * Positional read of content of file (without its name),
+     * like {@link java.nio.channels.FileChannel#read(ByteBuffer, long)}.
+     * Reading starts from the segment which contains offset, without reading of previous ones.
+     *
+     * @param pathToFile to read
+     * @param offset     position in content of file to start read from
+     * @param dst        buffer to read in (from its position, not more than its remaining bytes)
+     * @return num of read bytes, -1 if offset is at the end of file or farther
+     */
+    int readAt(String pathToFile, long offset, ByteBuffer dst);
+
+    /**
+     * Asynchronous version of {@link #readFully(String, ByteBuffer)}, reads of all segments are outstanding at once
+     * (truly asynchronous with {@link filesystem.storage.StorageType#ASYNC_FILE_CHANNEL} storage).
+     * Buffer mustn't be touched and file mustn't be changed till future is completed.
+     *
+     * @param pathToFile to read
+     * @param dst        buffer to read in (from its position), should have enough space for content
+     * @return future of num of read bytes
+     * @throws filesystem.entity.exception.FileManagerException if buffer doesn't have enough space
+     */
+    CompletableFuture<Integer> readFullyAsync(String pathToFile, ByteBuffer dst);
+
+    /**
+     * Fills the buffer by content of file (without its name) starting from offset.
+     *
+     * @param pathToFile to read
+     * @param offset     position in content of file to start read from
+     * @param dst        buffer to fill (from its position till its limit)
+     * @throws filesystem.entity.exception.FileManagerException if range is out of file
+     */
+    void readFully(String pathToFile, long offset, ByteBuffer dst);
+
     /**
      * It moves DEntry(any type of file) from one directory to another one.
      *
@@ -118,4 +188,9 @@ public interface InternalFileSystemInterface {
      * @return size of file
      */
     long getFileSize(String pathToFile);
+
+    /**
+     * Writes all cached changes to the file and forces them to the disk.
+     */
+    void sync();
 }
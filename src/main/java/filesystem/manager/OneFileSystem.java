@@ -1,4 +1,12 @@
 package filesystem.manager;
 
-public interface OneFileSystem extends InternalFileSystemInterface, ExternalFileSystemInterface {
+import java.io.Closeable;
+
+public interface OneFileSystem extends InternalFileSystemInterface, ExternalFileSystemInterface, Closeable {
+
+    /**
+     * Releases resources (underlying file) of file system.
+     */
+    @Override
+    void close();
 }
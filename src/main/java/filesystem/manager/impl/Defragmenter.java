@@ -0,0 +1,170 @@
+package filesystem.manager.impl;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Background defragmentation of files. Inode table is walked by ranges, every file which sequence has at least
+ * minSegments segments is moved to one free segment (see {@link FileManager#startMove(int)}).
+ * <p>
+ * Range of inode table is scanned under read lock. File is copied by chunks, every chunk under read lock, and only
+ * start and finish of the move take write lock, so writers wait for one chunk at most and readers don't wait for
+ * copying at all. Move of file which was changed during copying is discarded. Copying is throttled: after every
+ * chunk thread sleeps so long, that average rate of moving doesn't exceed bytesPerSecond. The next walk of inode
+ * table starts after PASS_INTERVAL.
+ */
+class Defragmenter implements AutoCloseable {
+    private static final int INODES_PER_SCAN = 1024; // how many inodes are scanned under one acquisition of lock
+    private static final long PASS_INTERVAL_MILLIS = 60_000;
+    private static final long TERMINATION_TIMEOUT_MILLIS = 60_000;
+
+    private final FileManager fileManager;
+    private final Lock readLock;
+    private final Lock writeLock;
+    private final int minSegments;
+    private final long bytesPerSecond;
+    private final AtomicLong numOfFailedPasses = new AtomicLong();
+    private volatile RuntimeException lastFailure;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "defragmenter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param fileManager    file system to defragment
+     * @param readLock       lock which is held by readers of file system
+     * @param writeLock      lock which is held by writers of file system
+     * @param minSegments    file with so many segments (at least) is considered fragmented
+     * @param bytesPerSecond max num of bytes moved per second
+     */
+    Defragmenter(FileManager fileManager, Lock readLock, Lock writeLock, int minSegments, long bytesPerSecond) {
+        this.fileManager = fileManager;
+        this.readLock = readLock;
+        this.writeLock = writeLock;
+        this.minSegments = minSegments;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    void start() {
+        executor.scheduleWithFixedDelay(this::runPass, 0, PASS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops defragmentation, waiting for the copying of current chunk (unfinished move is discarded).
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(TERMINATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return num of passes which were stopped by exception
+     */
+    long getNumOfFailedPasses() {
+        return numOfFailedPasses.get();
+    }
+
+    /**
+     * @return exception which stopped the last failed pass (null if there wasn't such pass)
+     */
+    RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /*
+     * Failure of one pass doesn't stop the next ones (for example file system can be full at the moment),
+     * but it is recorded.
+     */
+    void runPass() {
+        try {
+            pass();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            lastFailure = e;
+            numOfFailedPasses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Walks the whole inode table once.
+     *
+     * @return num of moved bytes
+     * @throws InterruptedException if defragmentation is stopped
+     */
+    long pass() throws InterruptedException {
+        long moved = 0;
+        for (int fromInode = 0; fromInode < fileManager.getNumOfInodes(); fromInode += INODES_PER_SCAN) {
+            List<Integer> fragmentedFiles;
+            readLock.lockInterruptibly();
+            try {
+                fragmentedFiles = fileManager.findFragmentedFiles(fromInode, fromInode + INODES_PER_SCAN, minSegments);
+            } finally {
+                readLock.unlock();
+            }
+
+            for (int inodeNum : fragmentedFiles) {
+                moved += moveFile(inodeNum);
+            }
+        }
+        return moved;
+    }
+
+    /*
+     * Unfinished move is discarded even if thread is interrupted, so the new segment isn't leaked.
+     */
+    private long moveFile(int inodeNum) throws InterruptedException {
+        FileMove move;
+        writeLock.lockInterruptibly();
+        try {
+            move = fileManager.startMove(inodeNum);
+        } finally {
+            writeLock.unlock();
+        }
+        if (move == null) {
+            return 0;
+        }
+
+        boolean finished = false;
+        try {
+            for (int copied = 1; copied > 0; ) {
+                readLock.lockInterruptibly();
+                try {
+                    copied = fileManager.copyNextChunk(move);
+                } finally {
+                    readLock.unlock();
+                }
+                TimeUnit.MILLISECONDS.sleep(copied * 1000L / bytesPerSecond);
+            }
+
+            long moved;
+            writeLock.lockInterruptibly();
+            try {
+                moved = fileManager.finishMove(move);
+            } finally {
+                writeLock.unlock();
+            }
+            finished = true;
+            return moved;
+        } finally {
+            if (!finished) {
+                writeLock.lock();
+                try {
+                    fileManager.discardMove(move);
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -9,19 +9,34 @@ import filesystem.entity.filesystem.DEntry;
 import filesystem.entity.filesystem.Directory;
 import filesystem.entity.filesystem.DirectoryReadResult;
 import filesystem.manager.OneFileSystem;
-import filesystem.pool.SilentBlockingResourcePool;
+import filesystem.service.AllocationScanner;
+import filesystem.service.FreeSpaceBitmap;
 import filesystem.service.SegmentAllocatorService;
 import filesystem.service.SuperBlockService;
+import filesystem.storage.AsyncFileChannelStorage;
+import filesystem.storage.BufferPool;
+import filesystem.storage.CachedStorage;
+import filesystem.storage.FileChannelStorage;
+import filesystem.storage.MappedStorage;
+import filesystem.storage.Storage;
+import filesystem.storage.StorageType;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
 
 import static filesystem.entity.filesystem.FileType.DIRECTORY;
 import static filesystem.entity.filesystem.FileType.FILE;
@@ -31,6 +46,7 @@ import static filesystem.utils.FileSystemUtils.cleanFileName;
 import static filesystem.utils.FileSystemUtils.getFileNameByPath;
 import static filesystem.utils.FileSystemUtils.getFileParent;
 import static filesystem.utils.FileSystemUtils.pathToSteps;
+import static java.lang.Math.min;
 import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
 
@@ -42,46 +58,66 @@ import static java.util.stream.Collectors.toList;
  * @see FileManagerSynchronized
  */
 public class FileManager implements OneFileSystem {
+    private static final int MOVE_CHUNK_IN_PAGES = 64; // how many pages of moved file are copied at once
+
     private final FileSystemConfiguration fileSystemConfiguration;
     private final SuperBlockService superBlockService;
     private final SegmentAllocatorService segmentAllocatorService;
+    private final FreeSpaceBitmap freeSpaceBitmap;
+    private final BufferPool copyBufferPool; // heap buffers of page size for copying through streams
+    private final Map<Integer, WriteBehindBuffer> writeBuffers = new ConcurrentHashMap<>(); // appended data by inodeNum
+    private final Map<Integer, FileMove> moves = new ConcurrentHashMap<>(); // files which are being moved by inodeNum
+    private final Map<Integer, Integer> detachedReaders = new ConcurrentHashMap<>(); // reads which outlive the call
 
 
-    private final SilentBlockingResourcePool<RandomAccessFile> poolOfFiles;
+    private final Storage storage;
 
     /**
-     * Creates and configures fileSystem
+     * Creates and configures fileSystem. If configuration describes existing file system, then it is opened.
      *
      * @param fileSystemConfiguration object to take settings from
+     * @see FileSystemConfiguration#ofExistingFile(File, int)
      */
     public FileManager(FileSystemConfiguration fileSystemConfiguration) {
         this.fileSystemConfiguration = fileSystemConfiguration;
-        superBlockService = new SuperBlockService(
-                fileSystemConfiguration.getNumOfInodes(),
-                fileSystemConfiguration.getPageSize(),
-                fileSystemConfiguration.getFile()
-        );
 
-        List<RandomAccessFile> files = new ArrayList<>(fileSystemConfiguration.getConcurrencyLevel());
-        for (int i = 0; i < fileSystemConfiguration.getConcurrencyLevel(); i++) {
-            try {
-                files.add(new RandomAccessFile(fileSystemConfiguration.getFile(), "rw"));
-            } catch (FileNotFoundException e) {
-                throw new FileManagerException("File doesn't exist!", e);
+        if (fileSystemConfiguration.isExistingFileSystem()) {
+            storage = openStorage(fileSystemConfiguration, SuperBlockService::readPageSize);
+            superBlockService = new SuperBlockService(storage);
+            freeSpaceBitmap = new FreeSpaceBitmap(superBlockService.getSuperBlockOffset(), storage);
+            if (!freeSpaceBitmap.isClean()) {
+                rebuildFreeSpaceBitmap(fileSystemConfiguration.getConcurrencyLevel());
             }
+            freeSpaceBitmap.setClean(false);
+        } else {
+            storage = openStorage(fileSystemConfiguration, fileStorage -> fileSystemConfiguration.getPageSize());
+            superBlockService = new SuperBlockService(
+                    fileSystemConfiguration.getNumOfInodes(),
+                    fileSystemConfiguration.getPageSize(),
+                    fileSystemConfiguration.getInlineDataSize(),
+                    storage
+            );
+            freeSpaceBitmap = new FreeSpaceBitmap(
+                    getSegmentsAmount(fileSystemConfiguration.getSize(), superBlockService),
+                    superBlockService.getSuperBlockOffset(),
+                    storage
+            );
         }
 
-        poolOfFiles = new SilentBlockingResourcePool<>(files);
-        int segmentsAmount = getSegmentsAmount(fileSystemConfiguration, superBlockService.getSuperBlockOffset());
-
+        copyBufferPool = new BufferPool(superBlockService.getPageSize(), BufferPool.DEFAULT_MAX_POOLED_BUFFERS, false);
         segmentAllocatorService = new SegmentAllocatorService(
-                superBlockService.getSuperBlockOffset(),
-                segmentsAmount,
-                fileSystemConfiguration.getPageSize(),
-                fileSystemConfiguration.getFile()
+                freeSpaceBitmap,
+                superBlockService.getPageSize(),
+                storage,
+                fileSystemConfiguration.getExtentMapCacheSize(),
+                fileSystemConfiguration.getAllocationPolicy(),
+                fileSystemConfiguration.getAllocationGroups(),
+                fileSystemConfiguration.getPreallocationLimit()
         );
 
-        initialiseRoot();
+        if (!fileSystemConfiguration.isExistingFileSystem()) {
+            initialiseRoot();
+        }
     }
 
     /**
@@ -91,35 +127,18 @@ public class FileManager implements OneFileSystem {
      * @param concurrencyLevel num of concurrently working threads (on windows always one)
      */
     public FileManager(File file, int concurrencyLevel) {
-        superBlockService = new SuperBlockService(file);
-
-        fileSystemConfiguration = FileSystemConfiguration.of(
-                file.getTotalSpace(),
-                superBlockService.getPageSize(),
-                superBlockService.getNumOfInodes(),
-                file,
-                false,
-                concurrencyLevel
-        );
-
-        int segmentsAmount = getSegmentsAmount(fileSystemConfiguration, superBlockService.getSuperBlockOffset());
-
-        segmentAllocatorService = new SegmentAllocatorService(
-                superBlockService.getSuperBlockOffset(),
-                segmentsAmount,
-                fileSystemConfiguration.getPageSize(),
-                file
-        );
+        this(FileSystemConfiguration.ofExistingFile(file, concurrencyLevel));
+    }
 
-        List<RandomAccessFile> files = new ArrayList<>(fileSystemConfiguration.getConcurrencyLevel());
-        for (int i = 0; i < fileSystemConfiguration.getConcurrencyLevel(); i++) {
-            try {
-                files.add(new RandomAccessFile(fileSystemConfiguration.getFile(), "rw"));
-            } catch (FileNotFoundException e) {
-                throw new FileManagerException("File doesn't exist!", e);
-            }
-        }
-        poolOfFiles = new SilentBlockingResourcePool<>(files);
+    /**
+     * To initialise file system based on file.
+     *
+     * @param file             with already initialised file system
+     * @param concurrencyLevel num of concurrently working threads (on windows always one)
+     * @param storageType      how to access the file
+     */
+    public FileManager(File file, int concurrencyLevel, StorageType storageType) {
+        this(FileSystemConfiguration.ofExistingFile(file, concurrencyLevel).withStorageType(storageType));
     }
 
     // external api
@@ -134,27 +153,24 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public void writeToFileFromInputStream(String pathToFile, InputStream in) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            int fileInodeNum = getFileInodeByPath(pathToFile, file);
-            Inode fileInode = superBlockService.readInode(fileInodeNum, file);
+        int fileInodeNum = getFileInodeByPath(pathToFile);
+        Inode fileInode = superBlockService.readInode(fileInodeNum);
 
-            if (fileInode.getFileType() == DIRECTORY) {
-                throw new FileManagerException("Cannot write to the directory!");
-            }
-            byte[] data = new byte[1024];
-            try {
-                while (true) {
-                    int read = in.read(data, 0, data.length);
-                    if (read == -1) break;
-                    writeDataByInode(fileInodeNum, data, read, file);
-                }
-            } catch (Exception e) {
-                throw new FileManagerException("Some IO error occurred!", e);
+        if (fileInode.getFileType() == DIRECTORY) {
+            throw new FileManagerException("Cannot write to the directory!");
+        }
+        ByteBuffer buffer = copyBufferPool.acquire();
+        byte[] data = buffer.array();
+        try {
+            while (true) {
+                int read = in.read(data, 0, data.length);
+                if (read == -1) break;
+                writeDataByInode(fileInodeNum, data, read);
             }
+        } catch (Exception e) {
+            throw new FileManagerException("Some IO error occurred!", e);
         } finally {
-            poolOfFiles.put(file);
+            copyBufferPool.release(buffer);
         }
     }
 
@@ -167,78 +183,337 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public void copyDataFromFileToOutputStream(String pathToFile, OutputStream out) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            int fileInodeNum = getFileInodeByPath(pathToFile, file);
-            Inode fileInode = superBlockService.readInode(fileInodeNum, file);
+        int fileInodeNum = getFileInodeByPath(pathToFile);
+        Inode fileInode = superBlockService.readInode(fileInodeNum);
 
-            if (fileInode.getFileType() == DIRECTORY) {
-                throw new FileManagerException(pathToFile + " is directory!");
+        if (fileInode.getFileType() == DIRECTORY) {
+            throw new FileManagerException(pathToFile + " is directory!");
+        }
+        ByteBuffer buffer = copyBufferPool.acquire();
+        byte[] data = buffer.array();
+        try (ByteStream stream = readFileDataByByteStream(fileInodeNum, fileInode)) {
+            stream.getString(); // at the start of file (it's name is stored)
+
+            while (stream.hasNext()) {
+                int read = stream.getArr(data);
+                out.write(data, 0, read);
             }
-            ByteStream stream = segmentAllocatorService
-                    .readDataFromSegmentByByteStream(fileInode.getSegment(), file);
+        } catch (Exception e) {
+            throw new FileManagerException("Some IO error occurred!", e);
+        } finally {
+            copyBufferPool.release(buffer);
+        }
+    }
 
-            stream.getString(); // at the start of file (it's name is stored)
+    /**
+     * For channels with known size (FileChannel) data is transferred by the kernel directly to segments.
+     * Other channels are read through buffer of page size.
+     *
+     * @param pathToFile in file system
+     * @param in         channel to take file from
+     * @throws FileManagerException read IO error occurred
+     */
+    @Override
+    public void writeToFileFromChannel(String pathToFile, ReadableByteChannel in) {
+        int fileInodeNum = getFileInodeByPath(pathToFile);
+        Inode fileInode = superBlockService.readInode(fileInodeNum);
 
-            byte[] data = new byte[1024];
+        if (fileInode.getFileType() == DIRECTORY) {
+            throw new FileManagerException("Cannot write to the directory!");
+        }
+        try {
+            if (in instanceof SeekableByteChannel) {
+                SeekableByteChannel seekableChannel = (SeekableByteChannel) in;
+                writeDataByInode(fileInodeNum, in, seekableChannel.size() - seekableChannel.position());
+                return;
+            }
+            ByteBuffer data = copyBufferPool.acquire();
             try {
-                while (stream.hasNext()) {
-                    int read = stream.getArr(data);
-                    out.write(data, 0, read);
+                while (in.read(data) != -1) {
+                    writeDataByInode(fileInodeNum, data.array(), data.position());
+                    data.clear();
                 }
-            } catch (Exception e) {
-                throw new FileManagerException("Some IO error occurred!", e);
+            } finally {
+                copyBufferPool.release(data);
             }
-        } finally {
-            poolOfFiles.put(file);
+        } catch (IOException e) {
+            throw new FileManagerException("Some IO error occurred!", e);
+        }
+    }
+
+    /**
+     * Every segment of file is transferred to the channel by one call, inline data is written at once.
+     *
+     * @param pathToFile to file in file system to copy data from
+     * @param out        channel to copy data to
+     */
+    @Override
+    public void copyDataFromFileToChannel(String pathToFile, WritableByteChannel out) {
+        int fileInodeNum = getFileInodeByPath(pathToFile);
+        Inode fileInode = superBlockService.readInode(fileInodeNum);
+
+        if (fileInode.getFileType() == DIRECTORY) {
+            throw new FileManagerException(pathToFile + " is directory!");
+        }
+
+        long sizeOfName = getSizeOfName(fileInodeNum, fileInode);
+        if (!fileInode.isInline()) {
+            segmentAllocatorService.transferDataFromSegment(fileInode.getSegment(), sizeOfName, out);
+            return;
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) (fileInode.getSize() - sizeOfName));
+        superBlockService.readInlineData(fileInodeNum, sizeOfName, content);
+        content.flip();
+        try {
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+        } catch (IOException e) {
+            throw new FileManagerException("Some IO error occurred!", e);
         }
     }
 
     // internal api
 
     /**
+     * If write buffer is configured, data is appended to buffer of file and segments are allocated only when
+     * buffer is full (or file is accessed by other operations, or file system is synchronised or closed),
+     * so many small writes are written by one allocation of contiguous segments.
+     *
      * @param pathToFile where to write
      * @param data       array of bytes to write
+     * @see FileSystemConfiguration#withWriteBufferSize(int)
      */
     @Override
     public void writeToFile(String pathToFile, byte[] data) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            int inodeNum = getFileInodeByPath(pathToFile, file);
-            Inode inode = superBlockService.readInode(inodeNum, file);
+        int inodeNum = findInodeByPath(pathToFile);
+        Inode inode = superBlockService.readInode(inodeNum);
+
+        if (inode.getFileType() != FILE) {
+            throw new FileManagerException(pathToFile + " isn't a file!");
+        }
 
-            if (inode.getFileType() != FILE) {
-                throw new FileManagerException(pathToFile + " isn't a file!");
+        int writeBufferSize = fileSystemConfiguration.getWriteBufferSize();
+        WriteBehindBuffer writeBuffer = writeBuffers.get(inodeNum);
+        if (writeBuffer == null && data.length >= writeBufferSize) {
+            writeDataByInode(inodeNum, data);
+            return;
+        }
+        if (writeBuffer == null) {
+            writeBuffer = new WriteBehindBuffer(writeBufferSize);
+            writeBuffers.put(inodeNum, writeBuffer);
+        }
+        synchronized (writeBuffer) {
+            writeBuffer.append(data);
+        }
+        if (writeBuffer.size() >= writeBufferSize) {
+            flushWriteBuffer(inodeNum);
+        }
+    }
+
+    /**
+     * Overwritten range is found by extent map of file, so only segments of range are written.
+     *
+     * @param pathToFile where to write
+     * @param offset     position in content of file to start write from
+     * @param src        buffer to write
+     * @return num of written bytes
+     */
+    @Override
+    public int writeAt(String pathToFile, long offset, ByteBuffer src) {
+        int inodeNum = getFileInodeByPath(pathToFile);
+        Inode inode = superBlockService.readInode(inodeNum);
+
+        if (inode.getFileType() != FILE) {
+            throw new FileManagerException(pathToFile + " isn't a file!");
+        }
+        long sizeOfName = getSizeOfName(inodeNum, inode);
+        long sizeOfContent = inode.getSize() - sizeOfName;
+        if (offset < 0 || offset > sizeOfContent) {
+            throw new FileManagerException("Offset is out of " + pathToFile + "!");
+        }
+
+        int written = src.remaining();
+        int toOverwrite = (int) min(written, sizeOfContent - offset);
+        if (toOverwrite > 0) {
+            ByteBuffer range = src.duplicate();
+            range.limit(range.position() + toOverwrite);
+            if (inode.isInline()) {
+                superBlockService.writeInlineData(inodeNum, sizeOfName + offset, range);
+            } else {
+                markMovedFileChanged(inodeNum);
+                segmentAllocatorService.overwriteDataInSegment(inode.getSegment(), sizeOfName + offset, range);
             }
+            src.position(range.position());
+        }
+        if (src.hasRemaining()) {
+            byte[] rest = new byte[src.remaining()];
+            src.get(rest);
+            writeDataByInode(inodeNum, rest);
+        }
+        return written;
+    }
 
-            writeDataByInode(inodeNum, data, file);
-        } finally {
-            poolOfFiles.put(file);
+    /**
+     * The tail of segments' chain is released in one batch.
+     *
+     * @param pathToFile to truncate
+     * @param newLength  new length of content
+     */
+    @Override
+    public void truncate(String pathToFile, long newLength) {
+        if (newLength < 0) {
+            throw new FileManagerException("Length of file cannot be negative!");
+        }
+        int inodeNum = getFileInodeByPath(pathToFile);
+        Inode inode = superBlockService.readInode(inodeNum);
+
+        if (inode.getFileType() != FILE) {
+            throw new FileManagerException(pathToFile + " isn't a file!");
+        }
+        long newSize = getSizeOfName(inodeNum, inode) + newLength;
+        if (newSize >= inode.getSize()) {
+            return;
+        }
+
+        if (!inode.isInline()) {
+            markMovedFileChanged(inodeNum);
+            int lastSegment = segmentAllocatorService.truncateSegment(inode.getSegment(), newSize);
+            inode.setLastSegment(lastSegment);
         }
+        inode.setSize(newSize);
+        superBlockService.updateInode(inodeNum, inode);
     }
 
     /**
+     * Segments of file aren't moved by defragmentation till the stream is read till the end or closed.
+     *
      * @param pathToFile to create byteStream
      * @return byte stream to read data from
      */
     @Override
     public ByteStream readFileByByteStream(String pathToFile) {
-        RandomAccessFile file = null;
+        int inodeNum = getFileInodeByPath(pathToFile);
+        Inode inode = superBlockService.readInode(inodeNum);
+
+        if (inode.getFileType() != FILE) {
+            throw new FileManagerException(pathToFile + " isn't a file!");
+        }
+
+        ByteStream byteStream = readFileDataByByteStream(inodeNum, inode);
+        if (inode.isInline()) {
+            return byteStream;
+        }
+        addDetachedReader(inodeNum);
+        return new DetachedByteStream(inodeNum, byteStream);
+    }
+
+    /**
+     * @param pathToFile to read
+     * @param dst        buffer to read in, should have enough space for content
+     * @return num of read bytes
+     */
+    @Override
+    public int readFully(String pathToFile, ByteBuffer dst) {
+        int inodeNum = getFileInodeByPath(pathToFile);
+        Inode inode = readFileInode(inodeNum, pathToFile);
+        long sizeOfName = getSizeOfName(inodeNum, inode);
+        long sizeOfContent = inode.getSize() - sizeOfName;
+
+        if (sizeOfContent > dst.remaining()) {
+            throw new FileManagerException("Buffer is too small for " + pathToFile + "!");
+        }
+        ByteBuffer content = dst.duplicate();
+        content.limit(content.position() + (int) sizeOfContent);
+        readFileData(inodeNum, inode, sizeOfName, content);
+        dst.position(content.position());
+        return (int) sizeOfContent;
+    }
+
+    /**
+     * Segment with offset is found by extent map of file, so only needed range is read.
+     *
+     * @param pathToFile to read
+     * @param offset     position in content of file to start read from
+     * @param dst        buffer to read in
+     * @return num of read bytes, -1 if offset is at the end of file or farther
+     */
+    @Override
+    public int readAt(String pathToFile, long offset, ByteBuffer dst) {
+        if (offset < 0) {
+            throw new FileManagerException("Offset cannot be negative!");
+        }
+        int inodeNum = getFileInodeByPath(pathToFile);
+        Inode inode = readFileInode(inodeNum, pathToFile);
+        long sizeOfName = getSizeOfName(inodeNum, inode);
+        long sizeOfContent = inode.getSize() - sizeOfName;
+
+        if (offset >= sizeOfContent) {
+            return -1;
+        }
+        int toRead = (int) min(dst.remaining(), sizeOfContent - offset);
+        ByteBuffer range = dst.duplicate();
+        range.limit(range.position() + toRead);
+        readFileData(inodeNum, inode, sizeOfName + offset, range);
+        dst.position(range.position());
+        return toRead;
+    }
+
+    /**
+     * File is found by calling thread, reads of its segments are asynchronous (inline data is read at once).
+     * Segments of file aren't moved by defragmentation till the future is completed.
+     *
+     * @param pathToFile to read
+     * @param dst        buffer to read in, should have enough space for content
+     * @return future of num of read bytes
+     */
+    @Override
+    public CompletableFuture<Integer> readFullyAsync(String pathToFile, ByteBuffer dst) {
+        int inodeNum = getFileInodeByPath(pathToFile);
+        Inode inode = readFileInode(inodeNum, pathToFile);
+        long sizeOfName = getSizeOfName(inodeNum, inode);
+        int sizeOfContent = (int) (inode.getSize() - sizeOfName);
+
+        if (sizeOfContent > dst.remaining()) {
+            throw new FileManagerException("Buffer is too small for " + pathToFile + "!");
+        }
+        ByteBuffer content = dst.duplicate();
+        content.limit(content.position() + sizeOfContent);
+        if (inode.isInline()) {
+            superBlockService.readInlineData(inodeNum, sizeOfName, content);
+            dst.position(content.position());
+            return CompletableFuture.completedFuture(sizeOfContent);
+        }
+        addDetachedReader(inodeNum);
+        CompletableFuture<Void> read;
         try {
-            file = poolOfFiles.take();
-            int inodeNum = getFileInodeByPath(pathToFile, file);
-            Inode inode = superBlockService.readInode(inodeNum, file);
+            read = segmentAllocatorService.readDataFromSegmentAsync(inode.getSegment(), sizeOfName, content);
+        } catch (RuntimeException e) {
+            removeDetachedReader(inodeNum);
+            throw e;
+        }
+        return read.whenComplete((ignored, e) -> removeDetachedReader(inodeNum))
+                .thenApply(ignored -> {
+                    dst.position(content.position());
+                    return sizeOfContent;
+                });
+    }
 
-            if (inode.getFileType() != FILE) {
-                throw new FileManagerException(pathToFile + " isn't a file!");
-            }
+    /**
+     * @param pathToFile to read
+     * @param offset     position in content of file to start read from
+     * @param dst        buffer to fill
+     */
+    @Override
+    public void readFully(String pathToFile, long offset, ByteBuffer dst) {
+        int inodeNum = getFileInodeByPath(pathToFile);
+        Inode inode = readFileInode(inodeNum, pathToFile);
+        long sizeOfName = getSizeOfName(inodeNum, inode);
 
-            return segmentAllocatorService.readDataFromSegmentByByteStream(inode.getSegment(), file);
-        } finally {
-            poolOfFiles.put(file);
+        if (offset < 0 || offset + dst.remaining() > inode.getSize() - sizeOfName) {
+            throw new FileManagerException("Range is out of " + pathToFile + "!");
         }
+        readFileData(inodeNum, inode, sizeOfName + offset, dst);
     }
 
     /**
@@ -248,14 +523,8 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public void moveFileToDirectory(String pathToFileParent, String whereToMove, String fileName) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            createHardLink(addToPath(pathToFileParent, fileName), whereToMove, fileName, file);
-            removeFile(pathToFileParent, fileName, file);
-        } finally {
-            poolOfFiles.put(file);
-        }
+        createHardLink(addToPath(pathToFileParent, fileName), whereToMove, fileName);
+        removeFile(pathToFileParent, fileName);
     }
 
     /**
@@ -265,21 +534,14 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public List<DirectoryReadResult> getFilesInDirectory(String path, boolean withSize) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            RandomAccessFile finalFile = file;
-            return getContentInDirectory(path, file).stream()
-                    .map(
-                            dEntry -> {
-                                Inode inode = superBlockService.readInode(dEntry.getInode(), finalFile);
-                                long fileSize = withSize ? getFileSize(dEntry.getInode(), finalFile) : 0;
-                                return DirectoryReadResult.of(dEntry.getName(), inode.getFileType(), fileSize);
-                            })
-                    .collect(toList());
-        } finally {
-            poolOfFiles.put(file);
-        }
+        return getContentInDirectory(path).stream()
+                .map(
+                        dEntry -> {
+                            Inode inode = superBlockService.readInode(dEntry.getInode());
+                            long fileSize = withSize ? getFileSize(dEntry.getInode()) : 0;
+                            return DirectoryReadResult.of(dEntry.getName(), inode.getFileType(), fileSize);
+                        })
+                .collect(toList());
     }
 
     /**
@@ -298,13 +560,7 @@ public class FileManager implements OneFileSystem {
      * @see #getFilesInDirectory(String, boolean)
      */
     public List<String> getFilesNamesInDirectory(String path) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            return getContentInDirectory(path, file).stream().map(DEntry::getName).collect(toList());
-        } finally {
-            poolOfFiles.put(file);
-        }
+        return getContentInDirectory(path).stream().map(DEntry::getName).collect(toList());
     }
 
     /**
@@ -313,19 +569,13 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public void createDirectory(String pathToFileParent, String fileName) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            fileName = cleanFileName(fileName);
-            checkFileName(fileName);
-            int parentInode = getFileInodeByPath(pathToFileParent, file);
-            Directory newDirectory = new Directory(fileName, DEntry.of("..", parentInode), emptyList());
-            int inodeOfNewDirectoryNum = allocateNewDirectory(newDirectory, file);
-
-            addDEntryToDirectory(parentInode, DEntry.of(fileName, inodeOfNewDirectoryNum), file);
-        } finally {
-            poolOfFiles.put(file);
-        }
+        fileName = cleanFileName(fileName);
+        checkFileName(fileName);
+        int parentInode = getFileInodeByPath(pathToFileParent);
+        Directory newDirectory = new Directory(fileName, DEntry.of("..", parentInode), emptyList());
+        int inodeOfNewDirectoryNum = allocateNewDirectory(newDirectory, parentInode);
+
+        addDEntryToDirectory(parentInode, DEntry.of(fileName, inodeOfNewDirectoryNum));
     }
 
     /**
@@ -335,13 +585,11 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public void createFile(String pathToFileParent, String fileName, long size) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            createFile(pathToFileParent, fileName, size, file);
-        } finally {
-            poolOfFiles.put(file);
-        }
+        fileName = cleanFileName(fileName);
+        checkFileName(fileName);
+        int parentInode = getFileInodeByPath(pathToFileParent);
+        int fileInodeNum = allocateNewBaseFileInf(size, fileName, parentInode);
+        addDEntryToDirectory(parentInode, DEntry.of(fileName, fileInodeNum));
     }
 
     /**
@@ -361,13 +609,18 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public void createHardLink(String pathToFile, String whereToAdd, String nameOfHardLink) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            createHardLink(pathToFile, whereToAdd, nameOfHardLink, file);
-        } finally {
-            poolOfFiles.put(file);
+        nameOfHardLink = cleanFileName(nameOfHardLink);
+        checkFileName(nameOfHardLink);
+        if (checkCyclicReferences(pathToFile, whereToAdd)) {
+            throw new FileManagerException("Cyclic reference creation!");
         }
+        int fileInode = getFileInodeByPath(pathToFile);
+        int directoryInodeNum = getFileInodeByPath(whereToAdd);
+        addDEntryToDirectory(directoryInodeNum, DEntry.of(nameOfHardLink, fileInode));
+
+        Inode inode = superBlockService.readInode(fileInode);
+        inode.incrementCounter();
+        superBlockService.updateInode(fileInode, inode);
     }
 
     /**
@@ -377,28 +630,24 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public void copyFileToDirectory(String pathToFile, String whereToCopy, String withName) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            withName = cleanFileName(withName);
-            int inodeNum = getFileInodeByPath(pathToFile, file);
-            Inode fileInode = superBlockService.readInode(inodeNum, file);
-
-            createFile(whereToCopy, withName, fileInode.getSize(), file);
+        withName = cleanFileName(withName);
+        int inodeNum = getFileInodeByPath(pathToFile);
+        Inode fileInode = superBlockService.readInode(inodeNum);
 
-            int copiedFileInodeNum = getFileInodeByPath(addToPath(whereToCopy, withName), file);
+        createFile(whereToCopy, withName, fileInode.getSize());
 
-            ByteStream stream = segmentAllocatorService
-                    .readDataFromSegmentByByteStream(fileInode.getSegment(), file);
+        int copiedFileInodeNum = getFileInodeByPath(addToPath(whereToCopy, withName));
 
-            byte[] data = new byte[1024];
+        ByteBuffer buffer = copyBufferPool.acquire();
+        byte[] data = buffer.array();
+        try (ByteStream stream = readFileDataByByteStream(inodeNum, fileInode)) {
             stream.getString();
             while (stream.hasNext()) {
                 int read = stream.getArr(data);
-                writeDataByInode(copiedFileInodeNum, data, read, file);
+                writeDataByInode(copiedFileInodeNum, data, read);
             }
         } finally {
-            poolOfFiles.put(file);
+            copyBufferPool.release(buffer);
         }
     }
 
@@ -407,14 +656,8 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public void removeFile(String pathToFile) {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            String fileName = getFileNameByPath(pathToFile);
-            removeFile(getFileParent(pathToFile), fileName, file);
-        } finally {
-            poolOfFiles.put(file);
-        }
+        String fileName = getFileNameByPath(pathToFile);
+        removeFile(getFileParent(pathToFile), fileName);
     }
 
 
@@ -433,7 +676,7 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public long getSize() {
-        return segmentAllocatorService.getRemainingCapacity() * (long) fileSystemConfiguration.getPageSize();
+        return segmentAllocatorService.getRemainingCapacity() * (long) superBlockService.getPageSize();
     }
 
     /**
@@ -442,56 +685,250 @@ public class FileManager implements OneFileSystem {
      */
     @Override
     public long getFileSize(String pathToFile) {
-        RandomAccessFile file = null;
+        return getFileSize(getFileInodeByPath(pathToFile), new HashSet<>(), 0);
+    }
+
+    /**
+     * Write buffers of files are written before synchronisation of storage.
+     */
+    @Override
+    public void sync() {
+        flushWriteBuffers();
+        try {
+            storage.force();
+        } catch (IOException e) {
+            throw new FileManagerException("Storage cannot be synchronised!", e);
+        }
+    }
+
+    /**
+     * Reading of file writes its buffered data first, reading of directory (with sizes of its files) writes
+     * buffered data of all files, so such reads change file system.
+     *
+     * @param path to file or directory which is going to be read
+     * @return true if reading of path writes buffered data
+     * @see FileManagerSynchronized
+     */
+    boolean hasWriteBuffers(String path) {
+        if (writeBuffers.isEmpty()) {
+            return false;
+        }
+        int inodeNum = findInodeByPath(path);
+        return writeBuffers.containsKey(inodeNum) || superBlockService.readInode(inodeNum).getFileType() == DIRECTORY;
+    }
+
+    /**
+     * Writes buffered data which is written by reading of path (see {@link #hasWriteBuffers(String)}).
+     *
+     * @param path to file or directory which is going to be read
+     */
+    void flushWriteBuffers(String path) {
+        int inodeNum = findInodeByPath(path);
+        if (superBlockService.readInode(inodeNum).getFileType() == DIRECTORY) {
+            flushWriteBuffers();
+        } else {
+            flushWriteBuffer(inodeNum);
+        }
+    }
+
+    /**
+     * Finds files which sequences of segments are fragmented, only inodes of range are checked.
+     *
+     * @param fromInode   the first inodeNum of range (inclusive)
+     * @param toInode     the last inodeNum of range (exclusive)
+     * @param minSegments file with so many segments (at least) is considered fragmented
+     * @return inodeNums of fragmented files
+     */
+    public List<Integer> findFragmentedFiles(int fromInode, int toInode, int minSegments) {
+        List<Integer> fragmentedFiles = new ArrayList<>();
+        superBlockService.forEachUsedInode(fromInode, min(toInode, getNumOfInodes()), (inode, inodeNum) -> {
+            if (inode.getFileType() == FILE && !inode.isInline()
+                    && segmentAllocatorService.countSegments(inode.getSegment()) >= minSegments) {
+                fragmentedFiles.add(inodeNum);
+            }
+        });
+        return fragmentedFiles;
+    }
+
+    /**
+     * Moves data of file to one free segment at once (see {@link #startMove(int)}).
+     *
+     * @param inodeNum inode of file
+     * @return num of moved bytes (0 if file isn't fragmented or there isn't free segment for all its data)
+     */
+    public long defragmentFile(int inodeNum) {
+        FileMove move = startMove(inodeNum);
+        if (move == null) {
+            return 0;
+        }
         try {
-            file = poolOfFiles.take();
-            return getFileSize(getFileInodeByPath(pathToFile, file), new HashSet<>(), 0, file);
+            while (copyNextChunk(move) > 0) {
+                // file is copied till the end
+            }
+            return finishMove(move);
         } finally {
-            poolOfFiles.put(file);
+            discardMove(move);
+        }
+    }
+
+    /**
+     * Starts moving of file to one free segment: buffered data of file is written and the segment for all data
+     * is allocated. Data is copied by {@link #copyNextChunk(FileMove)}, which needs only reading of file system,
+     * so only start and finish of the move need exclusive access.
+     *
+     * @param inodeNum inode of file
+     * @return started move or null if file isn't fragmented or there isn't free segment for all its data
+     */
+    FileMove startMove(int inodeNum) {
+        if (!superBlockService.isInodeUsed(inodeNum) || moves.containsKey(inodeNum)
+                || detachedReaders.containsKey(inodeNum)) {
+            return null;
+        }
+        flushWriteBuffer(inodeNum);
+        Inode inode = superBlockService.readInode(inodeNum);
+        if (inode.getFileType() != FILE || inode.isInline()
+                || segmentAllocatorService.countSegments(inode.getSegment()) == 1) {
+            return null;
+        }
+
+        int newSegment = segmentAllocatorService.allocateContiguousSegment(inode.getSegment());
+        if (newSegment == -1) {
+            return null;
+        }
+        FileMove move = new FileMove(
+                inodeNum, inode.getSegment(), newSegment, inode.getSize(),
+                superBlockService.getPageSize() * MOVE_CHUNK_IN_PAGES
+        );
+        moves.put(inodeNum, move);
+        return move;
+    }
+
+    /**
+     * Copies the next chunk of moved file to its new segment.
+     *
+     * @param move started move
+     * @return num of copied bytes (0 if all data is copied or file was changed since start of the move)
+     */
+    int copyNextChunk(FileMove move) {
+        if (move.isChanged() || move.isCopied()) {
+            return 0;
+        }
+        ByteBuffer chunk = move.getChunk();
+        chunk.clear();
+        chunk.limit((int) min(chunk.capacity(), move.getLength() - move.getCopied()));
+        segmentAllocatorService.readDataFromSegment(move.getOldSegment(), move.getCopied(), chunk);
+        chunk.flip();
+        segmentAllocatorService.overwriteDataInSegment(move.getNewSegment(), move.getCopied(), chunk);
+        move.addCopied(chunk.limit());
+        return chunk.limit();
+    }
+
+    /**
+     * Switches file to its new segment, if all data is copied, file wasn't changed since start of the move and
+     * it isn't read by async read or byte stream (they read the old segments), otherwise the move is discarded.
+     * The new segment is synchronised with storage before inode is switched to it, so after crash file has either
+     * old or new segments (pages of the other ones are freed by rebuilding of free space bitmap).
+     *
+     * @param move started move
+     * @return num of moved bytes (0 if the move is discarded)
+     */
+    long finishMove(FileMove move) {
+        if (!moves.remove(move.getInodeNum(), move)) {
+            return 0;
+        }
+        if (move.isChanged() || !move.isCopied() || detachedReaders.containsKey(move.getInodeNum())) {
+            segmentAllocatorService.releaseSegment(move.getNewSegment());
+            return 0;
+        }
+        try {
+            storage.force();
+        } catch (IOException e) {
+            segmentAllocatorService.releaseSegment(move.getNewSegment());
+            throw new FileManagerException("Storage cannot be synchronised!", e);
+        }
+        Inode inode = superBlockService.readInode(move.getInodeNum());
+        inode.setSegment(move.getNewSegment());
+        inode.setLastSegment(move.getNewSegment());
+        superBlockService.updateInode(move.getInodeNum(), inode);
+        segmentAllocatorService.releaseSegment(move.getOldSegment());
+        return move.getLength();
+    }
+
+    /**
+     * Releases the new segment of move, which wasn't finished (nothing is done for finished move).
+     *
+     * @param move started move
+     */
+    void discardMove(FileMove move) {
+        if (moves.remove(move.getInodeNum(), move)) {
+            segmentAllocatorService.releaseSegment(move.getNewSegment());
+        }
+    }
+
+    public int getNumOfInodes() {
+        return superBlockService.getNumOfInodes();
+    }
+
+    /**
+     * Closes underlying storage, after that file system cannot be used anymore.
+     * Preallocated pages which files haven't filled are released.
+     * Free space bitmap is marked clean only after all data is written, so it isn't trusted after crash.
+     */
+    @Override
+    public void close() {
+        flushWriteBuffers();
+        segmentAllocatorService.trimPreallocatedSegments();
+        try {
+            storage.force();
+            freeSpaceBitmap.setClean(true);
+            storage.close();
+        } catch (IOException e) {
+            throw new FileManagerException("Storage cannot be closed!", e);
         }
     }
 
     // some useful methods --------------------------------------------------------------------------
 
-    private long getFileSize(int inodeNum, Set<Integer> consideredInodes, long accumulated, RandomAccessFile file) {
+    private long getFileSize(int inodeNum, Set<Integer> consideredInodes, long accumulated) {
         if (consideredInodes.contains(inodeNum)) {
             return accumulated;
         }
 
-        Inode inode = superBlockService.readInode(inodeNum, file);
+        flushWriteBuffer(inodeNum);
+        Inode inode = superBlockService.readInode(inodeNum);
         if (inode.getFileType() == FILE) {
             consideredInodes.add(inodeNum);
             return inode.getSize() + accumulated;
         }
 
-        Directory directory = readDirectory(inodeNum, file);
+        Directory directory = readDirectory(inodeNum);
         for (DEntry dEntry : directory.getdEntries()) {
-            accumulated = getFileSize(dEntry.getInode(), consideredInodes, accumulated, file);
+            accumulated = getFileSize(dEntry.getInode(), consideredInodes, accumulated);
         }
 
         return accumulated;
     }
 
-    public long getFileSize(int inodeNum, RandomAccessFile file) {
-        return getFileSize(inodeNum, new HashSet<>(), 0, file);
+    public long getFileSize(int inodeNum) {
+        return getFileSize(inodeNum, new HashSet<>(), 0);
     }
 
-    private boolean checkCyclicReferences(String ancestor, String directoryPathToCheck, RandomAccessFile file) {
+    private boolean checkCyclicReferences(String ancestor, String directoryPathToCheck) {
         if (checkThatDirectoryAncestor(ancestor, directoryPathToCheck)) {
-            Inode fileInode = superBlockService.readInode(getFileInodeByPath(ancestor, file), file);
+            Inode fileInode = superBlockService.readInode(getFileInodeByPath(ancestor));
             return fileInode.getFileType() == DIRECTORY;
         }
         return false;
     }
 
-    private void removeFile(String pathToFileParent, String fileName, RandomAccessFile file) {
-        int parentInodeNum = getFileInodeByPath(pathToFileParent, file);
-        removeDEntryFromDirectory(parentInodeNum, DEntry.of(fileName, -1), file);
+    private void removeFile(String pathToFileParent, String fileName) {
+        int parentInodeNum = getFileInodeByPath(pathToFileParent);
+        removeDEntryFromDirectory(parentInodeNum, DEntry.of(fileName, -1));
     }
 
-    private List<DEntry> getContentInDirectory(String path, RandomAccessFile file) {
-        int inode = getFileInodeByPath(path, file);
-        return readDirectory(inode, file).getdEntries();
+    private List<DEntry> getContentInDirectory(String path) {
+        int inode = getFileInodeByPath(path);
+        return readDirectory(inode).getdEntries();
     }
 
 
@@ -501,31 +938,31 @@ public class FileManager implements OneFileSystem {
         }
     }
 
-    private Directory readDirectory(int inodeNum, RandomAccessFile file) {
-        Inode inode = superBlockService.readInode(inodeNum, file);
+    private Directory readDirectory(int inodeNum) {
+        Inode inode = superBlockService.readInode(inodeNum);
         if (inode.getFileType() != DIRECTORY)
             throw new FileManagerException("File isn't directory");
-        return Directory.of(
-                segmentAllocatorService.readDataFromSegmentByByteStream(inode.getSegment(), file)
-        );
+        try (ByteStream stream = segmentAllocatorService.readDataFromSegmentByByteStream(inode.getSegment())) {
+            return Directory.of(stream);
+        }
     }
 
-    private void addDEntryToDirectory(int inodeOfParent, DEntry dEntry, RandomAccessFile file) {
-        Directory parentDirectory = readDirectory(inodeOfParent, file);
+    private void addDEntryToDirectory(int inodeOfParent, DEntry dEntry) {
+        Directory parentDirectory = readDirectory(inodeOfParent);
 
         if (!parentDirectory.addDEntry(dEntry)) {
             throw new FileManagerException("File already exists! " + dEntry.getName());
         }
 
-        reallocateSegments(inodeOfParent, file);
-        writeDataByInode(inodeOfParent, parentDirectory.toByteArray(), file);
+        reallocateSegments(inodeOfParent);
+        writeDataByInode(inodeOfParent, parentDirectory.toByteArray());
     }
 
 
-    private void removeDEntryFromDirectory(int inodeOfParent, DEntry dEntry, RandomAccessFile file) {
-        Directory parentDirectory = readDirectory(inodeOfParent, file);
+    private void removeDEntryFromDirectory(int inodeOfParent, DEntry dEntry) {
+        Directory parentDirectory = readDirectory(inodeOfParent);
 
-        reallocateSegments(inodeOfParent, file);
+        reallocateSegments(inodeOfParent);
 
         DEntry removedFileDEntry = parentDirectory.getDEntry(dEntry);
 
@@ -534,83 +971,319 @@ public class FileManager implements OneFileSystem {
         }
 
         parentDirectory.removeDEntry(removedFileDEntry);
-        writeDataByInode(inodeOfParent, parentDirectory.toByteArray(), file);
+        writeDataByInode(inodeOfParent, parentDirectory.toByteArray());
 
         int removedFileInodeNum = removedFileDEntry.getInode();
-        Inode removedFileInode = superBlockService.readInode(removedFileInodeNum, file);
+        Inode removedFileInode = superBlockService.readInode(removedFileInodeNum);
         removedFileInode.decrementCounter();
 
         if (removedFileInode.getCounter() == 0) {
             if (removedFileInode.getFileType() == DIRECTORY) {
-                Directory directory = readDirectory(removedFileInodeNum, file);
-                directory.getdEntries().forEach(dEntryInside -> removeDEntryFromDirectory(removedFileInodeNum, dEntryInside, file));
+                Directory directory = readDirectory(removedFileInodeNum);
+                directory.getdEntries().forEach(dEntryInside -> removeDEntryFromDirectory(removedFileInodeNum, dEntryInside));
             }
 
-            removedFileInode = superBlockService.readInode(removedFileInodeNum, file);
-            superBlockService.removeInode(removedFileInodeNum, file);
-            segmentAllocatorService.releaseSegment(removedFileInode.getSegment(), file);
+            writeBuffers.remove(removedFileInodeNum); // buffered data of removed file isn't needed
+            removedFileInode = superBlockService.readInode(removedFileInodeNum);
+            superBlockService.removeInode(removedFileInodeNum);
+            if (!removedFileInode.isInline()) {
+                markMovedFileChanged(removedFileInodeNum);
+                segmentAllocatorService.releaseSegment(removedFileInode.getSegment());
+            }
         } else {
-            superBlockService.updateInode(removedFileInodeNum, removedFileInode, file);
+            superBlockService.updateInode(removedFileInodeNum, removedFileInode);
         }
     }
 
-    private void writeDataByInode(int inodeNum, byte[] data, int length, RandomAccessFile file) {
-        Inode inode = superBlockService.readInode(inodeNum, file);
-        int lastSegment = segmentAllocatorService.writeDataToSegment(inode.getLastSegment(), data, length, file);
+    /*
+     * Data is appended to inline data of file while it fits there, otherwise file is moved to segments.
+     */
+    private void writeDataByInode(int inodeNum, byte[] data, int length) {
+        Inode inode = superBlockService.readInode(inodeNum);
+        if (inode.isInline()) {
+            if (inode.getSize() + length <= superBlockService.getInlineDataSize()) {
+                superBlockService.writeInlineData(inodeNum, inode.getSize(), ByteBuffer.wrap(data, 0, length));
+                inode.addSize(length);
+                superBlockService.updateInode(inodeNum, inode);
+                return;
+            }
+            moveInlineDataToSegments(inodeNum, inode, length);
+        }
+        markMovedFileChanged(inodeNum);
+        int lastSegment = segmentAllocatorService.writeDataToSegment(inode.getLastSegment(), data, length);
         inode.setLastSegment(lastSegment);
-        inode.addSize(data.length);
-        superBlockService.updateInode(inodeNum, inode, file);
+        inode.addSize(length);
+        superBlockService.updateInode(inodeNum, inode);
+    }
+
+    private void writeDataByInode(int inodeNum, ReadableByteChannel in, long length) throws IOException {
+        Inode inode = superBlockService.readInode(inodeNum);
+        if (inode.isInline()) {
+            if (inode.getSize() + length <= superBlockService.getInlineDataSize()) {
+                ByteBuffer data = ByteBuffer.allocate((int) length);
+                while (data.hasRemaining() && in.read(data) != -1) {
+                    // channel is read till the end
+                }
+                writeDataByInode(inodeNum, data.array(), data.position());
+                return;
+            }
+            moveInlineDataToSegments(inodeNum, inode, length);
+        }
+        markMovedFileChanged(inodeNum);
+        int lastSegment = segmentAllocatorService.writeDataToSegment(inode.getLastSegment(), in, length);
+        inode.setLastSegment(lastSegment);
+        inode.addSize(length);
+        superBlockService.updateInode(inodeNum, inode);
+    }
+
+    private void writeDataByInode(int inodeNum, byte[] data) {
+        writeDataByInode(inodeNum, data, data.length);
+    }
+
+    /*
+     * Segments are allocated for inline data together with appended one, so that file stays contiguous.
+     */
+    private void moveInlineDataToSegments(int inodeNum, Inode inode, long appended) {
+        ByteBuffer data = ByteBuffer.allocate((int) inode.getSize());
+        superBlockService.readInlineData(inodeNum, 0, data);
+        int segment = segmentAllocatorService.allocateSegmentsInBytes(inode.getSize() + appended);
+        int lastSegment = segmentAllocatorService.writeDataToSegment(segment, data.array());
+        inode.setSegment(segment);
+        inode.setLastSegment(lastSegment);
+        superBlockService.updateInode(inodeNum, inode);
+    }
+
+    /*
+     * Async reads and byte streams read segments of file after the call returns, so segments aren't released
+     * by defragmentation till they are finished.
+     */
+    private void addDetachedReader(int inodeNum) {
+        detachedReaders.merge(inodeNum, 1, Integer::sum);
+    }
+
+    private void removeDetachedReader(int inodeNum) {
+        detachedReaders.computeIfPresent(inodeNum, (key, readers) -> readers == 1 ? null : readers - 1);
     }
 
-    private void writeDataByInode(int inodeNum, byte[] data, RandomAccessFile file) {
-        writeDataByInode(inodeNum, data, data.length, file);
+    /*
+     * Move of file which is changed is discarded, as it has copied the old data.
+     */
+    private void markMovedFileChanged(int inodeNum) {
+        FileMove move = moves.get(inodeNum);
+        if (move != null) {
+            move.setChanged();
+        }
+    }
+
+    /*
+     * Data of small file is kept in its inode entry, data of other files is in segments.
+     */
+    private void readFileData(int inodeNum, Inode inode, long position, ByteBuffer dst) {
+        if (inode.isInline()) {
+            superBlockService.readInlineData(inodeNum, position, dst);
+        } else {
+            segmentAllocatorService.readDataFromSegment(inode.getSegment(), position, dst);
+        }
     }
 
-    private int getSegmentsAmount(FileSystemConfiguration configuration, long superBlockOffset) {
-        return (int) ((configuration.getSize() - superBlockOffset) / configuration.getPageSize());
+    private ByteStream readFileDataByByteStream(int inodeNum, Inode inode) {
+        return inode.isInline()
+                ? superBlockService.readInlineDataByByteStream(inodeNum)
+                : segmentAllocatorService.readDataFromSegmentByByteStream(inode.getSegment());
     }
 
-    private int allocateNewDirectory(Directory directory, RandomAccessFile file) {
-        int segment = segmentAllocatorService.allocateSegments(1, file);
-        int inode = superBlockService.acquireInode(new Inode(segment, 0, DIRECTORY, 1), file);
+    /*
+     * Page size is needed for page cache, for existing file system it is read from the file (after its format
+     * is checked).
+     */
+    private Storage openStorage(FileSystemConfiguration configuration, ToIntFunction<Storage> pageSizeOfFileSystem) {
+        Storage fileStorage;
+        try {
+            switch (configuration.getStorageType()) {
+                case MEMORY_MAPPED:
+                    fileStorage = new MappedStorage(configuration.getFile());
+                    break;
+                case ASYNC_FILE_CHANNEL:
+                    fileStorage = new AsyncFileChannelStorage(configuration.getFile());
+                    break;
+                case FILE_CHANNEL:
+                default:
+                    fileStorage = new FileChannelStorage(configuration.getFile());
+            }
+        } catch (IOException e) {
+            throw new FileManagerException("File doesn't exist!", e);
+        }
+        if (configuration.isExistingFileSystem()) {
+            checkFormat(fileStorage, configuration.getFile());
+        }
 
-        writeDataByInode(inode, directory.toByteArray(), file);
+        if (configuration.getPageCacheSize() == 0) {
+            return fileStorage;
+        }
+        try {
+            return new CachedStorage(
+                    fileStorage, pageSizeOfFileSystem.applyAsInt(fileStorage), configuration.getPageCacheSize()
+            );
+        } catch (IOException e) {
+            throw new FileManagerException("Page cache cannot be created!", e);
+        }
+    }
+
+    /*
+     * File system of other layout (or file which isn't file system) would be read as garbage, pages which are
+     * in use would be given out then, so such file is rejected before anything is read from it.
+     */
+    private static void checkFormat(Storage storage, File file) {
+        if (SuperBlockService.isSupportedFormat(storage)) {
+            return;
+        }
+        FileManagerException exception = new FileManagerException(
+                file + " doesn't contain file system of supported format"
+                        + " (it was created by older version or it isn't file system at all)!"
+        );
+        try {
+            storage.close();
+        } catch (IOException e) {
+            exception.addSuppressed(e);
+        }
+        throw exception;
+    }
+
+    private Inode readFileInode(int inodeNum, String pathToFile) {
+        Inode inode = superBlockService.readInode(inodeNum);
+
+        if (inode.getFileType() != FILE) {
+            throw new FileManagerException(pathToFile + " isn't a file!");
+        }
         return inode;
     }
 
-    private int allocateNewBaseFileInf(long size, String name, RandomAccessFile file) {
-        int segment = segmentAllocatorService.allocateSegmentsInBytes(size, file);
-        int inode = superBlockService.acquireInode(new Inode(segment, 0, FILE, 1), file);
+    /*
+     * Name is stored at the start of file as its size and bytes.
+     */
+    private long getSizeOfName(int inodeNum, Inode fileInode) {
+        ByteBuffer sizeOfName = ByteBuffer.allocate(4);
+        readFileData(inodeNum, fileInode, 0, sizeOfName);
+        return 4 + sizeOfName.getInt(0);
+    }
 
-        writeDataByInode(inode, BaseFileInf.of(name).toByteArray(), file);
+    /*
+     * Allocated pages are found by walking sequences of all used inodes in parallel.
+     */
+    private void rebuildFreeSpaceBitmap(int parallelism) {
+        AllocationScanner allocationScanner = new AllocationScanner(
+                superBlockService,
+                storage,
+                freeSpaceBitmap.getEndOffset(),
+                superBlockService.getPageSize(),
+                freeSpaceBitmap.getNumOfPages()
+        );
+        freeSpaceBitmap.rebuild(allocationScanner.scan(Math.max(1, parallelism)));
+    }
+
+    /*
+     * Pages share space after superBlock with their bitmap.
+     */
+    private int getSegmentsAmount(long size, SuperBlockService superBlockService) {
+        return FreeSpaceBitmap.getCapacityInPages(
+                size - superBlockService.getSuperBlockOffset(), superBlockService.getPageSize()
+        );
+    }
+
+    /*
+     * Placement is like Orlov allocator's one: directories of root are spread apart (every of them is placed
+     * in allocation group with the most free pages and in the same part of inode table), other directories
+     * are placed near their parents.
+     */
+    private int allocateNewDirectory(Directory directory, int parentInode) {
+        int goal;
+        int inodeGoal;
+        if (parentInode == 0) { // root
+            goal = segmentAllocatorService.getFirstPageOfFreestGroup();
+            inodeGoal = (int) ((long) goal * superBlockService.getNumOfInodes()
+                    / segmentAllocatorService.getCapacity());
+        } else {
+            goal = superBlockService.readInode(parentInode).getSegment();
+            inodeGoal = parentInode;
+        }
+
+        int segment = segmentAllocatorService.allocateSegments(1, goal);
+        int inode = superBlockService.acquireInode(new Inode(segment, 0, DIRECTORY, 1), inodeGoal);
+
+        writeDataByInode(inode, directory.toByteArray());
         return inode;
     }
 
-    private void initialiseRoot() {
-        RandomAccessFile file = null;
-        try {
-            file = poolOfFiles.take();
-            allocateNewDirectory(new Directory("", DEntry.of("", -1), emptyList()), file);
-        } finally {
-            poolOfFiles.put(file);
+    /*
+     * File is placed near its directory (both its inode and its first segment), so that files of directory
+     * are read from a few nearby regions. Small file takes no segment, if its data fits in inode entry.
+     */
+    private int allocateNewBaseFileInf(long size, String name, int parentInode) {
+        byte[] nameBytes = BaseFileInf.of(name).toByteArray();
+        int segment = Inode.INLINE_SEGMENT;
+        if (nameBytes.length + size > superBlockService.getInlineDataSize()) {
+            int goal = superBlockService.readInode(parentInode).getSegment();
+            segment = segmentAllocatorService.allocateSegmentsInBytes(size, goal);
         }
+        int inode = superBlockService.acquireInode(new Inode(segment, 0, FILE, 1), parentInode);
+
+        writeDataByInode(inode, nameBytes);
+        return inode;
     }
 
-    private void reallocateSegments(int inodeNum, RandomAccessFile file) {
-        Inode inode = superBlockService.readInode(inodeNum, file);
-        segmentAllocatorService.releaseSegment(inode.getSegment(), file);
-        int newSegment = segmentAllocatorService.allocateSegmentsInBytes(inode.getSize(), file);
+    private void initialiseRoot() {
+        int segment = segmentAllocatorService.allocateSegments(1);
+        int inode = superBlockService.acquireInode(new Inode(segment, 0, DIRECTORY, 1));
+        writeDataByInode(inode, new Directory("", DEntry.of("", -1), emptyList()).toByteArray());
+    }
+
+    private void reallocateSegments(int inodeNum) {
+        Inode inode = superBlockService.readInode(inodeNum);
+        segmentAllocatorService.releaseSegment(inode.getSegment());
+        // directory stays in its place, if it fits there
+        int newSegment = segmentAllocatorService.allocateSegmentsInBytes(inode.getSize(), inode.getSegment());
         inode.setSegment(newSegment);
         inode.setLastSegment(newSegment);
         inode.setSize(0);
-        superBlockService.updateInode(inodeNum, inode, file);
+        superBlockService.updateInode(inodeNum, inode);
+    }
+
+    /*
+     * Buffered data of file is written, so that it is visible for operation which needs inode.
+     */
+    private int getFileInodeByPath(String path) {
+        int inodeNum = findInodeByPath(path);
+        flushWriteBuffer(inodeNum);
+        return inodeNum;
+    }
+
+    /*
+     * Writes buffered data of file by one allocation. Buffer is written under its monitor, so concurrent flushes
+     * of file wait for each other (synchronized instance flushes buffers only under write lock).
+     */
+    private void flushWriteBuffer(int inodeNum) {
+        WriteBehindBuffer writeBuffer = writeBuffers.get(inodeNum);
+        if (writeBuffer == null) {
+            return;
+        }
+        synchronized (writeBuffer) {
+            if (writeBuffer.size() > 0) {
+                writeDataByInode(inodeNum, writeBuffer.getData(), writeBuffer.size());
+                writeBuffer.clear();
+            }
+            writeBuffers.remove(inodeNum, writeBuffer);
+        }
     }
 
-    private int getFileInodeByPath(String path, RandomAccessFile file) {
+    private void flushWriteBuffers() {
+        new ArrayList<>(writeBuffers.keySet()).forEach(this::flushWriteBuffer);
+    }
+
+    private int findInodeByPath(String path) {
         List<String> steps = pathToSteps(path);
 
         int curr = 0;
-        Directory curDirectory = readDirectory(curr, file);
+        Directory curDirectory = readDirectory(curr);
 
         for (int i = 0; i < steps.size() - 1; i++) {
             List<DEntry> dEntries = curDirectory.getdEntries();
@@ -620,7 +1293,7 @@ public class FileManager implements OneFileSystem {
             }
 
             curr = dEntries.get(neededDirectory).getInode();
-            curDirectory = readDirectory(curr, file);
+            curDirectory = readDirectory(curr);
         }
 
         String lastStep = steps.get(steps.size() - 1);
@@ -635,26 +1308,49 @@ public class FileManager implements OneFileSystem {
         return curDirectory.getdEntries().get(neededFile).getInode();
     }
 
-    private void createHardLink(String pathToFile, String whereToAdd, String nameOfHardLink, RandomAccessFile file) {
-        nameOfHardLink = cleanFileName(nameOfHardLink);
-        checkFileName(nameOfHardLink);
-        if (checkCyclicReferences(pathToFile, whereToAdd, file)) {
-            throw new FileManagerException("Cyclic reference creation!");
+    /*
+     * Stream of file which is given to user, file stops being read when stream is read till the end or closed.
+     */
+    private class DetachedByteStream implements ByteStream {
+        private final int inodeNum;
+        private final ByteStream byteStream;
+        private boolean finished;
+
+        private DetachedByteStream(int inodeNum, ByteStream byteStream) {
+            this.inodeNum = inodeNum;
+            this.byteStream = byteStream;
         }
-        int fileInode = getFileInodeByPath(pathToFile, file);
-        int directoryInodeNum = getFileInodeByPath(whereToAdd, file);
-        addDEntryToDirectory(directoryInodeNum, DEntry.of(nameOfHardLink, fileInode), file);
 
-        Inode inode = superBlockService.readInode(fileInode, file);
-        inode.incrementCounter();
-        superBlockService.updateInode(fileInode, inode, file);
-    }
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = byteStream.hasNext();
+            if (!hasNext) {
+                finish();
+            }
+            return hasNext;
+        }
 
-    private void createFile(String pathToFileParent, String fileName, long size, RandomAccessFile file) {
-        fileName = cleanFileName(fileName);
-        checkFileName(fileName);
-        int fileInodeNum = allocateNewBaseFileInf(size, fileName, file);
-        addDEntryToDirectory(getFileInodeByPath(pathToFileParent, file), DEntry.of(fileName, fileInodeNum), file);
-    }
+        @Override
+        public byte getByte() {
+            return byteStream.getByte();
+        }
+
+        @Override
+        public int getArr(byte[] arr) {
+            return byteStream.getArr(arr);
+        }
 
+        @Override
+        public void close() {
+            byteStream.close();
+            finish();
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                removeDetachedReader(inodeNum);
+            }
+        }
+    }
 }
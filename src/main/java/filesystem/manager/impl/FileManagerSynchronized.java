@@ -10,7 +10,11 @@ import filesystem.manager.OneFileSystem;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -32,6 +36,7 @@ public class FileManagerSynchronized implements OneFileSystem {
     private final FileManager fileManager;
     private final Lock readLock;
     private final Lock writeLock;
+    private final Defragmenter defragmenter; // null if files aren't defragmented in background
 
     {
         ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
@@ -40,12 +45,23 @@ public class FileManagerSynchronized implements OneFileSystem {
     }
 
     /**
-     * Creates and configures fileSystem
+     * Creates and configures fileSystem, starts background defragmentation if it is configured.
      *
      * @param fileSystemConfiguration object to take settings from
+     * @see FileSystemConfiguration#withBackgroundDefragmentation(int, long)
      */
     public FileManagerSynchronized(FileSystemConfiguration fileSystemConfiguration) {
         this.fileManager = new FileManager(fileSystemConfiguration);
+        if (fileSystemConfiguration.getDefragmentationMinSegments() > 0) {
+            this.defragmenter = new Defragmenter(
+                    fileManager, readLock, writeLock,
+                    fileSystemConfiguration.getDefragmentationMinSegments(),
+                    fileSystemConfiguration.getDefragmentationRate()
+            );
+            this.defragmenter.start();
+        } else {
+            this.defragmenter = null;
+        }
     }
 
     /**
@@ -55,6 +71,7 @@ public class FileManagerSynchronized implements OneFileSystem {
      */
     public FileManagerSynchronized(File file, int concurrencyLevel) {
         this.fileManager = new FileManager(file, concurrencyLevel);
+        this.defragmenter = null;
     }
 
 
@@ -78,14 +95,42 @@ public class FileManagerSynchronized implements OneFileSystem {
      */
     @Override
     public void copyDataFromFileToOutputStream(String pathToFile, OutputStream out) {
+        lockForReading(pathToFile);
         try {
-            readLock.lock();
             fileManager.copyDataFromFileToOutputStream(pathToFile, out);
         } finally {
             readLock.unlock();
         }
     }
 
+    /**
+     * @param pathToFile to file in one-file-system
+     * @param in         to copy data from
+     */
+    @Override
+    public void writeToFileFromChannel(String pathToFile, ReadableByteChannel in) {
+        try {
+            writeLock.lock();
+            fileManager.writeToFileFromChannel(pathToFile, in);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param pathToFile to file in one-file-system
+     * @param out        to copy data in
+     */
+    @Override
+    public void copyDataFromFileToChannel(String pathToFile, WritableByteChannel out) {
+        lockForReading(pathToFile);
+        try {
+            fileManager.copyDataFromFileToChannel(pathToFile, out);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     /**
      * @param pathToFile where to write
      * @param data       array of bytes to write
@@ -114,6 +159,99 @@ public class FileManagerSynchronized implements OneFileSystem {
     }
 
 
+    /**
+     * @param pathToFile to read
+     * @param dst        buffer to read in, should have enough space for content
+     * @return num of read bytes
+     */
+    @Override
+    public int readFully(String pathToFile, ByteBuffer dst) {
+        lockForReading(pathToFile);
+        try {
+            return fileManager.readFully(pathToFile, dst);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @param pathToFile where to write
+     * @param offset     position in content of file to start write from
+     * @param src        buffer to write
+     * @return num of written bytes
+     */
+    @Override
+    public int writeAt(String pathToFile, long offset, ByteBuffer src) {
+        try {
+            writeLock.lock();
+            return fileManager.writeAt(pathToFile, offset, src);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param pathToFile to truncate
+     * @param newLength  new length of content
+     */
+    @Override
+    public void truncate(String pathToFile, long newLength) {
+        try {
+            writeLock.lock();
+            fileManager.truncate(pathToFile, newLength);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param pathToFile to read
+     * @param offset     position in content of file to start read from
+     * @param dst        buffer to read in
+     * @return num of read bytes, -1 if offset is at the end of file or farther
+     */
+    @Override
+    public int readAt(String pathToFile, long offset, ByteBuffer dst) {
+        lockForReading(pathToFile);
+        try {
+            return fileManager.readAt(pathToFile, offset, dst);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Lock is held only while reads are issued, so file mustn't be changed till future is completed.
+     *
+     * @param pathToFile to read
+     * @param dst        buffer to read in, should have enough space for content
+     * @return future of num of read bytes
+     */
+    @Override
+    public CompletableFuture<Integer> readFullyAsync(String pathToFile, ByteBuffer dst) {
+        lockForReading(pathToFile);
+        try {
+            return fileManager.readFullyAsync(pathToFile, dst);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @param pathToFile to read
+     * @param offset     position in content of file to start read from
+     * @param dst        buffer to fill
+     */
+    @Override
+    public void readFully(String pathToFile, long offset, ByteBuffer dst) {
+        lockForReading(pathToFile);
+        try {
+            fileManager.readFully(pathToFile, offset, dst);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     /**
      * @param pathToFileParent directory where file is located
      * @param whereToMove      directory to place file in
@@ -136,8 +274,12 @@ public class FileManagerSynchronized implements OneFileSystem {
      */
     @Override
     public List<DirectoryReadResult> getFilesInDirectory(String path, boolean withSize) {
-        try {
+        if (withSize) {
+            lockForReading(path);
+        } else {
             readLock.lock();
+        }
+        try {
             return fileManager.getFilesInDirectory(path, withSize);
         } finally {
             readLock.unlock();
@@ -263,11 +405,75 @@ public class FileManagerSynchronized implements OneFileSystem {
      */
     @Override
     public long getFileSize(String pathToFile) {
+        lockForReading(pathToFile);
         try {
-            readLock.lock();
             return fileManager.getFileSize(pathToFile);
         } finally {
             readLock.unlock();
         }
     }
+
+    /**
+     * Buffered data is written under write lock.
+     */
+    @Override
+    public void sync() {
+        try {
+            writeLock.lock();
+            fileManager.sync();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Closes file system, waiting for all running operations (and for the chunk copied by defragmentation).
+     */
+    @Override
+    public void close() {
+        if (defragmenter != null) {
+            defragmenter.close();
+        }
+        try {
+            writeLock.lock();
+            fileManager.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return background defragmentation (null if it isn't configured)
+     */
+    Defragmenter getDefragmenter() {
+        return defragmenter;
+    }
+
+    /*
+     * Readers never change file system: if path has buffered data, which its reading would write, then the data is
+     * written under write lock, which is downgraded to read lock. Data cannot be buffered again till read lock is
+     * released, as appends take write lock.
+     */
+    private void lockForReading(String path) {
+        readLock.lock();
+        boolean hasWriteBuffers;
+        try {
+            hasWriteBuffers = fileManager.hasWriteBuffers(path);
+        } catch (RuntimeException e) {
+            readLock.unlock();
+            throw e;
+        }
+        if (!hasWriteBuffers) {
+            return;
+        }
+
+        readLock.unlock();
+        writeLock.lock();
+        try {
+            fileManager.flushWriteBuffers(path);
+            readLock.lock();
+        } finally {
+            writeLock.unlock();
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package filesystem.manager.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Move of file to one free segment, which is copied by chunks (see {@link FileManager#startMove(int)}).
+ * File is marked changed by every write to it during the move, then the move is discarded.
+ */
+class FileMove {
+    private final int inodeNum;
+    private final int oldSegment;
+    private final int newSegment;
+    private final long length;
+    private final ByteBuffer chunk; // data is copied through it
+    private long copied;
+    private boolean changed;
+
+    FileMove(int inodeNum, int oldSegment, int newSegment, long length, int chunkSize) {
+        this.inodeNum = inodeNum;
+        this.oldSegment = oldSegment;
+        this.newSegment = newSegment;
+        this.length = length;
+        this.chunk = ByteBuffer.allocate((int) Math.min(length, chunkSize));
+    }
+
+    int getInodeNum() {
+        return inodeNum;
+    }
+
+    int getOldSegment() {
+        return oldSegment;
+    }
+
+    int getNewSegment() {
+        return newSegment;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    ByteBuffer getChunk() {
+        return chunk;
+    }
+
+    long getCopied() {
+        return copied;
+    }
+
+    void addCopied(long bytes) {
+        copied += bytes;
+    }
+
+    boolean isCopied() {
+        return copied == length;
+    }
+
+    boolean isChanged() {
+        return changed;
+    }
+
+    void setChanged() {
+        changed = true;
+    }
+}
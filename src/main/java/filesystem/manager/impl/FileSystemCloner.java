@@ -0,0 +1,274 @@
+package filesystem.manager.impl;
+
+import filesystem.entity.ByteStream;
+import filesystem.entity.datastorage.Inode;
+import filesystem.entity.datastorage.SegmentMetaData;
+import filesystem.entity.exception.FileManagerException;
+import filesystem.entity.filesystem.DEntry;
+import filesystem.entity.filesystem.Directory;
+import filesystem.service.FreeSpaceBitmap;
+import filesystem.service.SegmentAllocatorService;
+import filesystem.service.SuperBlockService;
+import filesystem.service.allocation.AllocationPolicyType;
+import filesystem.storage.FileChannelStorage;
+import filesystem.storage.Storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static filesystem.entity.filesystem.FileType.DIRECTORY;
+
+/**
+ * Offline tool which copies file system to the new file, where every directory and file is one segment and
+ * segments follow each other in order of walking of namespace from root: directory is followed by its files and
+ * directories, then the content of its directories goes. So image has the best layout for reading of directories
+ * (for example for read-only deployments).
+ * <p>
+ * Inode numbers are kept, so directories are copied as they are and hard links stay shared inodes with the same
+ * counter, inline data of small files stays in their inodes. Inodes which aren't reachable from root aren't copied.
+ * Segments are allocated one after another in order of layout. Parallel copiers only read data of files in chunks
+ * of CHUNK_IN_PAGES pages to bounded queues, and one thread writes chunks file by file in order of layout, so the clone
+ * is written sequentially and memory doesn't depend on sizes of files.
+ * <p>
+ * Source file system mustn't be used by anybody during cloning, it is only read.
+ */
+public class FileSystemCloner {
+    private static final int MAX_FILES_IN_FLIGHT_PER_COPIER = 2;
+    private static final int CHUNK_IN_PAGES = 64; // how many pages of file are copied at once
+    private static final int CHUNKS_IN_FLIGHT_PER_FILE = 2; // read chunks of file which wait for writing
+    private static final ByteBuffer END_OF_FILE = ByteBuffer.allocate(0); // put to queue when reading is over
+
+    private final int parallelism;
+
+    /**
+     * @param parallelism num of threads copying data of files
+     */
+    public FileSystemCloner(int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("Num of copiers should be positive!");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param source file with file system to clone
+     * @param target file to create cloned file system in (it is overwritten), its size is just enough for all data
+     */
+    public void cloneCompacted(File source, File target) {
+        try (Storage sourceStorage = new FileChannelStorage(source)) {
+            SuperBlockService sourceSuperBlock = new SuperBlockService(sourceStorage);
+            FreeSpaceBitmap sourceBitmap = new FreeSpaceBitmap(sourceSuperBlock.getSuperBlockOffset(), sourceStorage);
+            SegmentAllocatorService sourceSegments = new SegmentAllocatorService(
+                    sourceBitmap.getEndOffset(), sourceBitmap.getNumOfPages(), sourceSuperBlock.getPageSize(),
+                    sourceStorage
+            );
+
+            List<Integer> layout = walkNamespace(sourceSuperBlock, sourceSegments);
+            long[] lengths = new long[sourceSuperBlock.getNumOfInodes()];
+            int numOfPages = 0;
+            for (int inodeNum : layout) {
+                Inode inode = sourceSuperBlock.readInode(inodeNum);
+                if (inode.isInline()) {
+                    lengths[inodeNum] = inode.getSize();
+                    continue;
+                }
+                lengths[inodeNum] = sourceSegments.getExtentMap(inode.getSegment()).getLength();
+                numOfPages += getNumOfPages(lengths[inodeNum], sourceSuperBlock.getPageSize());
+            }
+
+            writeClone(target, layout, lengths, numOfPages, sourceSuperBlock, sourceSegments);
+        } catch (IOException e) {
+            throw new FileManagerException("File reading went wrong during cloning of file system!", e);
+        }
+    }
+
+    /*
+     * Order of inodes in the clone: root, then entries of every directory right after each other, then the content
+     * of its directories. Inode with several hard links is placed only once.
+     */
+    private List<Integer> walkNamespace(SuperBlockService superBlock, SegmentAllocatorService segments) {
+        List<Integer> layout = new ArrayList<>();
+        BitSet placed = new BitSet(superBlock.getNumOfInodes());
+        Deque<Integer> directories = new ArrayDeque<>();
+
+        layout.add(0); // root
+        placed.set(0);
+        directories.push(0);
+        while (!directories.isEmpty()) {
+            Directory directory;
+            try (ByteStream stream = segments.readDataFromSegmentByByteStream(
+                    superBlock.readInode(directories.pop()).getSegment()
+            )) {
+                directory = Directory.of(stream);
+            }
+
+            List<Integer> childDirectories = new ArrayList<>();
+            for (DEntry dEntry : directory.getdEntries()) {
+                int inodeNum = dEntry.getInode();
+                if (placed.get(inodeNum)) {
+                    continue;
+                }
+                placed.set(inodeNum);
+                layout.add(inodeNum);
+                if (superBlock.readInode(inodeNum).getFileType() == DIRECTORY) {
+                    childDirectories.add(inodeNum);
+                }
+            }
+            // the first child directory is walked next
+            for (int i = childDirectories.size() - 1; i >= 0; i--) {
+                directories.push(childDirectories.get(i));
+            }
+        }
+        return layout;
+    }
+
+    /*
+     * Segments are allocated by this thread in order of layout, so they follow each other from the start of
+     * the clone. Copiers read data of the next files ahead, while this thread writes chunks of files in the same
+     * order, so writes to the clone go by ascending offsets.
+     */
+    private void writeClone(
+            File target, List<Integer> layout, long[] lengths, int numOfPages,
+            SuperBlockService sourceSuperBlock, SegmentAllocatorService sourceSegments
+    ) throws IOException {
+        int pageSize = sourceSuperBlock.getPageSize();
+        long superBlockOffset = sourceSuperBlock.getSuperBlockOffset();
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.setLength(
+                    superBlockOffset + FreeSpaceBitmap.getSizeInBytes(numOfPages) + (long) numOfPages * pageSize
+            );
+        }
+
+        ExecutorService copiers = Executors.newFixedThreadPool(parallelism);
+        try (Storage targetStorage = new FileChannelStorage(target)) {
+            SuperBlockService targetSuperBlock = new SuperBlockService(
+                    sourceSuperBlock.getNumOfInodes(), pageSize, sourceSuperBlock.getInlineDataSize(), targetStorage
+            );
+            FreeSpaceBitmap targetBitmap = new FreeSpaceBitmap(numOfPages, superBlockOffset, targetStorage);
+            SegmentAllocatorService targetSegments = new SegmentAllocatorService(
+                    targetBitmap, pageSize, targetStorage, 0, AllocationPolicyType.FIRST_FIT, 1, 0
+            );
+
+            Deque<FileCopy> inFlight = new ArrayDeque<>();
+            for (int inodeNum : layout) {
+                Inode inode = sourceSuperBlock.readInode(inodeNum);
+                int segment = Inode.INLINE_SEGMENT;
+                if (inode.isInline()) {
+                    ByteBuffer data = ByteBuffer.allocate((int) lengths[inodeNum]);
+                    sourceSuperBlock.readInlineData(inodeNum, 0, data);
+                    data.flip();
+                    targetSuperBlock.writeInlineData(inodeNum, 0, data);
+                } else {
+                    segment = targetSegments.allocateSegmentsInBytes(lengths[inodeNum]);
+                    if (inFlight.size() == parallelism * MAX_FILES_IN_FLIGHT_PER_COPIER) {
+                        writeFile(inFlight.poll(), targetSegments);
+                    }
+                    FileCopy copy = new FileCopy(segment, lengths[inodeNum], pageSize);
+                    int sourceSegment = inode.getSegment();
+                    copy.reading = copiers.submit(() -> readData(sourceSegments, sourceSegment, copy));
+                    inFlight.add(copy);
+                }
+
+                int clonedInodeNum = targetSuperBlock.acquireInode(
+                        new Inode(segment, inode.getSize(), inode.getFileType(), inode.getCounter(), segment),
+                        inodeNum
+                );
+                if (clonedInodeNum != inodeNum)
+                    throw new FileManagerException("Inode " + inodeNum + " cannot be kept in clone!");
+            }
+            while (!inFlight.isEmpty()) {
+                writeFile(inFlight.poll(), targetSegments);
+            }
+
+            targetStorage.force();
+            targetBitmap.setClean(true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileManagerException("Cloning of file system was interrupted!", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new FileManagerException("File reading went wrong during cloning of file system!", e.getCause());
+        } finally {
+            copiers.shutdownNow();
+        }
+    }
+
+    /*
+     * Data is read by chunks, so memory doesn't depend on size of file. Copier waits for a free buffer of file,
+     * so it is never farther than CHUNKS_IN_FLIGHT_PER_FILE chunks ahead of writing.
+     */
+    private static Void readData(SegmentAllocatorService source, int sourceSegment, FileCopy copy)
+            throws InterruptedException {
+        try {
+            for (long read = 0; read < copy.length; ) {
+                ByteBuffer chunk = copy.freeChunks.take();
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), copy.length - read));
+                source.readDataFromSegment(sourceSegment, read, chunk);
+                read += chunk.position();
+                copy.readChunks.add(chunk);
+            }
+        } finally {
+            copy.readChunks.add(END_OF_FILE);
+        }
+        return null;
+    }
+
+    /*
+     * Read chunks are appended to the target segment, which is allocated for all data, so appending doesn't
+     * allocate anything. Failure of reading is thrown after the last chunk it has read.
+     */
+    private static void writeFile(FileCopy copy, SegmentAllocatorService target)
+            throws InterruptedException, ExecutionException {
+        while (true) {
+            ByteBuffer chunk = copy.readChunks.take();
+            if (chunk == END_OF_FILE) {
+                break;
+            }
+            target.writeDataToSegment(copy.targetSegment, chunk.array(), chunk.position());
+            copy.freeChunks.add(chunk);
+        }
+        copy.reading.get();
+    }
+
+    /*
+     * Pages of one segment with all data (meta data of segment is placed before data).
+     */
+    private static int getNumOfPages(long length, int pageSize) {
+        return (int) Math.ceil((SegmentMetaData.getSizeOfStructure() + length) / (double) pageSize);
+    }
+
+    /*
+     * Chunks of file go from copier to writing thread through readChunks and come back through freeChunks.
+     */
+    private static class FileCopy {
+        private final int targetSegment;
+        private final long length;
+        private final BlockingQueue<ByteBuffer> freeChunks = new ArrayBlockingQueue<>(CHUNKS_IN_FLIGHT_PER_FILE);
+        private final BlockingQueue<ByteBuffer> readChunks = new LinkedBlockingQueue<>();
+        private Future<?> reading;
+
+        FileCopy(int targetSegment, long length, int pageSize) {
+            this.targetSegment = targetSegment;
+            this.length = length;
+            int chunkSize = (int) Math.min(length, (long) pageSize * CHUNK_IN_PAGES);
+            for (int i = 0; i < CHUNKS_IN_FLIGHT_PER_FILE; i++) {
+                freeChunks.add(ByteBuffer.allocate(chunkSize));
+            }
+        }
+    }
+}
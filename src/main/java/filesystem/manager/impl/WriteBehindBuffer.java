@@ -0,0 +1,42 @@
+package filesystem.manager.impl;
+
+import java.util.Arrays;
+
+/**
+ * In memory data appended to file, which isn't written to segments yet.
+ * Not thread-safe, buffer is used under its monitor.
+ */
+class WriteBehindBuffer {
+    private byte[] data;
+    private int size;
+
+    /**
+     * @param initialCapacity expected num of bytes
+     */
+    WriteBehindBuffer(int initialCapacity) {
+        this.data = new byte[initialCapacity];
+    }
+
+    void append(byte[] toAppend) {
+        if (size + toAppend.length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + toAppend.length));
+        }
+        System.arraycopy(toAppend, 0, data, size, toAppend.length);
+        size += toAppend.length;
+    }
+
+    /**
+     * @return array, the first size bytes of which are buffered data
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
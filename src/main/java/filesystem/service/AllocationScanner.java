@@ -0,0 +1,214 @@
+package filesystem.service;
+
+import filesystem.entity.datastorage.Inode;
+import filesystem.entity.datastorage.SegmentMetaData;
+import filesystem.entity.exception.SegmentAllocatorException;
+import filesystem.storage.Storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds allocated pages by walking sequences of segments of all used inodes. It is used to rebuild free space bitmap
+ * of file system which wasn't closed properly.
+ * <p>
+ * Inode table is split on ranges which are walked in parallel on ForkJoinPool, every range collects its pages
+ * to own BitSet and results are merged by union. Torn sequences are repaired on the way.
+ *
+ * @see FreeSpaceBitmap
+ */
+public class AllocationScanner {
+    private static final int INODES_PER_TASK = 1024; // range of inodes which isn't split anymore
+
+    private final SuperBlockService superBlockService;
+    private final Storage storage;
+    private final long initialOffset;
+    private final int pageSize;
+    private final int numOfPages;
+    private final AtomicInteger numOfCutSequences = new AtomicInteger();
+    private final AtomicInteger numOfTrimmedPages = new AtomicInteger();
+
+    /**
+     * @param superBlockService super block with inodes to walk
+     * @param storage           storage of file
+     * @param initialOffset     where segments start in file
+     * @param pageSize          size of page
+     * @param numOfPages        how many pages file system has
+     */
+    public AllocationScanner(
+            SuperBlockService superBlockService, Storage storage, long initialOffset, int pageSize, int numOfPages
+    ) {
+        this.superBlockService = superBlockService;
+        this.storage = storage;
+        this.initialOffset = initialOffset;
+        this.pageSize = pageSize;
+        this.numOfPages = numOfPages;
+    }
+
+    /**
+     * Sequences torn by unclean shutdown (next segment is out of file, already marked or has broken meta data) are
+     * cut at the last valid segment, like fsck does: its meta data ends sequence and inode gets size of reached data.
+     * Spare pages of the last segments (preallocated, but not filled before shutdown) are trimmed.
+     *
+     * @param parallelism num of threads to walk sequences with
+     * @return set bits are allocated pages
+     * @throws SegmentAllocatorException if the first segment of sequence is corrupted, so nothing can be kept
+     */
+    public BitSet scan(int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new ScanTask(0, superBlockService.getNumOfInodes()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return how many torn sequences were cut by scanning
+     */
+    public int getNumOfCutSequences() {
+        return numOfCutSequences.get();
+    }
+
+    /**
+     * @return how many spare pages after data of last segments were released by scanning
+     */
+    public int getNumOfTrimmedPages() {
+        return numOfTrimmedPages.get();
+    }
+
+    /*
+     * Marks pages of all segments of sequence, every segment is read only by its meta data.
+     */
+    private void markSequence(int inodeNum, Inode inode, BitSet allocated, ByteBuffer metaBytes) {
+        int currSegment = inode.getSegment();
+        int lastSegment = -1;
+        SegmentMetaData lastMetaData = null;
+        long size = 0;
+        while (true) {
+            SegmentMetaData segmentMetaData = readValidMetaData(currSegment, allocated, metaBytes);
+            if (segmentMetaData == null) {
+                if (lastMetaData == null) {
+                    throw new SegmentAllocatorException(
+                            "Sequence of segments " + inode.getSegment() + " is corrupted from the first segment!"
+                    );
+                }
+                cutSequence(inodeNum, inode, lastSegment, lastMetaData, size, allocated);
+                return;
+            }
+            size += segmentMetaData.getOccupied();
+            if (!segmentMetaData.isContinued()) {
+                endSequence(currSegment, segmentMetaData, allocated, false);
+                return;
+            }
+            allocated.set(currSegment, currSegment + segmentMetaData.getNumsOfContinuousBlocks());
+            lastSegment = currSegment;
+            lastMetaData = segmentMetaData;
+            currSegment = segmentMetaData.getNextSegment();
+        }
+    }
+
+    /*
+     * Meta data is valid if segment lies in file, doesn't overlap marked pages and its data fits in it.
+     */
+    private SegmentMetaData readValidMetaData(int segment, BitSet allocated, ByteBuffer metaBytes) {
+        if (segment < 0 || segment >= numOfPages || allocated.get(segment))
+            return null;
+        try {
+            metaBytes.clear();
+            storage.read(metaBytes, initialOffset + segment * (long) pageSize);
+            metaBytes.flip();
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("File reading went wrong during scanning of segments!", e);
+        }
+        SegmentMetaData segmentMetaData = SegmentMetaData.fromByteBuffer(metaBytes);
+
+        int numOfBlocks = segmentMetaData.getNumsOfContinuousBlocks();
+        if (numOfBlocks <= 0 || numOfBlocks > numOfPages - segment)
+            return null;
+        int nextAllocated = allocated.nextSetBit(segment);
+        if (nextAllocated != -1 && nextAllocated < segment + numOfBlocks)
+            return null;
+        long capacity = (long) numOfBlocks * pageSize - SegmentMetaData.getSizeOfStructure();
+        if (segmentMetaData.getOccupied() < 0 || segmentMetaData.getOccupied() > capacity)
+            return null;
+        return segmentMetaData;
+    }
+
+    /*
+     * The last valid segment ends sequence, data after it is lost.
+     */
+    private void cutSequence(
+            int inodeNum, Inode inode, int lastSegment, SegmentMetaData lastMetaData, long size, BitSet allocated
+    ) {
+        endSequence(lastSegment, lastMetaData, allocated, true);
+        inode.setLastSegment(lastSegment);
+        inode.setSize(size);
+        superBlockService.updateInode(inodeNum, inode);
+        numOfCutSequences.incrementAndGet();
+    }
+
+    /*
+     * Marks pages of the last segment which its data takes. Spare pages preallocated after data are trimmed here,
+     * as set of preallocated segments is kept only in memory and is lost with unclean shutdown.
+     */
+    private void endSequence(int segment, SegmentMetaData metaData, BitSet allocated, boolean cut) {
+        int numOfBlocks = metaData.getNumsOfContinuousBlocks();
+        int usedPages = (int) ((SegmentMetaData.getSizeOfStructure() + (long) metaData.getOccupied() + pageSize - 1)
+                / pageSize);
+        allocated.clear(segment + usedPages, segment + numOfBlocks);
+        allocated.set(segment, segment + usedPages);
+        if (!cut && usedPages == numOfBlocks) {
+            return;
+        }
+
+        ByteBuffer metaBytes = ByteBuffer.allocate(SegmentMetaData.getSizeOfStructure());
+        SegmentMetaData.of(usedPages, -1, metaData.getOccupied()).writeTo(metaBytes);
+        metaBytes.flip();
+        try {
+            storage.write(metaBytes, initialOffset + segment * (long) pageSize);
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("File writing went wrong during cutting of sequence!", e);
+        }
+        if (usedPages < numOfBlocks) {
+            numOfTrimmedPages.addAndGet(numOfBlocks - usedPages);
+        }
+    }
+
+    private class ScanTask extends RecursiveTask<BitSet> {
+        private static final long serialVersionUID = 1L;
+
+        private final int fromInode;
+        private final int toInode;
+
+        ScanTask(int fromInode, int toInode) {
+            this.fromInode = fromInode;
+            this.toInode = toInode;
+        }
+
+        @Override
+        protected BitSet compute() {
+            if (toInode - fromInode <= INODES_PER_TASK) {
+                BitSet allocated = new BitSet();
+                ByteBuffer metaBytes = ByteBuffer.allocate(SegmentMetaData.getSizeOfStructure());
+                superBlockService.forEachUsedInode(fromInode, toInode, (inode, inodeNum) -> {
+                    if (!inode.isInline()) { // inline data doesn't take pages
+                        markSequence(inodeNum, inode, allocated, metaBytes);
+                    }
+                });
+                return allocated;
+            }
+
+            int middle = (fromInode + toInode) >>> 1;
+            ScanTask left = new ScanTask(fromInode, middle);
+            left.fork();
+            BitSet allocated = new ScanTask(middle, toInode).compute();
+            allocated.or(left.join());
+            return allocated;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package filesystem.service;
+
+import filesystem.entity.datastorage.ExtentMap;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of extent maps of files, keyed by the first segment of file (inode's segment).
+ * Every cached segment refers to its extent map, so that writes and releases started from any segment of sequence
+ * can find and update it.
+ * <p>
+ * Methods are synchronized, as readers of file system could build maps concurrently.
+ *
+ * @see ExtentMap
+ */
+class ExtentMapCache {
+    private final int capacity;
+    private final Map<Integer, ExtentMap> mapsByHead;
+    private final Map<Integer, ExtentMap> mapsBySegment = new HashMap<>();
+
+    /**
+     * @param capacity max num of cached extent maps (0 - nothing is cached)
+     */
+    ExtentMapCache(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Capacity of cache cannot be negative!");
+        this.capacity = capacity;
+        this.mapsByHead = new LinkedHashMap<Integer, ExtentMap>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ExtentMap> eldest) {
+                if (size() > ExtentMapCache.this.capacity) {
+                    unmapSegments(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param head the first segment of sequence
+     * @return cached extent map or null
+     */
+    synchronized ExtentMap get(int head) {
+        return mapsByHead.get(head);
+    }
+
+    /**
+     * @param segment any segment of sequence
+     * @return cached extent map which contains segment or null
+     */
+    synchronized ExtentMap getBySegment(int segment) {
+        ExtentMap extentMap = mapsBySegment.get(segment);
+        if (extentMap != null) {
+            mapsByHead.get(extentMap.getHead()); // access order is updated
+        }
+        return extentMap;
+    }
+
+    synchronized void put(ExtentMap extentMap) {
+        if (capacity == 0) {
+            return;
+        }
+        ExtentMap previous = mapsByHead.put(extentMap.getHead(), extentMap);
+        if (previous != null) {
+            unmapSegments(previous);
+        }
+        for (int i = 0; i < extentMap.size(); i++) {
+            mapsBySegment.put(extentMap.getSegment(i), extentMap);
+        }
+    }
+
+    /**
+     * Adds segment to the end of cached extent map.
+     *
+     * @param extentMap              cached extent map
+     * @param segment                start of segment
+     * @param numsOfContinuousBlocks how many pages in the segment
+     */
+    synchronized void append(ExtentMap extentMap, int segment, int numsOfContinuousBlocks) {
+        extentMap.add(segment, numsOfContinuousBlocks, 0);
+        mapsBySegment.put(segment, extentMap);
+    }
+
+    /**
+     * Removes segments from the end of extent map.
+     *
+     * @param extentMap extent map (cached or not)
+     * @param newSize   num of segments to keep
+     */
+    synchronized void truncate(ExtentMap extentMap, int newSize) {
+        for (int i = newSize; i < extentMap.size(); i++) {
+            mapsBySegment.remove(extentMap.getSegment(i), extentMap);
+        }
+        extentMap.truncate(newSize);
+    }
+
+    /**
+     * @param segment any segment of sequence to remove extent map of
+     */
+    synchronized void remove(int segment) {
+        ExtentMap extentMap = mapsBySegment.get(segment);
+        if (extentMap != null) {
+            mapsByHead.remove(extentMap.getHead());
+            unmapSegments(extentMap);
+        }
+    }
+
+    synchronized int size() {
+        return mapsByHead.size();
+    }
+
+    private void unmapSegments(ExtentMap extentMap) {
+        for (int i = 0; i < extentMap.size(); i++) {
+            mapsBySegment.remove(extentMap.getSegment(i), extentMap);
+        }
+    }
+}
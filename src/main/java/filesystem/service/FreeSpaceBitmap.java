@@ -0,0 +1,249 @@
+package filesystem.service;
+
+import filesystem.entity.datastorage.Segment;
+import filesystem.entity.exception.SegmentAllocatorException;
+import filesystem.storage.Storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/*
+ * Free space bitmap is stored right after superBlock and looks like:
+ * ------------------------
+ * |      numOfPages      |
+ * |----------------------|
+ * |      clean flag      |
+ * |----------------------|
+ * | bit of page 0 ... 7  |
+ * |----------------------|
+ * |  ..................  |
+ * |----------------------|
+ * | bit of the last page |
+ * ------------------------
+ * Bit is set if page is allocated. Bitmap is updated by every allocation and release of segments, so on mount
+ * free segments are taken from it without walking sequences of files.
+ * Clean flag is set only when file system is closed, so bitmap of file system which wasn't closed properly can be
+ * rebuilt by walking sequences of files.
+ * <p>
+ * Updates are synchronized, as segments can be allocated in different allocation groups concurrently.
+ */
+public class FreeSpaceBitmap {
+    private static final int HEADER_SIZE = 4 + 1;
+    private static final int BYTES_PER_BATCH = 64 * 1024; // how many bytes are read or written by one I/O call
+
+    private final long offset;
+    private final int numOfPages;
+    private final byte[] bits;
+    private final Storage storage;
+    private boolean clean;
+
+    /**
+     * Creates bitmap with all pages free.
+     *
+     * @param numOfPages how many pages are described by bitmap
+     * @param offset     where bitmap starts in file
+     * @param storage    storage of file to write bitmap in
+     */
+    public FreeSpaceBitmap(int numOfPages, long offset, Storage storage) {
+        if (storage == null)
+            throw new IllegalArgumentException("Storage doesn't exist!");
+        if (numOfPages <= 0)
+            throw new SegmentAllocatorException("Number of pages are too small!");
+
+        this.offset = offset;
+        this.numOfPages = numOfPages;
+        this.bits = new byte[getSizeOfBits(numOfPages)];
+        this.storage = storage;
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(numOfPages).put((byte) 0);
+            header.flip();
+            storage.write(header, offset);
+            for (int i = 0; i < bits.length; i += BYTES_PER_BATCH) {
+                storage.write(ByteBuffer.wrap(bits, i, Math.min(BYTES_PER_BATCH, bits.length - i)), getByteOffset(i));
+            }
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("Free space bitmap initialisation has failed!", e);
+        }
+    }
+
+    /**
+     * This constructor considers that file has already initialised bitmap and reads it in bulk.
+     *
+     * @param offset  where bitmap starts in file
+     * @param storage storage of file with initialised bitmap
+     */
+    public FreeSpaceBitmap(long offset, Storage storage) {
+        if (storage == null)
+            throw new IllegalArgumentException("Storage doesn't exist!");
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            storage.read(header, offset);
+            this.offset = offset;
+            this.numOfPages = header.getInt(0);
+            this.clean = header.get(4) == 1;
+            if (numOfPages <= 0)
+                throw new SegmentAllocatorException("Number of pages are too small!");
+
+            this.bits = new byte[getSizeOfBits(numOfPages)];
+            for (int i = 0; i < bits.length; i += BYTES_PER_BATCH) {
+                storage.read(ByteBuffer.wrap(bits, i, Math.min(BYTES_PER_BATCH, bits.length - i)), getByteOffset(i));
+            }
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("File reading went wrong during reading of free space bitmap!", e);
+        }
+        this.storage = storage;
+    }
+
+    /**
+     * @param sizeOfArea num of bytes for bitmap and pages
+     * @param pageSize   size of page
+     * @return max num of pages which fit in the area together with their bitmap
+     */
+    public static int getCapacityInPages(long sizeOfArea, int pageSize) {
+        long numOfPages = (sizeOfArea - HEADER_SIZE) * 8 / (8L * pageSize + 1);
+        while (numOfPages > 0 && getSizeInBytes(numOfPages) + numOfPages * pageSize > sizeOfArea) {
+            numOfPages--;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, numOfPages));
+    }
+
+    /**
+     * @param numOfPages how many pages are described by bitmap
+     * @return size of bitmap in file
+     */
+    public static long getSizeInBytes(long numOfPages) {
+        return HEADER_SIZE + (numOfPages + 7) / 8;
+    }
+
+    /**
+     * @param segment pages to mark as allocated
+     */
+    public void setAllocated(Segment segment) {
+        set(segment, true);
+    }
+
+    /**
+     * @param segment pages to mark as free
+     */
+    public void setFree(Segment segment) {
+        set(segment, false);
+    }
+
+    /**
+     * Replaces the whole bitmap, for example by allocation state found by walking sequences of files.
+     *
+     * @param allocated set bits are allocated pages
+     */
+    public synchronized void rebuild(BitSet allocated) {
+        if (allocated.length() > numOfPages)
+            throw new SegmentAllocatorException("Allocated page is out of bitmap!");
+
+        byte[] allocatedBytes = allocated.toByteArray(); // trailing zero bytes are omitted
+        System.arraycopy(allocatedBytes, 0, bits, 0, allocatedBytes.length);
+        Arrays.fill(bits, allocatedBytes.length, bits.length, (byte) 0);
+        try {
+            for (int i = 0; i < bits.length; i += BYTES_PER_BATCH) {
+                storage.write(ByteBuffer.wrap(bits, i, Math.min(BYTES_PER_BATCH, bits.length - i)), getByteOffset(i));
+            }
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("File writing went wrong during rebuilding of free space bitmap!", e);
+        }
+    }
+
+    /**
+     * Clean bitmap is set on close of file system and is reset on its opening.
+     *
+     * @param clean whether bitmap describes allocation state of file system
+     */
+    public void setClean(boolean clean) {
+        ByteBuffer flag = ByteBuffer.allocate(1).put(0, (byte) (clean ? 1 : 0));
+        try {
+            storage.write(flag, offset + 4);
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("File writing went wrong during update of free space bitmap!", e);
+        }
+        this.clean = clean;
+    }
+
+    /**
+     * @return true if file system was closed properly after the last opening
+     */
+    public boolean isClean() {
+        return clean;
+    }
+
+    /**
+     * @param page index of page
+     * @return true if page is allocated
+     */
+    public synchronized boolean isAllocated(int page) {
+        return (bits[page >>> 3] & (1 << (page & 7))) != 0;
+    }
+
+    /**
+     * @return maximal runs of free pages in order of their position
+     */
+    public synchronized List<Segment> getFreeSegments() {
+        BitSet allocated = BitSet.valueOf(bits);
+        List<Segment> freeSegments = new ArrayList<>();
+        int start = allocated.nextClearBit(0);
+        while (start < numOfPages) {
+            int nextAllocated = allocated.nextSetBit(start);
+            int end = (nextAllocated == -1 ? numOfPages : nextAllocated) - 1;
+            freeSegments.add(Segment.of(start, end));
+            start = allocated.nextClearBit(end + 1);
+        }
+        return freeSegments;
+    }
+
+    public int getNumOfPages() {
+        return numOfPages;
+    }
+
+    /**
+     * @return offset in file right after bitmap
+     */
+    public long getEndOffset() {
+        return offset + getSizeInBytes(numOfPages);
+    }
+
+    /*
+     * Updates bits in memory and writes only bytes which contain them.
+     */
+    private synchronized void set(Segment segment, boolean allocated) {
+        if (segment.getStart() < 0 || segment.getEnd() >= numOfPages || segment.getStart() > segment.getEnd())
+            throw new SegmentAllocatorException("Segment is out of bitmap!");
+
+        for (int page = segment.getStart(); page <= segment.getEnd(); page++) {
+            if (allocated) {
+                bits[page >>> 3] |= 1 << (page & 7);
+            } else {
+                bits[page >>> 3] &= ~(1 << (page & 7));
+            }
+        }
+
+        int from = segment.getStart() >>> 3;
+        int to = (segment.getEnd() >>> 3) + 1;
+        try {
+            for (int i = from; i < to; i += BYTES_PER_BATCH) {
+                storage.write(ByteBuffer.wrap(bits, i, Math.min(BYTES_PER_BATCH, to - i)), getByteOffset(i));
+            }
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("File writing went wrong during update of free space bitmap!", e);
+        }
+    }
+
+    private static int getSizeOfBits(int numOfPages) {
+        return (numOfPages + 7) / 8;
+    }
+
+    private long getByteOffset(int indexOfByte) {
+        return offset + HEADER_SIZE + indexOfByte;
+    }
+}
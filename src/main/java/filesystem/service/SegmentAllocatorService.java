@@ -1,25 +1,42 @@
 package filesystem.service;
 
 import filesystem.entity.ByteStream;
+import filesystem.entity.datastorage.ExtentMap;
 import filesystem.entity.datastorage.Segment;
 import filesystem.entity.datastorage.SegmentMetaData;
 import filesystem.entity.datastorage.SegmentReadResult;
 import filesystem.entity.exception.SegmentAllocatorException;
+import filesystem.service.allocation.AllocationGroups;
+import filesystem.service.allocation.AllocationPolicyType;
+import filesystem.storage.BufferPool;
+import filesystem.storage.Storage;
 
-import java.io.File;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.NavigableSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import static filesystem.utils.ByteArrayConverterUtils.intFromByteArray;
+import static filesystem.service.allocation.AllocationGroups.NO_GOAL;
+import static filesystem.service.allocation.AllocationPolicyType.BEST_FIT;
 import static java.lang.Math.ceil;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
-import static java.util.Comparator.comparingInt;
+import static java.util.Collections.synchronizedMap;
+import static java.util.Collections.synchronizedSet;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 
 /**
  * Page - subsequent array of bytes which size is specified by fileSystem.
@@ -30,42 +47,117 @@ import static java.util.Comparator.comparingInt;
  * to allocate and free pages.
  */
 public class SegmentAllocatorService {
+    public static final int DEFAULT_EXTENT_MAP_CACHE_SIZE = 1024;
+    public static final int MAX_READAHEAD_PAGES = 32;
+    private static final int MAX_POOLED_READAHEAD_BUFFERS = 16;
+    private static final int MAX_READAHEAD_WINDOWS = 1024; // for how many sequences the last window is remembered
+
     private final long initialOffset; // equals to super block size
     private final int capacity;
     private final int pageSize;
-    private int remainingCapacity; // memory publication should be guaranteed by locks acquisitions (otherwise put volatile)
-    private final NavigableSet<Segment> freeSegments;
-    private final NavigableSet<Segment> freeSegmentsPosition;
-    private final File file;
+    private final AllocationGroups allocationGroups; // free pages, every group has its own lock
+    private final Storage storage;
+    private final ExtentMapCache extentMapCache;
+    private final BufferPool bufferPool; // page sized buffers for I/O
+    private final BufferPool readaheadBufferPool; // buffers for readahead windows of byte streams
+    private final Map<Integer, Integer> readaheadWindows; // the last readahead window (in pages) of sequence
+    private final FreeSpaceBitmap freeSpaceBitmap; // null if allocation state isn't persisted
+    private final int preallocationLimit; // max num of pages speculatively allocated for extension (0 - exact)
+    private final Set<Integer> preallocatedSegments = synchronizedSet(new HashSet<>()); // last segments with spare pages
 
 
     /**
      * @param initialOffset   where start to allocate segments in file (to free space for superBlock)
      * @param capacityInPages how many pages will file system have
      * @param pageSize        size of page
-     * @param file            file to allocate segments in
+     * @param storage         storage of file to allocate segments in
+     */
+    public SegmentAllocatorService(long initialOffset, int capacityInPages, int pageSize, Storage storage) {
+        this(initialOffset, capacityInPages, pageSize, storage, DEFAULT_EXTENT_MAP_CACHE_SIZE);
+    }
+
+    /**
+     * @param initialOffset      where start to allocate segments in file (to free space for superBlock)
+     * @param capacityInPages    how many pages will file system have
+     * @param pageSize           size of page
+     * @param storage            storage of file to allocate segments in
+     * @param extentMapCacheSize how many extent maps of files can be cached
+     * @see #getExtentMap(int)
+     */
+    public SegmentAllocatorService(
+            long initialOffset, int capacityInPages, int pageSize, Storage storage, int extentMapCacheSize
+    ) {
+        this(initialOffset, capacityInPages, pageSize, storage, extentMapCacheSize, null, BEST_FIT, 1, 0);
+    }
+
+    /**
+     * Allocation state is kept in the bitmap, pages after it are allocated. Free segments are loaded from
+     * the bitmap, so it can be already initialised one of existing file system.
+     *
+     * @param freeSpaceBitmap    bitmap of pages
+     * @param pageSize           size of page
+     * @param storage            storage of file to allocate segments in
+     * @param extentMapCacheSize how many extent maps of files can be cached
+     * @param allocationPolicy   how free pages are chosen for allocation
+     * @param allocationGroups   how many groups with independent locks pages are split on
+     * @param preallocationLimit max num of pages speculatively allocated for extension of sequence (0 - exact)
+     * @see AllocationGroups
+     * @see #trimPreallocatedSegments()
      */
-    public SegmentAllocatorService(long initialOffset, int capacityInPages, int pageSize, File file) {
+    public SegmentAllocatorService(
+            FreeSpaceBitmap freeSpaceBitmap, int pageSize, Storage storage, int extentMapCacheSize,
+            AllocationPolicyType allocationPolicy, int allocationGroups, int preallocationLimit
+    ) {
+        this(
+                freeSpaceBitmap.getEndOffset(), freeSpaceBitmap.getNumOfPages(), pageSize, storage,
+                extentMapCacheSize, freeSpaceBitmap, allocationPolicy, allocationGroups, preallocationLimit
+        );
+    }
+
+    private SegmentAllocatorService(
+            long initialOffset, int capacityInPages, int pageSize, Storage storage, int extentMapCacheSize,
+            FreeSpaceBitmap freeSpaceBitmap, AllocationPolicyType allocationPolicy, int allocationGroups,
+            int preallocationLimit
+    ) {
+        this.extentMapCache = new ExtentMapCache(extentMapCacheSize);
+        this.bufferPool = new BufferPool(pageSize);
+        this.readaheadBufferPool = new BufferPool(pageSize * MAX_READAHEAD_PAGES, MAX_POOLED_READAHEAD_BUFFERS);
+        this.readaheadWindows = synchronizedMap(new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                return size() > MAX_READAHEAD_WINDOWS;
+            }
+        });
         this.capacity = capacityInPages;
         this.pageSize = pageSize;
-        this.remainingCapacity = capacityInPages;
         this.initialOffset = initialOffset;
-        if (!file.exists())
-            throw new IllegalArgumentException("File doesn't exist!");
-        this.file = file;
+        if (storage == null)
+            throw new IllegalArgumentException("Storage doesn't exist!");
+        this.storage = storage;
+
+        this.freeSpaceBitmap = freeSpaceBitmap;
+        this.preallocationLimit = preallocationLimit;
+
+        this.allocationGroups = new AllocationGroups(capacityInPages, allocationGroups, allocationPolicy);
+        if (freeSpaceBitmap == null) {
+            this.allocationGroups.release(Segment.of(0, capacityInPages - 1));
+        } else {
+            freeSpaceBitmap.getFreeSegments().forEach(this.allocationGroups::release);
+        }
+    }
 
-        freeSegments = new TreeSet<>();
-        freeSegmentsPosition = new TreeSet<>(comparingInt(Segment::getStart));
-        Segment initialSegment = Segment.of(0, capacityInPages - 1);
-        freeSegments.add(initialSegment);
-        freeSegmentsPosition.add(initialSegment);
+    /**
+     * @see SegmentAllocatorService#allocateSegments(int)
+     */
+    public int allocateSegmentsInBytes(long numBytes) {
+        return allocateSegments(neededBytesToSegments(numBytes));
     }
 
     /**
-     * @see SegmentAllocatorService#allocateSegments(int, RandomAccessFile)
+     * @see SegmentAllocatorService#allocateSegments(int, int)
      */
-    public int allocateSegmentsInBytes(long numBytes, RandomAccessFile file) {
-        return allocateSegments(neededBytesToSegments(numBytes), file);
+    public int allocateSegmentsInBytes(long numBytes, int goal) {
+        return allocateSegments(neededBytesToSegments(numBytes), goal);
     }
 
     /**
@@ -76,116 +168,89 @@ public class SegmentAllocatorService {
      * @param amountOfSegments to allocate
      * @return index of first segment in sequence
      */
-    public int allocateSegments(int amountOfSegments, RandomAccessFile file) {
-        if (remainingCapacity < amountOfSegments)
-            throw new SegmentAllocatorException("File doesn't have enough free memory!");
-
-        Segment fitWithinSegment = freeSegments.ceiling(Segment.of(0, amountOfSegments - 1));
-        int answer;
-        if (fitWithinSegment != null) {
-            removeFromSegments(fitWithinSegment);
-            writeMetaDataToSegment(fitWithinSegment.getStart(), amountOfSegments, -1, file);
-            Segment partToReturn = Segment.of(
-                    fitWithinSegment.getStart() + amountOfSegments, fitWithinSegment.getEnd()
-            );
-            if (partToReturn.getSize() != 0) {
-                addToSegments(partToReturn);
-            }
-            answer = fitWithinSegment.getStart();
-        } else {
-            List<Segment> availableSegments = new LinkedList<>();
-
-            int leftToAllocate = amountOfSegments;
-
-            Segment higher = freeSegments.last();
+    public int allocateSegments(int amountOfSegments) {
+        return allocateSegments(amountOfSegments, NO_GOAL);
+    }
 
-            while (true) {
-                if (higher == null) {
-                    throw new IllegalStateException("Out of pages!");
-                }
-                removeFromSegments(higher);
-                availableSegments.add(higher);
-                leftToAllocate -= higher.getSize();
-
-                if (leftToAllocate != 0) {
-                    higher = freeSegments.ceiling(Segment.of(0, leftToAllocate - 1));
-                    if (higher == null) {
-                        higher = freeSegments.last();
-                    }
-                } else {
-                    break;
-                }
-            }
+    /**
+     * The same as {@link #allocateSegments(int)}, but the first free segment from goal page where all pages fit
+     * is taken, so that related files (like files of one directory) are placed close to each other.
+     * If there isn't such segment near goal, pages are allocated as usually (in allocation group of goal).
+     *
+     * @param amountOfSegments to allocate
+     * @param goal             page near which pages are preferred or {@link AllocationGroups#NO_GOAL}
+     * @return index of first segment in sequence
+     */
+    public int allocateSegments(int amountOfSegments, int goal) {
+        List<Segment> availableSegments = allocateNearGoal(amountOfSegments, goal);
 
-            for (int i = 0; i < availableSegments.size() - 1; i++) {
-                Segment segment = availableSegments.get(i);
-                writeMetaDataToSegment(
-                        segment.getStart(), segment.getSize(), availableSegments.get(i + 1).getSize(), file
-                );
-            }
+        for (int i = 0; i < availableSegments.size() - 1; i++) {
+            Segment segment = availableSegments.get(i);
+            writeMetaDataToSegment(
+                    segment.getStart(), segment.getSize(), availableSegments.get(i + 1).getStart()
+            );
+        }
 
-            Segment last = availableSegments.get(availableSegments.size() - 1);
-            writeMetaDataToSegment(last.getStart(), last.getSize(), -1, file);
+        Segment last = availableSegments.get(availableSegments.size() - 1);
+        writeMetaDataToSegment(last.getStart(), last.getSize(), -1);
 
-            answer = availableSegments.get(0).getStart();
-        }
-        return answer;
+        return availableSegments.get(0).getStart();
     }
 
 
     /**
      * This method writes data to given segment (traversing farther segments of the segments sequence if it is needed)
      * Automatically will allocate new segments if it is required.
+     * <p>
+     * Meta data of every touched segment is written only once. If segment is empty (as all newly allocated ones),
+     * its meta data and data are adjacent and are written by one gathering write. Append to partly filled segment
+     * still takes two writes, as meta data is at the start of segment and appended data is after the occupied bytes.
      *
      * @param segment to write data in
      * @param toWrite byte array with data
      * @param length  how many bytes to read
+     * @return segment where writing has ended
      */
-    public int writeDataToSegment(int segment, byte[] toWrite, int length, RandomAccessFile file) {
-
-        int currentSegment = segment;
-        int cursorInData = 0;
-
-        while (true) {
-            SegmentMetaData metaData = readSegmentMetaData(currentSegment, file);
-            if (SegmentMetaData.getSizeOfStructure() + metaData.getOccupied() <
-                    metaData.getNumsOfContinuousBlocks() * pageSize) {
-                int freeToWrite = metaData.getNumsOfContinuousBlocks() * pageSize -
-                        (SegmentMetaData.getSizeOfStructure() + metaData.getOccupied());
-                int possibleToWrite = min(freeToWrite, length - cursorInData);
-
-                try {
-                    byte[] temp = new byte[possibleToWrite];
-                    System.arraycopy(toWrite, cursorInData, temp, 0, possibleToWrite);
-                    file.seek(getDataOffset(currentSegment) + metaData.getOccupied());
-                    file.write(temp);
-                    metaData.setOccupied(metaData.getOccupied() + possibleToWrite);
-                    writeMetaDataToSegment(currentSegment, metaData, file);
-                } catch (IOException e) {
-                    throw new SegmentAllocatorException(
-                            "File writing went wrong during writing to the segment!", e
-                    );
-                }
-
-                cursorInData += possibleToWrite;
-
-                if (cursorInData == length) {
-                    break;
-                }
-            }
-            if (metaData.getNextSegment() == -1) {
-                int neededNewSegments = neededBytesToSegments(length - cursorInData);
-                currentSegment = expandSegment(currentSegment, neededNewSegments, metaData, file).getNextSegment();
+    public int writeDataToSegment(int segment, byte[] toWrite, int length) {
+        return writeDataToSegment(segment, length, (currentSegment, metaBytes, occupied, from, toWriteInSegment) -> {
+            ByteBuffer data = ByteBuffer.wrap(toWrite, (int) from, toWriteInSegment);
+            if (occupied == 0) {
+                storage.write(new ByteBuffer[]{metaBytes, data}, getMetaDataOffset(currentSegment));
             } else {
-                currentSegment = metaData.getNextSegment();
+                // ranges aren't contiguous, data goes first, so that occupied never covers bytes which aren't written
+                storage.write(data, getDataOffset(currentSegment) + occupied);
+                storage.write(metaBytes, getMetaDataOffset(currentSegment));
             }
-        }
+        });
+    }
 
-        return currentSegment;
+    /**
+     * The same as {@link #writeDataToSegment(int, byte[], int)}, but data is transferred from the channel
+     * (by {@link Storage#transferFrom}, so for FileChannel it doesn't go through java heap).
+     *
+     * @param segment to write data in
+     * @param src     channel to read data from
+     * @param length  how many bytes to transfer
+     * @return segment where writing has ended
+     * @throws SegmentAllocatorException if channel ends before length bytes are transferred
+     */
+    public int writeDataToSegment(int segment, ReadableByteChannel src, long length) {
+        return writeDataToSegment(segment, length, (currentSegment, metaBytes, occupied, from, toWriteInSegment) -> {
+            long position = getDataOffset(currentSegment) + occupied;
+            long transferred = 0;
+            while (transferred < toWriteInSegment) {
+                long portion = storage.transferFrom(src, position + transferred, toWriteInSegment - transferred);
+                if (portion == 0) {
+                    throw new EOFException("Channel has ended before all data was transferred!");
+                }
+                transferred += portion;
+            }
+            storage.write(metaBytes, getMetaDataOffset(currentSegment));
+        });
     }
 
-    public int writeDataToSegment(int segment, byte[] toWrite, RandomAccessFile file) {
-        return writeDataToSegment(segment, toWrite, toWrite.length, file);
+    public int writeDataToSegment(int segment, byte[] toWrite) {
+        return writeDataToSegment(segment, toWrite, toWrite.length);
     }
 
     /**
@@ -193,72 +258,173 @@ public class SegmentAllocatorService {
      *
      * @param segment to release
      */
-    public void releaseSegment(int segment, RandomAccessFile file) {
+    public void releaseSegment(int segment) {
         Set<Segment> releasedSegments = new HashSet<>();
 
         int currSegment = segment;
 
         SegmentMetaData segmentMetaData;
         do {
-            segmentMetaData = readSegmentMetaData(currSegment, file);
+            segmentMetaData = readSegmentMetaData(currSegment);
             releasedSegments.add(
                     Segment.of(currSegment, currSegment + segmentMetaData.getNumsOfContinuousBlocks() - 1)
             );
+            preallocatedSegments.remove(currSegment);
             currSegment = segmentMetaData.getNextSegment();
         } while (segmentMetaData.isContinued());
+        extentMapCache.remove(segment);
 
-        releasedSegments.forEach(this::addToSegments);
+        releaseSegments(releasedSegments);
+    }
 
-        while (!releasedSegments.isEmpty()) {
+    /**
+     * Cuts sequence after logical position, the rest of sequence is released at once. Only meta data of the new
+     * last segment is written, data of kept segments isn't touched. Pages of the new last segment after
+     * the new end are released as well (segment could be extended in place or preallocated).
+     *
+     * @param segment the first segment of sequence
+     * @param length  num of bytes to keep in sequence
+     * @return the new last segment of sequence
+     * @throws SegmentAllocatorException if length is farther than end of data in sequence
+     */
+    public int truncateSegment(int segment, long length) {
+        ExtentMap extentMap = getExtentMap(segment);
+        if (length < 0 || length > extentMap.getLength())
+            throw new SegmentAllocatorException("Cannot truncate farther than end of segments!");
 
-            Segment someSegment = releasedSegments.iterator().next();
+        // the last kept segment is the one with the last kept byte (the first one if nothing is kept)
+        int last = length == 0 ? 0 : extentMap.findByPosition(length - 1);
+        int lastSegment = extentMap.getSegment(last);
+        int occupied = (int) (length - extentMap.getLogicalStart(last));
 
-            int start = someSegment.getStart();
-            int end = someSegment.getEnd();
+        Set<Segment> releasedSegments = new HashSet<>();
+        for (int i = last + 1; i < extentMap.size(); i++) {
+            int start = extentMap.getSegment(i);
+            releasedSegments.add(Segment.of(start, start + extentMap.getNumOfContinuousBlocks(i) - 1));
+            preallocatedSegments.remove(start);
+        }
+        int numOfPages = extentMap.getNumOfContinuousBlocks(last);
+        int keptPages = getUsedPages(occupied);
+        if (keptPages < numOfPages) {
+            releasedSegments.add(Segment.of(lastSegment + keptPages, lastSegment + numOfPages - 1));
+        }
+        preallocatedSegments.remove(lastSegment);
 
-            Segment left = freeSegmentsPosition.floor(Segment.of(someSegment.getStart() - 1, 0));
-            if (left != null && left.getEnd() == someSegment.getStart() - 1) {
-                start = left.getStart();
-                removeFromSegments(left);
-                releasedSegments.remove(left);
-            }
+        keptPages = min(keptPages, numOfPages);
+        writeMetaDataToSegment(lastSegment, new SegmentMetaData(keptPages, -1, occupied));
+        extentMapCache.truncate(extentMap, last + 1);
+        extentMap.setOccupied(last, occupied);
+        extentMap.setNumOfContinuousBlocks(last, keptPages);
 
-            Segment right = freeSegmentsPosition.ceiling(Segment.of(someSegment.getEnd() + 1, 0));
-            if (right != null && right.getStart() == someSegment.getEnd() + 1) {
-                end = right.getEnd();
-                removeFromSegments(right);
-                releasedSegments.remove(right);
-            }
+        releaseSegments(releasedSegments);
+        return lastSegment;
+    }
 
-            if (start != someSegment.getStart() || end != someSegment.getEnd()) {
-                removeFromSegments(someSegment);
-                Segment mergedSegment = Segment.of(start, end);
-                addToSegments(mergedSegment);
-                releasedSegments.add(mergedSegment);
-            }
+    /**
+     * Counts segments of sequence by walking it, extent map isn't built, so scanning of many sequences doesn't
+     * evict cached ones.
+     *
+     * @param segment the first segment of sequence
+     * @return num of segments in sequence
+     */
+    public int countSegments(int segment) {
+        int numOfSegments = 0;
+        int currSegment = segment;
+        SegmentMetaData segmentMetaData;
+        do {
+            segmentMetaData = readSegmentMetaData(currSegment);
+            numOfSegments++;
+            currSegment = segmentMetaData.getNextSegment();
+        } while (segmentMetaData.isContinued());
+        return numOfSegments;
+    }
 
-            releasedSegments.remove(someSegment);
+    /**
+     * Allocates one free segment for all data of sequence (near the first segment of sequence if it is possible).
+     * Meta data of the new segment says that it is filled by all data of sequence, but data isn't copied: it is up
+     * to caller to copy it (for example by chunks with {@link #overwriteDataInSegment(int, long, ByteBuffer)}),
+     * to switch to the new segment and to release the old sequence.
+     *
+     * @param segment the first segment of sequence
+     * @return the new segment for all data of sequence or -1 if there isn't free segment for all data
+     */
+    public int allocateContiguousSegment(int segment) {
+        long length = getExtentMap(segment).getLength();
+        if (SegmentMetaData.getSizeOfStructure() + length > Integer.MAX_VALUE) {
+            return -1;
         }
+        Segment target = allocationGroups.allocateContiguous(getUsedPages((int) length), segment);
+        if (target == null) {
+            return -1;
+        }
+        if (freeSpaceBitmap != null) {
+            freeSpaceBitmap.setAllocated(target);
+        }
+        writeMetaDataToSegment(target.getStart(), new SegmentMetaData(target.getSize(), -1, (int) length));
+        return target.getStart();
     }
 
     /**
-     * This method will read maximum pageSize of data.
+     * Releases pages which were preallocated for growing sequences, but weren't filled by data. Sequences can
+     * still be extended after that, but their next extension starts from one segment again.
+     */
+    public void trimPreallocatedSegments() {
+        Integer[] segments;
+        synchronized (preallocatedSegments) {
+            segments = preallocatedSegments.toArray(new Integer[0]);
+        }
+        for (int segment : segments) {
+            trimPreallocatedSegment(segment);
+        }
+    }
+
+    /*
+     * Cuts pages of last segment after its data, if segment was preallocated.
+     */
+    private void trimPreallocatedSegment(int segment) {
+        if (!preallocatedSegments.remove(segment)) {
+            return;
+        }
+        SegmentMetaData metaData = readSegmentMetaData(segment);
+        int usedPages = getUsedPages(metaData.getOccupied());
+        if (metaData.isContinued() || usedPages >= metaData.getNumsOfContinuousBlocks()) {
+            return;
+        }
+
+        writeMetaDataToSegment(segment, new SegmentMetaData(usedPages, -1, metaData.getOccupied()));
+        ExtentMap extentMap = extentMapCache.getBySegment(segment);
+        if (extentMap != null) {
+            extentMap.setNumOfContinuousBlocks(extentMap.indexOf(segment), usedPages);
+        }
+        releaseSegments(Collections.singleton(
+                Segment.of(segment + usedPages, segment + metaData.getNumsOfContinuousBlocks() - 1)
+        ));
+    }
+
+    /*
+     * Returns segments to free ones, merging them with neighbours.
+     */
+    private void releaseSegments(Set<Segment> releasedSegments) {
+        if (freeSpaceBitmap != null) {
+            releasedSegments.forEach(freeSpaceBitmap::setFree);
+        }
+        releasedSegments.forEach(allocationGroups::release);
+    }
+
+    /**
+     * This method will read maximum pageSize of data. Result array is allocated by every call, so inside of file
+     * system data is read to given buffers instead (see {@link #readDataFromSegment(int, long, ByteBuffer)}).
      *
      * @param segment           segment to read byte array from
      * @param positionInSegment position in segment
      * @return SegmentReadResult
      */
-    public SegmentReadResult readDataFromSegmentInPages(int segment, int positionInSegment, RandomAccessFile file) {
-        SegmentMetaData segmentMetaData = readSegmentMetaData(segment, file);
+    public SegmentReadResult readDataFromSegmentInPages(int segment, int positionInSegment) {
+        SegmentMetaData segmentMetaData = readSegmentMetaData(segment);
         int toRead = segmentMetaData.getOccupied() - positionInSegment;
 
         byte[] result = new byte[min(pageSize, toRead)];
-        try {
-            file.seek(getDataOffset(segment) + positionInSegment);
-            file.readFully(result);
-        } catch (IOException e) {
-            throw new SegmentAllocatorException("File reading went wrong during reading of segments' data!", e);
-        }
+        readDataFromSegment(segment, positionInSegment, ByteBuffer.wrap(result));
 
         if (toRead > pageSize) {
             return SegmentReadResult.of(result, segment, positionInSegment + pageSize);
@@ -267,29 +433,226 @@ public class SegmentAllocatorService {
     }
 
     /**
-     * Less efficient method than readDataFromSegmentInPages, as it will try to read all contiguous pages in segment
+     * Less efficient method than readDataFromSegmentInPages, as it will try to read all contiguous pages in segment.
+     * Result array is allocated by every call as well.
      *
      * @param segment to read from
      * @return SegmentReadResult
      */
-    public SegmentReadResult readDataFromSegment(int segment, RandomAccessFile file) {
-        SegmentMetaData segmentMetaData = readSegmentMetaData(segment, file);
+    public SegmentReadResult readDataFromSegment(int segment) {
+        SegmentMetaData segmentMetaData = readSegmentMetaData(segment);
 
         byte[] result = new byte[segmentMetaData.getOccupied()];
+        readDataFromSegment(segment, 0, ByteBuffer.wrap(result));
+
+        return SegmentReadResult.of(result, segmentMetaData.getNextSegment(), 0);
+    }
+
+    public ByteStream readDataFromSegmentByByteStream(int segment) {
+        return new ByteStreamBasedOnSegments(segment, segment, 0, this);
+    }
+
+    /**
+     * Segment where reading should start is found by extent map, without walking of sequence.
+     *
+     * @param segment  the first segment of sequence
+     * @param position logical position in sequence to start reading from
+     * @return ByteStream to read from position
+     */
+    public ByteStream readDataFromSegmentByByteStream(int segment, long position) {
+        ExtentMap extentMap = getExtentMap(segment);
+        int index = extentMap.findByPosition(position);
+        return new ByteStreamBasedOnSegments(
+                segment, extentMap.getSegment(index), (int) (position - extentMap.getLogicalStart(index)), this
+        );
+    }
+
+    /**
+     * Fills buffer by data of sequence from logical position, reading every segment by one call.
+     *
+     * @param segment  the first segment of sequence
+     * @param position logical position in sequence to start reading from
+     * @param dst      buffer to fill (from its position till its limit)
+     * @throws SegmentAllocatorException if sequence ends before buffer is filled
+     */
+    public void readDataFromSegment(int segment, long position, ByteBuffer dst) {
+        ExtentMap extentMap = getExtentMap(segment);
+        if (position + dst.remaining() > extentMap.getLength())
+            throw new SegmentAllocatorException("Cannot read farther than end of segments!");
+
+        int limit = dst.limit();
         try {
-            file.seek(getDataOffset(segment));
-            file.readFully(result);
+            for (int i = extentMap.findByPosition(position); dst.position() < limit; i++) {
+                long skip = max(0, position - extentMap.getLogicalStart(i));
+                int toRead = (int) min(limit - dst.position(), extentMap.getOccupied(i) - skip);
+                dst.limit(dst.position() + toRead);
+                storage.read(dst, getDataOffset(extentMap.getSegment(i)) + skip);
+            }
         } catch (IOException e) {
-            throw new SegmentAllocatorException(
-                    "File reading went wrong during reading of segments' data!", e
-            );
+            throw new SegmentAllocatorException("File reading went wrong during reading of segments' data!", e);
+        } finally {
+            dst.limit(limit);
         }
+    }
 
-        return SegmentReadResult.of(result, segmentMetaData.getNextSegment(), 0);
+    /**
+     * Overwrites data of sequence from logical position in place, meta data of segments isn't changed.
+     *
+     * @param segment  the first segment of sequence
+     * @param position logical position in sequence to start writing from
+     * @param src      buffer to write (from its position till its limit)
+     * @throws SegmentAllocatorException if range is farther than end of data in sequence
+     */
+    public void overwriteDataInSegment(int segment, long position, ByteBuffer src) {
+        ExtentMap extentMap = getExtentMap(segment);
+        if (position + src.remaining() > extentMap.getLength())
+            throw new SegmentAllocatorException("Cannot overwrite farther than end of segments!");
+
+        int limit = src.limit();
+        try {
+            for (int i = extentMap.findByPosition(position); src.position() < limit; i++) {
+                long skip = max(0, position - extentMap.getLogicalStart(i));
+                int toWrite = (int) min(limit - src.position(), extentMap.getOccupied(i) - skip);
+                src.limit(src.position() + toWrite);
+                storage.write(src, getDataOffset(extentMap.getSegment(i)) + skip);
+            }
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("File writing went wrong during overwriting of segments' data!", e);
+        } finally {
+            src.limit(limit);
+        }
     }
 
-    public ByteStream readDataFromSegmentByByteStream(int segment, RandomAccessFile file) {
-        return new ByteStreamBasedOnSegments(segment, this, file);
+    /**
+     * Asynchronous version of {@link #readDataFromSegment(int, long, ByteBuffer)}. Reads of all segments are
+     * outstanding at once. Buffer mustn't be touched till future is completed.
+     *
+     * @param segment  the first segment of sequence
+     * @param position logical position in sequence to start reading from
+     * @param dst      buffer to fill (from its position till its limit)
+     * @return future completed when buffer is filled (its position is moved to its limit)
+     */
+    public CompletableFuture<Void> readDataFromSegmentAsync(int segment, long position, ByteBuffer dst) {
+        return getExtentMapAsync(segment).thenCompose(extentMap -> {
+            if (position + dst.remaining() > extentMap.getLength())
+                throw new SegmentAllocatorException("Cannot read farther than end of segments!");
+
+            List<CompletableFuture<Void>> reads = new ArrayList<>();
+            int cursor = dst.position();
+            for (int i = extentMap.findByPosition(position); cursor < dst.limit(); i++) {
+                long skip = max(0, position - extentMap.getLogicalStart(i));
+                int toRead = (int) min(dst.limit() - cursor, extentMap.getOccupied(i) - skip);
+
+                ByteBuffer part = dst.duplicate();
+                part.position(cursor);
+                part.limit(cursor + toRead);
+                reads.add(storage.readAsync(part, getDataOffset(extentMap.getSegment(i)) + skip));
+                cursor += toRead;
+            }
+            return wrapIOFailure(
+                    allOf(reads.toArray(new CompletableFuture<?>[0])),
+                    "File reading went wrong during reading of segments' data!"
+            ).thenRun(() -> dst.position(dst.limit()));
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #writeDataToSegment(int, byte[], int)}.
+     * Allocation of segments is done by calling thread, as well as reading of meta data of segments which aren't
+     * cached, but writes of data and meta data are issued asynchronously and are outstanding at once.
+     * Array mustn't be changed till future is completed.
+     *
+     * @param segment to write data in
+     * @param toWrite byte array with data
+     * @param length  how many bytes to write
+     * @return future of segment where writing has ended
+     */
+    public CompletableFuture<Integer> writeDataToSegmentAsync(int segment, byte[] toWrite, int length) {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        int lastSegment = writeDataToSegment(segment, length, (currentSegment, metaBytes, occupied, from, toWriteInSegment) -> {
+            // meta bytes are pooled, so they are copied before writing
+            ByteBuffer metaData = ByteBuffer.allocate(metaBytes.remaining()).put(metaBytes);
+            metaData.flip();
+            writes.add(storage.writeAsync(
+                    ByteBuffer.wrap(toWrite, (int) from, toWriteInSegment), getDataOffset(currentSegment) + occupied
+            ));
+            writes.add(storage.writeAsync(metaData, getMetaDataOffset(currentSegment)));
+        });
+        return wrapIOFailure(
+                allOf(writes.toArray(new CompletableFuture<?>[0])),
+                "File writing went wrong during writing to the segment!"
+        ).thenApply(ignored -> lastSegment);
+    }
+
+    /**
+     * Transfers data of sequence from logical position till the end to the channel
+     * (by {@link Storage#transferTo}, so for FileChannel it doesn't go through java heap).
+     * Every segment is transferred by one call, if channel accepts it.
+     *
+     * @param segment  the first segment of sequence
+     * @param position logical position in sequence to start transfer from
+     * @param target   channel to write data to
+     * @return num of transferred bytes
+     */
+    public long transferDataFromSegment(int segment, long position, WritableByteChannel target) {
+        ExtentMap extentMap = getExtentMap(segment);
+        long transferred = 0;
+        try {
+            for (int i = extentMap.findByPosition(position); i < extentMap.size(); i++) {
+                long skip = max(0, position - extentMap.getLogicalStart(i));
+                long from = getDataOffset(extentMap.getSegment(i)) + skip;
+                long count = extentMap.getOccupied(i) - skip;
+                while (count > 0) {
+                    long portion = storage.transferTo(from, count, target);
+                    from += portion;
+                    count -= portion;
+                    transferred += portion;
+                }
+            }
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("Transfer of segments' data went wrong!", e);
+        }
+        return transferred;
+    }
+
+    /**
+     * Asynchronous version of {@link #getExtentMap(int)}, meta data of segments is read without blocking.
+     *
+     * @param segment the first segment of sequence
+     * @return future of extent map of sequence
+     */
+    public CompletableFuture<ExtentMap> getExtentMapAsync(int segment) {
+        ExtentMap extentMap = extentMapCache.get(segment);
+        if (extentMap != null) {
+            return completedFuture(extentMap);
+        }
+        return addToExtentMapAsync(new ExtentMap(), segment);
+    }
+
+    /**
+     * Returns extent map of sequence of segments. Map is built by walking of sequence on the first call, after that
+     * it is cached (till it is evicted) and is kept up to date by writes and releases.
+     *
+     * @param segment the first segment of sequence
+     * @return extent map of sequence
+     */
+    public ExtentMap getExtentMap(int segment) {
+        ExtentMap extentMap = extentMapCache.get(segment);
+        if (extentMap != null) {
+            return extentMap;
+        }
+
+        extentMap = new ExtentMap();
+        int currSegment = segment;
+        SegmentMetaData segmentMetaData;
+        do {
+            segmentMetaData = readSegmentMetaData(currSegment);
+            extentMap.add(currSegment, segmentMetaData.getNumsOfContinuousBlocks(), segmentMetaData.getOccupied());
+            currSegment = segmentMetaData.getNextSegment();
+        } while (segmentMetaData.isContinued());
+
+        extentMapCache.put(extentMap);
+        return extentMap;
     }
 
     public long getMetaDataOffset(long segment) {
@@ -297,7 +660,18 @@ public class SegmentAllocatorService {
     }
 
     public int getRemainingCapacity() {
-        return remainingCapacity;
+        return allocationGroups.getFreePages();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the first page of allocation group with the most free pages (to spread unrelated files apart)
+     */
+    public int getFirstPageOfFreestGroup() {
+        return allocationGroups.getFirstPageOfFreestGroup();
     }
 
     public long getInitialOffset() {
@@ -308,29 +682,193 @@ public class SegmentAllocatorService {
         return initialOffset + SegmentMetaData.getSizeOfStructure() + segment * (long) pageSize;
     }
 
-    private SegmentMetaData expandSegment(
-            long segment, int neededAmountOfBlocks, SegmentMetaData metaData, RandomAccessFile file
-    ) {
-        int next = allocateSegments(neededAmountOfBlocks, file);
-        SegmentMetaData newMetaData = new SegmentMetaData(
-                metaData.getNumsOfContinuousBlocks(),
-                next,
-                metaData.getNumsOfContinuousBlocks() * pageSize - SegmentMetaData.getSizeOfStructure()
-        );
-        writeMetaDataToSegment(segment, newMetaData, file);
-        return newMetaData;
+    /*
+     * Takes free segments with amountOfSegments pages in total, without writing anything to the file.
+     * Segments are taken from allocation group of goal page (or of current thread if there isn't goal).
+     */
+    private List<Segment> allocateExtents(int amountOfSegments, int goal) {
+        List<Segment> availableSegments = allocationGroups.allocate(amountOfSegments, goal);
+
+        if (freeSpaceBitmap != null) {
+            availableSegments.forEach(freeSpaceBitmap::setAllocated);
+        }
+        return availableSegments;
+    }
+
+    /*
+     * One segment near goal is taken if there is such, otherwise segments are taken as usually.
+     */
+    private List<Segment> allocateNearGoal(int amountOfSegments, int goal) {
+        if (goal != NO_GOAL) {
+            Segment segment = allocationGroups.allocateNear(goal, amountOfSegments);
+            if (segment != null) {
+                if (freeSpaceBitmap != null) {
+                    freeSpaceBitmap.setAllocated(segment);
+                }
+                return Collections.singletonList(segment);
+            }
+        }
+        return allocateExtents(amountOfSegments, goal);
+    }
+
+    /*
+     * The last segment of file takes free pages which follow it, so appended data stays contiguous on disk and
+     * no meta data of new segment is needed. If preallocation is on, segment is grown by its size at least
+     * (up to the limit). Returns null if the page after segment isn't free.
+     */
+    private SegmentMetaData extendInPlace(int segment, SegmentMetaData metaData, long leftToWrite) {
+        int size = metaData.getNumsOfContinuousBlocks();
+        if ((long) segment + size >= capacity) {
+            return null;
+        }
+        int neededPages = (int) ceil(leftToWrite / (double) pageSize);
+        int wantedPages = max(neededPages, min(preallocationLimit, size));
+
+        Segment extension = allocationGroups.allocateAt(segment + size, wantedPages);
+        if (extension == null) {
+            return null;
+        }
+        if (freeSpaceBitmap != null) {
+            freeSpaceBitmap.setAllocated(extension);
+        }
+        if (extension.getSize() > neededPages) {
+            preallocatedSegments.add(segment);
+        } else {
+            preallocatedSegments.remove(segment);
+        }
+
+        int newSize = size + extension.getSize();
+        ExtentMap extentMap = extentMapCache.getBySegment(segment);
+        if (extentMap != null) {
+            extentMap.setNumOfContinuousBlocks(extentMap.indexOf(segment), newSize);
+        }
+        return new SegmentMetaData(newSize, metaData.getNextSegment(), metaData.getOccupied());
+    }
+
+    /*
+     * File is extended in allocation group of its last segment. If preallocation is on, one free segment twice
+     * bigger than the last one (up to the limit) is taken, so that the next appends fit in it. Otherwise
+     * (or if there isn't such free segment) exactly needed pages are taken.
+     */
+    private List<Segment> allocateForExtension(int lastSegment, int lastSegmentSize, int amountOfSegments) {
+        preallocatedSegments.remove(lastSegment); // it is filled, so it has nothing to trim
+        int speculativeAmount = (int) min(preallocationLimit, lastSegmentSize * 2L);
+        if (speculativeAmount > amountOfSegments) {
+            Segment segment = allocationGroups.allocateContiguous(speculativeAmount, lastSegment);
+            if (segment != null) {
+                if (freeSpaceBitmap != null) {
+                    freeSpaceBitmap.setAllocated(segment);
+                }
+                preallocatedSegments.add(segment.getStart());
+                return Collections.singletonList(segment);
+            }
+        }
+        return allocateExtents(amountOfSegments, lastSegment);
+    }
+
+    /*
+     * Walks sequence from segment, filling free space of segments by dataWriter and allocating new segments
+     * if it is required.
+     */
+    private int writeDataToSegment(int segment, long length, DataWriter dataWriter) {
+
+        int currentSegment = segment;
+        long cursorInData = 0;
+        SegmentMetaData metaData = readSegmentMetaData(currentSegment);
+
+        while (true) {
+            int possibleToWrite = (int) min(getFreeSpace(metaData), length - cursorInData);
+            long leftToWrite = length - cursorInData - possibleToWrite;
+
+            if (leftToWrite > 0 && !metaData.isContinued()) {
+                SegmentMetaData extendedMetaData = extendInPlace(currentSegment, metaData, leftToWrite);
+                if (extendedMetaData != null) {
+                    // free space is taken by the next iteration, meta data is written together with data
+                    metaData = extendedMetaData;
+                    continue;
+                }
+
+                // segments for the rest are allocated before writing, so that meta data points to them at once
+                List<Segment> newSegments = allocateForExtension(
+                        currentSegment, metaData.getNumsOfContinuousBlocks(), neededBytesToSegments(leftToWrite)
+                );
+                ExtentMap extentMap = extentMapCache.getBySegment(currentSegment);
+                if (extentMap != null) {
+                    newSegments.forEach(newSegment ->
+                            extentMapCache.append(extentMap, newSegment.getStart(), newSegment.getSize())
+                    );
+                }
+
+                metaData = new SegmentMetaData(
+                        metaData.getNumsOfContinuousBlocks(), newSegments.get(0).getStart(), metaData.getOccupied()
+                );
+                writeToSegment(currentSegment, metaData, cursorInData, possibleToWrite, dataWriter);
+                cursorInData += possibleToWrite;
+
+                for (int i = 0; i < newSegments.size(); i++) {
+                    Segment newSegment = newSegments.get(i);
+                    int next = i + 1 < newSegments.size() ? newSegments.get(i + 1).getStart() : -1;
+                    metaData = new SegmentMetaData(newSegment.getSize(), next, 0);
+                    possibleToWrite = (int) min(getFreeSpace(metaData), length - cursorInData);
+
+                    currentSegment = newSegment.getStart();
+                    writeToSegment(currentSegment, metaData, cursorInData, possibleToWrite, dataWriter);
+                    cursorInData += possibleToWrite;
+                }
+            } else {
+                if (possibleToWrite > 0) {
+                    writeToSegment(currentSegment, metaData, cursorInData, possibleToWrite, dataWriter);
+                    cursorInData += possibleToWrite;
+                }
+                if (cursorInData != length) {
+                    currentSegment = metaData.getNextSegment();
+                    metaData = readSegmentMetaData(currentSegment);
+                }
+            }
+
+            if (cursorInData == length) {
+                break;
+            }
+        }
+
+        return currentSegment;
+    }
+
+    /*
+     * Writes length bytes of data to the end of segment and then writes its meta data with new occupied value.
+     */
+    private void writeToSegment(int segment, SegmentMetaData metaData, long from, int length, DataWriter dataWriter) {
+        int occupied = metaData.getOccupied();
+        metaData.setOccupied(occupied + length);
+        ByteBuffer metaBytes = bufferPool.acquire(SegmentMetaData.getSizeOfStructure());
+        try {
+            metaData.writeTo(metaBytes);
+            metaBytes.flip();
+            dataWriter.write(segment, metaBytes, occupied, from, length);
+        } catch (IOException e) {
+            throw new SegmentAllocatorException(
+                    "File writing went wrong during writing to the segment!", e
+            );
+        } finally {
+            bufferPool.release(metaBytes);
+        }
+
+        ExtentMap extentMap = extentMapCache.getBySegment(segment);
+        if (extentMap != null) {
+            extentMap.setOccupied(extentMap.indexOf(segment), metaData.getOccupied());
+        }
     }
 
-    private void removeFromSegments(Segment segment) {
-        remainingCapacity -= segment.getSize();
-        freeSegments.remove(segment);
-        freeSegmentsPosition.remove(segment);
+    private int getFreeSpace(SegmentMetaData metaData) {
+        return metaData.getNumsOfContinuousBlocks() * pageSize
+                - SegmentMetaData.getSizeOfStructure() - metaData.getOccupied();
     }
 
-    private void addToSegments(Segment segment) {
-        remainingCapacity += segment.getSize();
-        freeSegments.add(segment);
-        freeSegmentsPosition.add(segment);
+    /*
+     * Num of pages which segment with occupied bytes of data needs.
+     */
+    private int getUsedPages(int occupied) {
+        return (int) ceil((SegmentMetaData.getSizeOfStructure() + (long) occupied) / (double) pageSize);
     }
 
     private int neededBytesToSegments(long numBytes) {
@@ -344,114 +882,302 @@ public class SegmentAllocatorService {
         return amount + 1;
     }
 
-    private SegmentMetaData readSegmentMetaData(long segment, RandomAccessFile file) {
+    /*
+     * Meta data of cached sequences is taken from extent map.
+     */
+    private SegmentMetaData readSegmentMetaData(int segment) {
+        ExtentMap extentMap = extentMapCache.getBySegment(segment);
+        if (extentMap != null) {
+            return extentMap.getMetaData(extentMap.indexOf(segment));
+        }
+        ByteBuffer metaBytes = bufferPool.acquire(SegmentMetaData.getSizeOfStructure());
         try {
-            file.seek(getMetaDataOffset(segment));
-            return SegmentMetaData.of(file.readInt(), file.readInt(), file.readInt());
+            storage.read(metaBytes, getMetaDataOffset(segment));
+            metaBytes.flip();
+            return SegmentMetaData.fromByteBuffer(metaBytes);
         } catch (IOException e) {
             throw new SegmentAllocatorException("File reading went wrong!", e);
+        } finally {
+            bufferPool.release(metaBytes);
         }
     }
 
 
-    private void writeMetaDataToSegment(long segment, SegmentMetaData metaData, RandomAccessFile file) {
+    /*
+     * Walks sequence from segment adding segments to extent map. Meta data which is already read is handled in loop,
+     * so that long sequences of synchronous storage don't make deep recursion.
+     */
+    private CompletableFuture<ExtentMap> addToExtentMapAsync(ExtentMap extentMap, int segment) {
+        int currSegment = segment;
+        CompletableFuture<SegmentMetaData> metaData = readSegmentMetaDataAsync(currSegment);
+        while (metaData.isDone() && !metaData.isCompletedExceptionally()) {
+            SegmentMetaData segmentMetaData = metaData.join();
+            extentMap.add(currSegment, segmentMetaData.getNumsOfContinuousBlocks(), segmentMetaData.getOccupied());
+            if (!segmentMetaData.isContinued()) {
+                extentMapCache.put(extentMap);
+                return completedFuture(extentMap);
+            }
+            currSegment = segmentMetaData.getNextSegment();
+            metaData = readSegmentMetaDataAsync(currSegment);
+        }
+
+        int pendingSegment = currSegment;
+        return metaData.thenCompose(segmentMetaData -> {
+            extentMap.add(pendingSegment, segmentMetaData.getNumsOfContinuousBlocks(), segmentMetaData.getOccupied());
+            if (!segmentMetaData.isContinued()) {
+                extentMapCache.put(extentMap);
+                return completedFuture(extentMap);
+            }
+            return addToExtentMapAsync(extentMap, segmentMetaData.getNextSegment());
+        });
+    }
+
+    private CompletableFuture<SegmentMetaData> readSegmentMetaDataAsync(int segment) {
+        ExtentMap extentMap = extentMapCache.getBySegment(segment);
+        if (extentMap != null) {
+            return completedFuture(extentMap.getMetaData(extentMap.indexOf(segment)));
+        }
+        ByteBuffer metaBytes = ByteBuffer.allocate(SegmentMetaData.getSizeOfStructure());
+        return wrapIOFailure(storage.readAsync(metaBytes, getMetaDataOffset(segment)), "File reading went wrong!")
+                .thenApply(ignored -> {
+                    metaBytes.flip();
+                    return SegmentMetaData.fromByteBuffer(metaBytes);
+                });
+    }
+
+    /*
+     * IOException of future is wrapped by SegmentAllocatorException, as it is done for synchronous methods.
+     */
+    private static <T> CompletableFuture<T> wrapIOFailure(CompletableFuture<T> future, String message) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            result.completeExceptionally(
+                    cause instanceof IOException ? new SegmentAllocatorException(message, cause) : cause
+            );
+        });
+        return result;
+    }
+
+    private void writeMetaDataToSegment(long segment, SegmentMetaData metaData) {
+        ByteBuffer metaBytes = bufferPool.acquire(SegmentMetaData.getSizeOfStructure());
         try {
-            byte[] metaBytes = metaData.toByteArray();
-            file.seek(getMetaDataOffset(segment));
-            file.write(metaBytes);
+            metaData.writeTo(metaBytes);
+            metaBytes.flip();
+            storage.write(metaBytes, getMetaDataOffset(segment));
         } catch (IOException e) {
             throw new SegmentAllocatorException(
                     "File writing went wrong during writing of meta data to the segment!", e
             );
+        } finally {
+            bufferPool.release(metaBytes);
         }
     }
 
-    private void writeMetaDataToSegment(int start, int size, int next, RandomAccessFile file) {
-        writeMetaDataToSegment(start, new SegmentMetaData(size, next, 0), file);
+    private void writeMetaDataToSegment(int start, int size, int next) {
+        writeMetaDataToSegment(start, new SegmentMetaData(size, next, 0));
     }
 
 
-    /**
-     * Iterates over sequence of segments, reading not more than pageSize of data.
+    /*
+     * Reads data of segment from positionInSegment to dst (not more than its limit).
      */
-    static class ByteStreamBasedOnSegments implements ByteStream {
+    private void readDataFromSegment(int segment, int positionInSegment, ByteBuffer dst) {
+        try {
+            storage.read(dst, getDataOffset(segment) + positionInSegment);
+        } catch (IOException e) {
+            throw new SegmentAllocatorException("File reading went wrong during reading of segments' data!", e);
+        }
+    }
+
+
+    /*
+     * Writes data of one segment, together with its meta data.
+     */
+    @FunctionalInterface
+    private interface DataWriter {
+        /*
+         * Writes length bytes of data (starting from its from byte) after occupied bytes of segment
+         * and meta data of segment (metaBytes).
+         */
+        void write(int segment, ByteBuffer metaBytes, int occupied, long from, int length) throws IOException;
+    }
 
-        private SegmentAllocatorService segmentAllocatorService;
-        private SegmentReadResult segmentReadResult;
-        private int currPosition;
-        private final RandomAccessFile file;
 
-        public ByteStreamBasedOnSegments(int segment, SegmentAllocatorService segmentAllocatorService, RandomAccessFile file) {
+    /**
+     * Iterates over sequence of segments with adaptive readahead.
+     * <p>
+     * Data is read by windows of pages (one read per contiguous part of segment in window). The first window is
+     * one page (or the window which previous stream of this sequence has ended with). When the window is read
+     * till the end, access is sequential, so the next window is twice bigger (up to MAX_READAHEAD_PAGES) and
+     * the window after it is prefetched asynchronously, while the current one is consumed.
+     * If stream is closed before prefetched window is consumed, prefetching was useless (file is read partially),
+     * so the next stream of this sequence starts with twice smaller window.
+     * <p>
+     * Buffers are returned to the pools when stream is read till the end or closed.
+     */
+    static class ByteStreamBasedOnSegments implements ByteStream {
+        private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+        private static final ExecutorService READAHEAD_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "segments-readahead");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        private final SegmentAllocatorService segmentAllocatorService;
+        private final int head;
+        private ByteBuffer window;
+        private CompletableFuture<ByteBuffer> prefetchedWindow; // null if nothing is prefetched
+        private int windowInPages;
+        // where the next window starts (-1 if there isn't such), are changed by prefetching as well
+        private int segment;
+        private int positionInSegment;
+
+        public ByteStreamBasedOnSegments(
+                int head, int segment, int positionInSegment, SegmentAllocatorService segmentAllocatorService
+        ) {
             this.segmentAllocatorService = segmentAllocatorService;
-            segmentReadResult = segmentAllocatorService.readDataFromSegmentInPages(segment, 0, file);
-            currPosition = 0;
-            this.file = file;
+            this.head = head;
+            this.segment = segment;
+            this.positionInSegment = positionInSegment;
+            windowInPages = segmentAllocatorService.readaheadWindows.getOrDefault(head, 1);
+            window = readWindow(acquireWindow(windowInPages));
+            releaseIfRead();
         }
 
         @Override
         public boolean hasNext() {
-            return segmentReadResult.getArr().length != currPosition
-                    || segmentReadResult.getNextSegment() != -1;
+            // segment is changed by prefetching, so it is checked only if nothing is prefetched
+            return window.hasRemaining() || prefetchedWindow != null || segment != -1;
         }
 
         @Override
         public byte getByte() {
-            if (currPosition < segmentReadResult.getArr().length) {
-                return segmentReadResult.getArr()[currPosition++];
-            }
-            if (segmentReadResult.getNextSegment() == -1) {
-                throw new IllegalStateException("Cannot read farther!");
+            while (!window.hasRemaining()) {
+                if (!hasNext()) {
+                    throw new IllegalStateException("Cannot read farther!");
+                }
+                nextWindow();
             }
-            segmentReadResult = segmentAllocatorService.readDataFromSegmentInPages(
-                    segmentReadResult.getNextSegment(),
-                    segmentReadResult.getPositionInSegment(),
-                    file
-
-            );
-            currPosition = 1;
-            return segmentReadResult.getArr()[0];
-        }
-
-        @Override
-        public int getInt() {
-            return intFromByteArray(new byte[]{getByte(), getByte(), getByte(), getByte()});
+            byte result = window.get();
+            releaseIfRead();
+            return result;
         }
 
         @Override
         public int getArr(byte[] arr) {
-            if (currPosition == segmentReadResult.getArr().length) {
-                if (segmentReadResult.getNextSegment() == -1)
+            if (!window.hasRemaining()) {
+                if (!hasNext())
                     throw new IllegalStateException("Cannot read farther!");
+                nextWindow();
+            }
+            int toRead = min(window.remaining(), arr.length);
+            window.get(arr, 0, toRead);
+            releaseIfRead();
+            return toRead;
+        }
 
-                segmentReadResult = segmentAllocatorService.readDataFromSegmentInPages(
-                        segmentReadResult.getNextSegment(),
-                        segmentReadResult.getPositionInSegment(),
-                        file
-                );
-                currPosition = 0;
+
+        @Override
+        public void close() {
+            if (window == EMPTY) {
+                return;
             }
-            int toRead = min(segmentReadResult.getArr().length - currPosition, arr.length);
-            for (int i = 0; i < toRead; i++) {
-                arr[i] = segmentReadResult.getArr()[currPosition + i];
+            releaseWindow(window);
+            window = EMPTY;
+
+            if (prefetchedWindow != null) {
+                // prefetched window wasn't consumed, so window was too big
+                windowInPages = max(1, windowInPages / 2);
+                try {
+                    releaseWindow(prefetchedWindow.join());
+                } catch (CompletionException e) {
+                    // buffer of failed prefetching is collected by GC
+                }
+                prefetchedWindow = null;
             }
-            currPosition += toRead;
-            return toRead;
+            segment = -1;
+            segmentAllocatorService.readaheadWindows.put(head, windowInPages);
         }
 
+        /*
+         * Current window is read till the end, so access is sequential.
+         */
+        private void nextWindow() {
+            windowInPages = min(windowInPages * 2, MAX_READAHEAD_PAGES);
 
-        /**
-         * Strings are stored like size and bytes(not \0 byte)
-         *
-         * @return String from byte stream
+            if (prefetchedWindow != null) {
+                releaseWindow(window);
+                try {
+                    window = prefetchedWindow.join();
+                } catch (CompletionException e) {
+                    window = EMPTY;
+                    prefetchedWindow = null;
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+                prefetchedWindow = null;
+            } else {
+                releaseWindow(window);
+                window = readWindow(acquireWindow(windowInPages));
+            }
+
+            if (segment != -1) {
+                ByteBuffer buffer = acquireWindow(windowInPages);
+                prefetchedWindow = CompletableFuture.supplyAsync(() -> readWindow(buffer), READAHEAD_EXECUTOR);
+            }
+        }
+
+        /*
+         * Fills buffer (till its limit) by data of sequence, reading every contiguous part by one call.
          */
-        @Override
-        public String getString() {
-            int size = getInt();
-            byte[] buff = new byte[size];
-            for (int i = 0; i < buff.length; i++) {
-                buff[i] = getByte();
+        private ByteBuffer readWindow(ByteBuffer buffer) {
+            int limit = buffer.limit();
+            while (buffer.position() < limit && segment != -1) {
+                SegmentMetaData segmentMetaData = segmentAllocatorService.readSegmentMetaData(segment);
+                int leftInSegment = segmentMetaData.getOccupied() - positionInSegment;
+                int toRead = min(limit - buffer.position(), leftInSegment);
+
+                buffer.limit(buffer.position() + toRead);
+                segmentAllocatorService.readDataFromSegment(segment, positionInSegment, buffer);
+                buffer.limit(limit);
+
+                if (toRead < leftInSegment) {
+                    positionInSegment += toRead;
+                } else {
+                    segment = segmentMetaData.getNextSegment();
+                    positionInSegment = 0;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        private ByteBuffer acquireWindow(int pages) {
+            if (pages == 1) {
+                return segmentAllocatorService.bufferPool.acquire();
+            }
+            return segmentAllocatorService.readaheadBufferPool.acquire(pages * segmentAllocatorService.pageSize);
+        }
+
+        private void releaseWindow(ByteBuffer buffer) {
+            if (buffer == EMPTY) {
+                return;
+            }
+            if (buffer.capacity() == segmentAllocatorService.pageSize) {
+                segmentAllocatorService.bufferPool.release(buffer);
+            } else {
+                segmentAllocatorService.readaheadBufferPool.release(buffer);
+            }
+        }
+
+        private void releaseIfRead() {
+            if (!hasNext()) {
+                close();
             }
-            return new String(buff);
         }
     }
 }
@@ -1,26 +1,32 @@
 package filesystem.service;
 
 
+import filesystem.entity.ByteStream;
 import filesystem.entity.datastorage.Inode;
 import filesystem.entity.exception.SuperBlockException;
+import filesystem.storage.BufferPool;
+import filesystem.storage.Storage;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.ObjIntConsumer;
 
 import static filesystem.entity.filesystem.FileType.FILE;
 
 /*
  * SuperBlockService looks like:
  * ------------------------
+ * |        magic         |
+ * |----------------------|
+ * |    format version    |
+ * |----------------------|
  * |     numOfInodes      |
  * |----------------------|
+ * |   inline data size   | only in format with inline data
+ * |----------------------|
  * | inode structure here |
  * |----------------------|
  * | inode structure here |
@@ -32,42 +38,90 @@ import static filesystem.entity.filesystem.FileType.FILE;
  * |----------------------|
  * |      page size       |
  * ------------------------
+ * Inline data is format option: only then header has inline data size and every inode structure is followed by inline
+ * data area of so many bytes, where data of small file is kept instead of segments (segment of such inode is
+ * Inode.INLINE_SEGMENT). File system without inline data keeps the layout without them.
+ * Magic and format version are checked before anything else is read, so file system of other layout (or file which
+ * isn't file system at all) is rejected instead of being read as garbage.
  */
 public class SuperBlockService {
+    private static final int INODES_PER_BATCH = 4096; // how many inodes are read or written by one I/O call during initialisation
+
+    private static final int MAGIC = 0x4F4E4546; // "ONEF"
+    public static final int FORMAT_VERSION = 1; // superBlock is followed by free space bitmap, then by pages
+    public static final int FORMAT_VERSION_WITH_INLINE_DATA = 2; // the same, but inodes have inline data areas
+
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+    private static final int INLINE_DATA_HEADER_SIZE = HEADER_SIZE + 4;
+
     private final int numOfInodes;
-    private final File file;
-    private final Queue<Integer> freeInodes;
+    private final int inlineDataSize;
+    private final Storage storage;
+    private final BitSet freeInodes; // set bit is free inode, so free inode near some one is found fast
+    private int numOfFreeInodes;
     private final int pageSize;
+    private final BufferPool bufferPool = new BufferPool(1 + Inode.getSizeOfStructure()); // buffers for inode entries
 
     /**
      * @param numOfInodes the amount of inodes
      * @param pageSize    size of page (as well the minimum size of segment)
-     * @param file        file in which build superBlock in
+     * @param storage     storage of file in which build superBlock in
+     */
+    public SuperBlockService(int numOfInodes, int pageSize, Storage storage) {
+        this(numOfInodes, pageSize, 0, storage);
+    }
+
+    /**
+     * @param numOfInodes    the amount of inodes
+     * @param pageSize       size of page (as well the minimum size of segment)
+     * @param inlineDataSize max num of bytes of file which are kept in its inode entry (0 - data is always in segments)
+     * @param storage        storage of file in which build superBlock in
      */
-    public SuperBlockService(int numOfInodes, int pageSize, File file) {
-        if (!file.exists())
+    public SuperBlockService(int numOfInodes, int pageSize, int inlineDataSize, Storage storage) {
+        if (storage == null)
             throw new SuperBlockException("File doesn't exist!");
         if (numOfInodes <= 1)
             throw new SuperBlockException("Number of inodes are too small!");
+        if (inlineDataSize < 0)
+            throw new SuperBlockException("Inline data size cannot be negative!");
 
-        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+        this.inlineDataSize = inlineDataSize;
+        try {
             // initialise inodes as unused
-            freeInodes = new PriorityQueue<>(numOfInodes);
+            freeInodes = new BitSet(numOfInodes);
 
-            out.writeInt(numOfInodes);
+            ByteBuffer header = ByteBuffer.allocate(getHeaderSize(inlineDataSize)).putInt(MAGIC);
+            if (inlineDataSize == 0) {
+                header.putInt(FORMAT_VERSION).putInt(numOfInodes);
+            } else {
+                header.putInt(FORMAT_VERSION_WITH_INLINE_DATA).putInt(numOfInodes).putInt(inlineDataSize);
+            }
+            header.flip();
+            storage.write(header, 0);
 
             byte[] dummyInodeBytes = new Inode(-1, pageSize, FILE, -1).toByteArray();
-            for (int i = 0; i < numOfInodes; i++) {
-                out.writeByte(0); // unused
-                out.write(dummyInodeBytes);
-                freeInodes.add(i); // all free initially
+            byte[] emptyInlineData = new byte[inlineDataSize];
+            ByteBuffer batch = ByteBuffer.allocate(INODES_PER_BATCH * getSizeOfEntry());
+            for (int i = 0; i < numOfInodes; i += INODES_PER_BATCH) {
+                batch.clear();
+                for (int j = i; j < Math.min(numOfInodes, i + INODES_PER_BATCH); j++) {
+                    batch.put((byte) 0); // unused
+                    batch.put(dummyInodeBytes);
+                    batch.put(emptyInlineData);
+                }
+                batch.flip();
+                storage.write(batch, getInodeOffsetByIndex(i));
             }
+            freeInodes.set(0, numOfInodes); // all free initially
+            numOfFreeInodes = numOfInodes;
 
-            out.writeInt(pageSize);
+            ByteBuffer pageSizeBytes = ByteBuffer.allocate(4).putInt(pageSize);
+            pageSizeBytes.flip();
+            storage.write(pageSizeBytes, getInodeOffsetByIndex(numOfInodes));
         } catch (IOException e) {
             throw new SuperBlockException("SuperBlock initialisation has failed!", e);
         }
-        this.file = file;
+        this.storage = storage;
         this.pageSize = pageSize;
         this.numOfInodes = numOfInodes;
     }
@@ -76,31 +130,112 @@ public class SuperBlockService {
      * This constructor considers that file has already initialised fileSystem (as well superBlock in it).
      * It will read this superBlock and will fill all needed fields.
      *
-     * @param file file with initialised superBlock in it
+     * @param storage storage of file with initialised superBlock in it
      */
-    public SuperBlockService(File file) {
-        if (!file.exists())
+    public SuperBlockService(Storage storage) {
+        if (storage == null)
             throw new SuperBlockException("File doesn't exist!");
 
-        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
-            numOfInodes = in.readInt();
-            freeInodes = new PriorityQueue<>(numOfInodes);
+        if (!isSupportedFormat(storage))
+            throw new SuperBlockException("File doesn't contain file system of supported format!");
+
+        try {
+            ByteBuffer header = readHeader(storage);
+            numOfInodes = header.getInt(8);
+            inlineDataSize = getInlineDataSize(header);
 
             if (numOfInodes <= 1)
                 throw new SuperBlockException("Number of inodes are too small!");
+            if (inlineDataSize < 0)
+                throw new SuperBlockException("Inline data size cannot be negative!");
 
-            for (int i = 0; i < numOfInodes; i++) {
-                int used = in.readByte();
-                if (used == 0)
-                    freeInodes.add(i);
+            freeInodes = new BitSet(numOfInodes);
 
-                in.skipBytes(Inode.getSizeOfStructure());
+            int sizeOfEntry = getSizeOfEntry();
+            ByteBuffer batch = ByteBuffer.allocate(INODES_PER_BATCH * sizeOfEntry);
+            for (int i = 0; i < numOfInodes; i += INODES_PER_BATCH) {
+                int inBatch = Math.min(numOfInodes - i, INODES_PER_BATCH);
+                batch.clear();
+                batch.limit(inBatch * sizeOfEntry);
+                storage.read(batch, getInodeOffsetByIndex(i));
+                for (int j = 0; j < inBatch; j++) {
+                    int used = batch.get(j * sizeOfEntry);
+                    if (used == 0) {
+                        freeInodes.set(i + j);
+                        numOfFreeInodes++;
+                    }
+                }
             }
-            pageSize = in.readInt();
+
+            ByteBuffer intBytes = ByteBuffer.allocate(4);
+            storage.read(intBytes, getInodeOffsetByIndex(numOfInodes));
+            pageSize = intBytes.getInt(0);
         } catch (IOException e) {
             throw new SuperBlockException("File writing went wrong during initialisation!", e);
         }
-        this.file = file;
+        this.storage = storage;
+    }
+
+    /**
+     * Reads page size of file system without reading whole superBlock.
+     *
+     * @param storage storage of file with initialised superBlock in it
+     * @return page size of file system
+     */
+    public static int readPageSize(Storage storage) {
+        if (!isSupportedFormat(storage))
+            throw new SuperBlockException("File doesn't contain file system of supported format!");
+
+        try {
+            ByteBuffer header = readHeader(storage);
+            int numOfInodes = header.getInt(8);
+            int inlineDataSize = getInlineDataSize(header);
+
+            ByteBuffer intBytes = ByteBuffer.allocate(4);
+            storage.read(intBytes, getInodeOffsetByIndex(numOfInodes, inlineDataSize));
+            return intBytes.getInt(0);
+        } catch (IOException e) {
+            throw new SuperBlockException("File reading went wrong during reading of page size!", e);
+        }
+    }
+
+    /**
+     * Checks magic and format version of file system, so that file system of other layout (for example created
+     * before free space bitmap was placed after superBlock) isn't read as garbage.
+     *
+     * @param storage storage of file with initialised superBlock in it
+     * @return true if file contains file system of FORMAT_VERSION or FORMAT_VERSION_WITH_INLINE_DATA
+     */
+    public static boolean isSupportedFormat(Storage storage) {
+        try {
+            if (storage.size() < HEADER_SIZE) {
+                return false;
+            }
+            ByteBuffer header = ByteBuffer.allocate(8);
+            storage.read(header, 0);
+            int formatVersion = header.getInt(4);
+            return header.getInt(0) == MAGIC
+                    && (formatVersion == FORMAT_VERSION || formatVersion == FORMAT_VERSION_WITH_INLINE_DATA);
+        } catch (IOException e) {
+            throw new SuperBlockException("File reading went wrong during reading of format version!", e);
+        }
+    }
+
+    /*
+     * Header with inline data size is the longest one, file system is always longer than it.
+     */
+    private static ByteBuffer readHeader(Storage storage) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(INLINE_DATA_HEADER_SIZE);
+        storage.read(header, 0);
+        return header;
+    }
+
+    private static int getInlineDataSize(ByteBuffer header) {
+        return header.getInt(4) == FORMAT_VERSION_WITH_INLINE_DATA ? header.getInt(HEADER_SIZE) : 0;
+    }
+
+    private static int getHeaderSize(int inlineDataSize) {
+        return inlineDataSize == 0 ? HEADER_SIZE : INLINE_DATA_HEADER_SIZE;
     }
 
     /**
@@ -110,20 +245,41 @@ public class SuperBlockService {
      * @return inodeNum (or index) of acquired inode
      * @see Inode
      */
-    public int acquireInode(Inode inode, RandomAccessFile rFile) {
-        if (freeInodes.isEmpty())
+    public int acquireInode(Inode inode) {
+        return acquireInode(inode, 0);
+    }
+
+    /**
+     * It will acquire the first free inode starting from goal (wrapping around the end of inode table),
+     * so that inodes of related files are close to each other.
+     *
+     * @param inode Inode class instance
+     * @param goal  index of inode near which free inode is looked for
+     * @return inodeNum (or index) of acquired inode
+     */
+    public int acquireInode(Inode inode, int goal) {
+        if (numOfFreeInodes == 0)
             throw new SuperBlockException("All inodes are taken!");
 
-        int inodeNum = freeInodes.poll();
-        int offset = getInodeOffsetByIndex(inodeNum);
+        int inodeNum = freeInodes.nextSetBit(Math.max(0, Math.min(goal, numOfInodes - 1)));
+        if (inodeNum == -1) {
+            inodeNum = freeInodes.nextSetBit(0);
+        }
+        freeInodes.clear(inodeNum);
+        numOfFreeInodes--;
+        long offset = getInodeOffsetByIndex(inodeNum);
 
+        ByteBuffer entry = bufferPool.acquire();
         try {
-            rFile.seek(offset);
-            rFile.write(1);
-            rFile.write(inode.toByteArray());
+            entry.put((byte) 1);
+            inode.writeTo(entry);
+            entry.flip();
+            storage.write(entry, offset);
             return inodeNum;
         } catch (IOException e) {
             throw new SuperBlockException("File writing went wrong during acquiring of inode!", e);
+        } finally {
+            bufferPool.release(entry);
         }
     }
 
@@ -134,17 +290,21 @@ public class SuperBlockService {
      * @param inode    instance of Inode class to write
      * @see Inode
      */
-    public void updateInode(int inodeNum, Inode inode, RandomAccessFile rFile) {
+    public void updateInode(int inodeNum, Inode inode) {
         if (numOfInodes <= inodeNum || inodeNum < 0)
             throw new SuperBlockException("Not correct inodeNum");
 
-        int offset = getInodeOffsetByIndex(inodeNum) + 1;
+        long offset = getInodeOffsetByIndex(inodeNum) + 1;
 
+        ByteBuffer inodeBytes = bufferPool.acquire(Inode.getSizeOfStructure());
         try {
-            rFile.seek(offset);
-            rFile.write(inode.toByteArray());
+            inode.writeTo(inodeBytes);
+            inodeBytes.flip();
+            storage.write(inodeBytes, offset);
         } catch (IOException e) {
             throw new SuperBlockException("File writing went wrong during update of inode!", e);
+        } finally {
+            bufferPool.release(inodeBytes);
         }
     }
 
@@ -155,62 +315,276 @@ public class SuperBlockService {
      * @param inodeNum index of read inode
      * @return Inode class instance under given index
      */
-    public Inode readInode(int inodeNum, RandomAccessFile rFile) {
+    public Inode readInode(int inodeNum) {
         if (numOfInodes <= inodeNum || inodeNum < 0)
             throw new SuperBlockException("Not correct inodeNum");
+        ByteBuffer inodeBytes = bufferPool.acquire(Inode.getSizeOfStructure());
         try {
-            rFile.seek(getInodeOffsetByIndex(inodeNum));
-            rFile.read();
-            byte[] result = new byte[Inode.getSizeOfStructure()];
-            rFile.readFully(result);
-            return Inode.fromByteArray(result);
+            storage.read(inodeBytes, getInodeOffsetByIndex(inodeNum) + 1);
+            inodeBytes.flip();
+            return Inode.fromByteBuffer(inodeBytes);
         } catch (IOException e) {
             throw new SuperBlockException("File reading went wrong during reading of inode!", e);
+        } finally {
+            bufferPool.release(inodeBytes);
+        }
+    }
+
+    /**
+     * Reads used inodes of range by batches, so that the whole table can be read without I/O call per inode.
+     * Can be called concurrently for different ranges.
+     *
+     * @param fromInode the first inodeNum of range (inclusive)
+     * @param toInode   the last inodeNum of range (exclusive)
+     * @param action    consumer of used inode and its inodeNum
+     */
+    public void forEachUsedInode(int fromInode, int toInode, ObjIntConsumer<Inode> action) {
+        if (fromInode < 0 || toInode > numOfInodes || fromInode > toInode)
+            throw new SuperBlockException("Not correct range of inodes");
+
+        int sizeOfEntry = getSizeOfEntry();
+        ByteBuffer batch = ByteBuffer.allocate(Math.min(toInode - fromInode, INODES_PER_BATCH) * sizeOfEntry);
+        try {
+            for (int i = fromInode; i < toInode; i += INODES_PER_BATCH) {
+                int inBatch = Math.min(toInode - i, INODES_PER_BATCH);
+                batch.clear();
+                batch.limit(inBatch * sizeOfEntry);
+                storage.read(batch, getInodeOffsetByIndex(i));
+                for (int j = 0; j < inBatch; j++) {
+                    if (batch.get(j * sizeOfEntry) == 0)
+                        continue;
+                    batch.position(j * sizeOfEntry + 1);
+                    action.accept(Inode.fromByteBuffer(batch), i + j);
+                }
+            }
+        } catch (IOException e) {
+            throw new SuperBlockException("File reading went wrong during reading of inodes!", e);
         }
     }
 
+    /**
+     * Asynchronous version of {@link #readInode(int)}.
+     *
+     * @param inodeNum index of read inode
+     * @return future of Inode class instance under given index
+     */
+    public CompletableFuture<Inode> readInodeAsync(int inodeNum) {
+        if (numOfInodes <= inodeNum || inodeNum < 0)
+            throw new SuperBlockException("Not correct inodeNum");
+
+        ByteBuffer inodeBytes = ByteBuffer.allocate(Inode.getSizeOfStructure());
+        return wrapIOFailure(
+                storage.readAsync(inodeBytes, getInodeOffsetByIndex(inodeNum) + 1),
+                "File reading went wrong during reading of inode!"
+        ).thenApply(ignored -> {
+            inodeBytes.flip();
+            return Inode.fromByteBuffer(inodeBytes);
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #updateInode(int, Inode)}.
+     *
+     * @param inodeNum to write inode instance to
+     * @param inode    instance of Inode class to write
+     * @return future completed when inode is written
+     */
+    public CompletableFuture<Void> updateInodeAsync(int inodeNum, Inode inode) {
+        if (numOfInodes <= inodeNum || inodeNum < 0)
+            throw new SuperBlockException("Not correct inodeNum");
+
+        ByteBuffer inodeBytes = ByteBuffer.allocate(Inode.getSizeOfStructure());
+        inode.writeTo(inodeBytes);
+        inodeBytes.flip();
+        return wrapIOFailure(
+                storage.writeAsync(inodeBytes, getInodeOffsetByIndex(inodeNum) + 1),
+                "File writing went wrong during update of inode!"
+        );
+    }
+
     /**
      * Method to release occupied inode by inodeNum (index)
      *
      * @param inodeNum index of occupied inode
      */
-    public void removeInode(int inodeNum, RandomAccessFile rFile) {
+    public void removeInode(int inodeNum) {
         if (numOfInodes <= inodeNum || inodeNum < 0)
             throw new SuperBlockException("Not correct inodeNum");
 
-        int offset = getInodeOffsetByIndex(inodeNum);
+        long offset = getInodeOffsetByIndex(inodeNum);
 
         try {
-            rFile.seek(offset);
-            if (rFile.read() == 0) {
+            ByteBuffer used = ByteBuffer.allocate(1);
+            storage.read(used, offset);
+            if (used.get(0) == 0) {
                 throw new SuperBlockException("Inode was already released!");
             }
-            rFile.seek(offset);
-            rFile.write(0);
+            used.clear();
+            used.put(0, (byte) 0);
+            storage.write(used, offset);
         } catch (IOException e) {
             throw new SuperBlockException("File writing went wrong during writing to inode!", e);
         }
-        freeInodes.add(inodeNum);
+        freeInodes.set(inodeNum);
+        numOfFreeInodes++;
+    }
+
+
+    /**
+     * Reads data of file which is kept in its inode entry.
+     *
+     * @param inodeNum index of inode
+     * @param position position in inline data to start read from
+     * @param dst      buffer to read in (from its position till its limit)
+     */
+    public void readInlineData(int inodeNum, long position, ByteBuffer dst) {
+        long offset = getInlineDataOffset(inodeNum, position, dst.remaining());
+        try {
+            storage.read(dst, offset);
+        } catch (IOException e) {
+            throw new SuperBlockException("File reading went wrong during reading of inline data!", e);
+        }
+    }
+
+    /**
+     * Writes data of file which is kept in its inode entry, size of file isn't changed.
+     *
+     * @param inodeNum index of inode
+     * @param position position in inline data to start write from
+     * @param src      buffer to write (from its position till its limit)
+     */
+    public void writeInlineData(int inodeNum, long position, ByteBuffer src) {
+        long offset = getInlineDataOffset(inodeNum, position, src.remaining());
+        try {
+            storage.write(src, offset);
+        } catch (IOException e) {
+            throw new SuperBlockException("File writing went wrong during writing of inline data!", e);
+        }
+    }
+
+    /**
+     * Inode and its inline data are read by one I/O call.
+     *
+     * @param inodeNum index of inode which data is inline
+     * @return byte stream of all data of file
+     */
+    public ByteStream readInlineDataByByteStream(int inodeNum) {
+        if (numOfInodes <= inodeNum || inodeNum < 0)
+            throw new SuperBlockException("Not correct inodeNum");
+
+        ByteBuffer entry = ByteBuffer.allocate(getSizeOfEntry() - 1);
+        try {
+            storage.read(entry, getInodeOffsetByIndex(inodeNum) + 1);
+        } catch (IOException e) {
+            throw new SuperBlockException("File reading went wrong during reading of inline data!", e);
+        }
+        entry.flip();
+        Inode inode = Inode.fromByteBuffer(entry);
+        if (!inode.isInline() || inode.getSize() > inlineDataSize)
+            throw new SuperBlockException("Data of inode isn't inline!");
+        entry.limit(entry.position() + (int) inode.getSize());
+        return new ByteStreamBasedOnInlineData(entry.slice());
     }
 
+    /*
+     * IOException of future is wrapped by SuperBlockException, as it is done for synchronous methods.
+     */
+    private static <T> CompletableFuture<T> wrapIOFailure(CompletableFuture<T> future, String message) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            result.completeExceptionally(cause instanceof IOException ? new SuperBlockException(message, cause) : cause);
+        });
+        return result;
+    }
+
+    /*
+     * Inline data of inode is placed right after its structure.
+     */
+    private long getInlineDataOffset(int inodeNum, long position, int length) {
+        if (numOfInodes <= inodeNum || inodeNum < 0)
+            throw new SuperBlockException("Not correct inodeNum");
+        if (position < 0 || position + length > inlineDataSize)
+            throw new SuperBlockException("Inline data is out of inode!");
+        return getInodeOffsetByIndex(inodeNum) + 1 + Inode.getSizeOfStructure() + position;
+    }
+
+    private int getSizeOfEntry() {
+        return 1 + Inode.getSizeOfStructure() + inlineDataSize;
+    }
+
+    private static long getInodeOffsetByIndex(int inodeNum, int inlineDataSize) {
+        return getHeaderSize(inlineDataSize) + (1L + Inode.getSizeOfStructure() + inlineDataSize) * inodeNum;
+    }
 
     public long getSuperBlockOffset() {
-        return numOfInodes * (Inode.getSizeOfStructure() + 1) + 4 + 4;
+        return getInodeOffsetByIndex(numOfInodes) + 4;
     }
 
     public int getNumOfInodes() {
         return numOfInodes;
     }
 
-    public static int getInodeOffsetByIndex(int inodeNum) {
-        return 4 + (1 + Inode.getSizeOfStructure()) * inodeNum;
+    public long getInodeOffsetByIndex(int inodeNum) {
+        return getInodeOffsetByIndex(inodeNum, inlineDataSize);
+    }
+
+    /**
+     * @return max num of bytes of file which are kept in its inode entry
+     */
+    public int getInlineDataSize() {
+        return inlineDataSize;
     }
 
     public int getPageSize() {
         return pageSize;
     }
 
+    /**
+     * @param inodeNum index of inode
+     * @return true if inode is acquired
+     */
+    public boolean isInodeUsed(int inodeNum) {
+        return inodeNum >= 0 && inodeNum < numOfInodes && !freeInodes.get(inodeNum);
+    }
+
     public int getNumOfFreeInodes() {
-        return freeInodes.size();
+        return numOfFreeInodes;
+    }
+
+    /*
+     * Stream over inline data which is already read.
+     */
+    private static class ByteStreamBasedOnInlineData implements ByteStream {
+        private final ByteBuffer data;
+
+        private ByteStreamBasedOnInlineData(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return data.hasRemaining();
+        }
+
+        @Override
+        public byte getByte() {
+            if (!data.hasRemaining())
+                throw new IllegalStateException("Cannot read farther!");
+            return data.get();
+        }
+
+        @Override
+        public int getArr(byte[] arr) {
+            if (!data.hasRemaining())
+                throw new IllegalStateException("Cannot read farther!");
+            int toRead = Math.min(data.remaining(), arr.length);
+            data.get(arr, 0, toRead);
+            return toRead;
+        }
     }
 }
@@ -0,0 +1,238 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+import filesystem.entity.exception.SegmentAllocatorException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pages of file system split on allocation groups of contiguous pages. Every group has its own allocation policy
+ * (so own index of free segments) and own lock, so allocations in different groups don't wait for each other.
+ * <p>
+ * Allocation is done in the preferred group: the group of goal page (for example the page of file which is extended),
+ * otherwise the group of current thread. If preferred group doesn't have enough free pages, the next groups are tried
+ * and, if none of them has enough pages alone, pages are taken from all groups one by one.
+ * <p>
+ * Thread-safe.
+ */
+public class AllocationGroups {
+    public static final int NO_GOAL = -1;
+
+    private final Group[] groups;
+    private final int pagesInGroup;
+
+    /**
+     * Groups are created without free pages.
+     *
+     * @param capacityInPages  how many pages will file system have
+     * @param numOfGroups      how many groups pages are split on (the last group takes the rest of pages)
+     * @param allocationPolicy policy of every group
+     */
+    public AllocationGroups(int capacityInPages, int numOfGroups, AllocationPolicyType allocationPolicy) {
+        if (numOfGroups <= 0)
+            throw new IllegalArgumentException("Num of allocation groups should be positive!");
+
+        int actualNumOfGroups = Math.max(1, Math.min(numOfGroups, capacityInPages));
+        this.pagesInGroup = Math.max(1, capacityInPages / actualNumOfGroups);
+        this.groups = new Group[actualNumOfGroups];
+        for (int i = 0; i < actualNumOfGroups; i++) {
+            groups[i] = new Group(allocationPolicy.createPolicy());
+        }
+    }
+
+    /**
+     * @param amountOfPages how many pages are needed
+     * @param goal          page near which pages are preferred or {@link #NO_GOAL}
+     * @return taken segments in order of filling
+     * @throws SegmentAllocatorException if there isn't enough free pages
+     */
+    public List<Segment> allocate(int amountOfPages, int goal) {
+        int preferred = getPreferredGroup(goal);
+
+        for (int i = 0; i < groups.length; i++) {
+            Group group = groups[(preferred + i) % groups.length];
+            group.lock.lock();
+            try {
+                if (group.policy.getFreePages() >= amountOfPages) {
+                    return group.policy.allocate(amountOfPages);
+                }
+            } finally {
+                group.lock.unlock();
+            }
+        }
+
+        // none of groups has enough pages alone
+        List<Segment> availableSegments = new ArrayList<>();
+        int leftToAllocate = amountOfPages;
+        for (int i = 0; i < groups.length && leftToAllocate > 0; i++) {
+            Group group = groups[(preferred + i) % groups.length];
+            group.lock.lock();
+            try {
+                int taken = Math.min(group.policy.getFreePages(), leftToAllocate);
+                if (taken > 0) {
+                    availableSegments.addAll(group.policy.allocate(taken));
+                    leftToAllocate -= taken;
+                }
+            } finally {
+                group.lock.unlock();
+            }
+        }
+        if (leftToAllocate > 0) {
+            availableSegments.forEach(this::release);
+            throw new SegmentAllocatorException("File doesn't have enough free memory!");
+        }
+        return availableSegments;
+    }
+
+    /**
+     * @param amountOfPages how many pages are needed
+     * @param goal          page near which pages are preferred or {@link #NO_GOAL}
+     * @return one segment with at least amountOfPages pages or null if there isn't such free segment in any group
+     */
+    public Segment allocateContiguous(int amountOfPages, int goal) {
+        int preferred = getPreferredGroup(goal);
+        for (int i = 0; i < groups.length; i++) {
+            Group group = groups[(preferred + i) % groups.length];
+            group.lock.lock();
+            try {
+                Segment segment = group.policy.allocateContiguous(amountOfPages);
+                if (segment != null) {
+                    return segment;
+                }
+            } finally {
+                group.lock.unlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pages are taken only from group of start page, so segment cannot cross border of groups.
+     *
+     * @param start         the first page to take
+     * @param amountOfPages max num of pages to take
+     * @return taken segment (it can have less pages than amountOfPages) or null if start page isn't free
+     * @see AllocationPolicy#allocateAt(int, int)
+     */
+    public Segment allocateAt(int start, int amountOfPages) {
+        int groupIndex = getGroupOfPage(start);
+        if (groupIndex < groups.length - 1) {
+            amountOfPages = (int) Math.min(amountOfPages, (groupIndex + 1L) * pagesInGroup - start);
+        }
+
+        Group group = groups[groupIndex];
+        group.lock.lock();
+        try {
+            return group.policy.allocateAt(start, amountOfPages);
+        } finally {
+            group.lock.unlock();
+        }
+    }
+
+    /**
+     * Looks for pages near goal only in group of goal.
+     *
+     * @param goal          page near which pages are preferred
+     * @param amountOfPages how many pages are needed
+     * @return one segment which is the first fitting one from goal or null if there isn't such in group of goal
+     * @see AllocationPolicy#allocateNear(int, int)
+     */
+    public Segment allocateNear(int goal, int amountOfPages) {
+        Group group = groups[getGroupOfPage(goal)];
+        group.lock.lock();
+        try {
+            return group.policy.allocateNear(goal, amountOfPages);
+        } finally {
+            group.lock.unlock();
+        }
+    }
+
+    /**
+     * Groups with the same num of free pages are compared by index.
+     *
+     * @return the first page of group which has the most free pages
+     */
+    public int getFirstPageOfFreestGroup() {
+        int freest = 0;
+        int freePagesOfFreest = -1;
+        for (int i = 0; i < groups.length; i++) {
+            Group group = groups[i];
+            group.lock.lock();
+            try {
+                if (group.policy.getFreePages() > freePagesOfFreest) {
+                    freest = i;
+                    freePagesOfFreest = group.policy.getFreePages();
+                }
+            } finally {
+                group.lock.unlock();
+            }
+        }
+        return freest * pagesInGroup;
+    }
+
+    /**
+     * Makes pages free in groups which they belong to.
+     *
+     * @param segment allocated before (or not yet known as free) pages
+     */
+    public void release(Segment segment) {
+        int start = segment.getStart();
+        while (start <= segment.getEnd()) {
+            int groupIndex = getGroupOfPage(start);
+            int endOfGroup = groupIndex == groups.length - 1 ? segment.getEnd() : (groupIndex + 1) * pagesInGroup - 1;
+            int end = Math.min(segment.getEnd(), endOfGroup);
+
+            Group group = groups[groupIndex];
+            group.lock.lock();
+            try {
+                group.policy.release(Segment.of(start, end));
+            } finally {
+                group.lock.unlock();
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * @return num of free pages in all groups
+     */
+    public int getFreePages() {
+        int freePages = 0;
+        for (Group group : groups) {
+            group.lock.lock();
+            try {
+                freePages += group.policy.getFreePages();
+            } finally {
+                group.lock.unlock();
+            }
+        }
+        return freePages;
+    }
+
+    public int getNumOfGroups() {
+        return groups.length;
+    }
+
+    /**
+     * @param page index of page
+     * @return index of group which page belongs to
+     */
+    public int getGroupOfPage(int page) {
+        return Math.min(page / pagesInGroup, groups.length - 1);
+    }
+
+    private int getPreferredGroup(int goal) {
+        return goal == NO_GOAL ? (int) (Thread.currentThread().getId() % groups.length) : getGroupOfPage(goal);
+    }
+
+    private static class Group {
+        private final AllocationPolicy policy;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Group(AllocationPolicy policy) {
+            this.policy = policy;
+        }
+    }
+}
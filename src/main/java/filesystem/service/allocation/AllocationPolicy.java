@@ -0,0 +1,58 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+
+import java.util.List;
+
+/**
+ * Keeps track of free pages and decides which of them are taken by allocation.
+ * Policy is created without free pages, free space is added by releasing of segments.
+ * <p>
+ * Not thread-safe, it is used under locks of file system.
+ *
+ * @see AllocationPolicyType
+ */
+public interface AllocationPolicy {
+
+    /**
+     * @param amountOfPages how many pages are needed (not more than free pages)
+     * @return taken segments in order of filling, they can have more pages than needed in sum
+     * @throws filesystem.entity.exception.SegmentAllocatorException if there isn't enough free pages
+     */
+    List<Segment> allocate(int amountOfPages);
+
+    /**
+     * @param amountOfPages how many pages are needed
+     * @return one segment with at least amountOfPages pages or null if there isn't such free segment
+     */
+    Segment allocateContiguous(int amountOfPages);
+
+    /**
+     * Takes free pages which start exactly at the page, so that segment which ends right before it can grow in place.
+     *
+     * @param start         the first page to take
+     * @param amountOfPages max num of pages to take
+     * @return taken segment (it can have less pages than amountOfPages) or null if start page isn't free
+     */
+    Segment allocateAt(int start, int amountOfPages);
+
+    /**
+     * @param goal          page near which pages are preferred
+     * @param amountOfPages how many pages are needed
+     * @return one segment with amountOfPages pages (at least) which is the first fitting one from goal
+     * or null if there isn't such free segment after goal
+     */
+    Segment allocateNear(int goal, int amountOfPages);
+
+    /**
+     * Makes pages of segment free, merging them with free neighbours.
+     *
+     * @param segment allocated before (or not yet known as free) pages
+     */
+    void release(Segment segment);
+
+    /**
+     * @return num of free pages
+     */
+    int getFreePages();
+}
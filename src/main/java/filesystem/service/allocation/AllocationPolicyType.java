@@ -0,0 +1,34 @@
+package filesystem.service.allocation;
+
+/**
+ * How free pages are chosen for allocation.
+ */
+public enum AllocationPolicyType {
+    /**
+     * The smallest free segment where all pages fit, otherwise the biggest segments are taken one by one.
+     */
+    BEST_FIT,
+    /**
+     * The first by position free segment where all pages fit, otherwise segments are taken in order of position.
+     */
+    FIRST_FIT,
+    /**
+     * Binary buddy allocator, allocated segments are aligned power of two blocks of pages.
+     */
+    BUDDY;
+
+    /**
+     * @return new policy without free pages
+     */
+    public AllocationPolicy createPolicy() {
+        switch (this) {
+            case FIRST_FIT:
+                return new FirstFitAllocationPolicy();
+            case BUDDY:
+                return new BuddyAllocationPolicy();
+            case BEST_FIT:
+            default:
+                return new BestFitAllocationPolicy();
+        }
+    }
+}
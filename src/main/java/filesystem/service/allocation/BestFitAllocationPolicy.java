@@ -0,0 +1,40 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+import filesystem.entity.exception.SegmentAllocatorException;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Eager policy which tries to allocate pages such way that they fit within one segment, avoiding unnecessary
+ * fragmentation. If there isn't such segment, the biggest ones are taken till all pages are allocated.
+ */
+public class BestFitAllocationPolicy extends MergingAllocationPolicy {
+
+    @Override
+    public List<Segment> allocate(int amountOfPages) {
+        if (getFreePages() < amountOfPages)
+            throw new SegmentAllocatorException("File doesn't have enough free memory!");
+
+        List<Segment> availableSegments = new LinkedList<>();
+
+        int leftToAllocate = amountOfPages;
+        while (leftToAllocate != 0) {
+            Segment higher = freeSegments.ceilingBySize(leftToAllocate);
+            if (higher == null) {
+                higher = freeSegments.biggest();
+            }
+            Segment taken = take(higher, leftToAllocate);
+            availableSegments.add(taken);
+            leftToAllocate -= taken.getSize();
+        }
+
+        return availableSegments;
+    }
+
+    @Override
+    protected Segment findFitting(int amountOfPages) {
+        return freeSegments.ceilingBySize(amountOfPages);
+    }
+}
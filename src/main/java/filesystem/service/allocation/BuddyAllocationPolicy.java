@@ -0,0 +1,208 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+import filesystem.entity.exception.SegmentAllocatorException;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Binary buddy allocator. Free pages are kept as blocks of 2^order pages, which start at position aligned by their
+ * size, in free lists by order. Needed amount of pages is rounded up to power of two and the smallest suitable block
+ * is split by halves, released block is merged with its buddy (block of the same order which differs only by bit
+ * of order in position) while it is free. So both allocation and release take O(log n).
+ * <p>
+ * Any run of pages (for example loaded from free space bitmap) is released as the maximal aligned blocks.
+ * If there isn't block for the whole amount, the biggest blocks are taken till all pages are allocated.
+ */
+public class BuddyAllocationPolicy implements AllocationPolicy {
+    private static final int MAX_ORDER = 30;
+
+    private final List<SortedLongSet> freeBlocks = new ArrayList<>(); // starts of free blocks by order
+    private int freePages;
+
+    public BuddyAllocationPolicy() {
+        for (int order = 0; order <= MAX_ORDER; order++) {
+            freeBlocks.add(new SortedLongSet());
+        }
+    }
+
+    @Override
+    public List<Segment> allocate(int amountOfPages) {
+        if (freePages < amountOfPages)
+            throw new SegmentAllocatorException("File doesn't have enough free memory!");
+
+        List<Segment> availableSegments = new LinkedList<>();
+
+        int leftToAllocate = amountOfPages;
+        while (leftToAllocate > 0) {
+            int neededOrder = getOrderToFit(leftToAllocate);
+            int order = neededOrder;
+            while (order <= MAX_ORDER && freeBlocks.get(order).size() == 0) {
+                order++;
+            }
+
+            if (order <= MAX_ORDER) {
+                availableSegments.add(splitBlock(order, neededOrder));
+                leftToAllocate = 0;
+            } else {
+                // there are only blocks smaller than needed, every of them is smaller than left amount as well
+                order = neededOrder - 1;
+                while (freeBlocks.get(order).size() == 0) {
+                    order--;
+                }
+                int start = takeBlock(order);
+                availableSegments.add(Segment.of(start, start + (1 << order) - 1));
+                leftToAllocate -= 1 << order;
+            }
+        }
+
+        return availableSegments;
+    }
+
+    @Override
+    public Segment allocateContiguous(int amountOfPages) {
+        int neededOrder = getOrderToFit(amountOfPages);
+        for (int order = neededOrder; order <= MAX_ORDER; order++) {
+            if (freeBlocks.get(order).size() != 0) {
+                return splitBlock(order, neededOrder);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The first block of every suitable order from goal (including the block with goal) is considered,
+     * the nearest of them is split.
+     */
+    @Override
+    public Segment allocateNear(int goal, int amountOfPages) {
+        int neededOrder = getOrderToFit(amountOfPages);
+        int nearestOrder = -1;
+        long nearest = SortedLongSet.NONE;
+        for (int order = neededOrder; order <= MAX_ORDER; order++) {
+            long start = freeBlocks.get(order).ceiling(goal & -(1 << order));
+            if (start != SortedLongSet.NONE && (nearest == SortedLongSet.NONE || start < nearest)) {
+                nearest = start;
+                nearestOrder = order;
+            }
+        }
+        if (nearestOrder == -1) {
+            return null;
+        }
+        removeBlock((int) nearest, nearestOrder);
+        return splitBlock((int) nearest, nearestOrder, neededOrder);
+    }
+
+    /**
+     * Free run after start page can consist of several blocks, they are taken one by one. Parts of blocks which
+     * aren't taken are released back as aligned blocks.
+     */
+    @Override
+    public Segment allocateAt(int start, int amountOfPages) {
+        int end = start - 1;
+        while (end - start + 1 < amountOfPages) {
+            int page = end + 1;
+            int order = findOrderOfFreeBlock(page);
+            if (order == -1) {
+                break;
+            }
+            int blockStart = page & -(1 << order);
+            int blockEnd = blockStart + (1 << order) - 1;
+            removeBlock(blockStart, order);
+
+            end = (int) Math.min(blockEnd, start + (long) amountOfPages - 1);
+            if (blockStart < page) {
+                release(Segment.of(blockStart, page - 1));
+            }
+            if (end < blockEnd) {
+                release(Segment.of(end + 1, blockEnd));
+            }
+        }
+        return end < start ? null : Segment.of(start, end);
+    }
+
+    @Override
+    public void release(Segment segment) {
+        int start = segment.getStart();
+        while (start <= segment.getEnd()) {
+            int alignment = start == 0 ? MAX_ORDER : Integer.numberOfTrailingZeros(start);
+            int fitting = 31 - Integer.numberOfLeadingZeros(segment.getEnd() - start + 1);
+            int order = Math.min(Math.min(alignment, MAX_ORDER), fitting);
+            releaseBlock(start, order);
+            start += 1 << order;
+        }
+    }
+
+    @Override
+    public int getFreePages() {
+        return freePages;
+    }
+
+    /*
+     * Merges block with its buddies while they are free.
+     */
+    private void releaseBlock(int start, int order) {
+        while (order < MAX_ORDER && freeBlocks.get(order).remove(start ^ (1 << order))) {
+            freePages -= 1 << order;
+            start = Math.min(start, start ^ (1 << order));
+            order++;
+        }
+        addBlock(start, order);
+    }
+
+    /*
+     * Takes free block and splits it till block of needed order, the rest of block is returned by halves.
+     */
+    private Segment splitBlock(int order, int neededOrder) {
+        return splitBlock(takeBlock(order), order, neededOrder);
+    }
+
+    /*
+     * Splits taken block till block of needed order.
+     */
+    private Segment splitBlock(int start, int order, int neededOrder) {
+        while (order > neededOrder) {
+            order--;
+            addBlock(start + (1 << order), order);
+        }
+        return Segment.of(start, start + (1 << neededOrder) - 1);
+    }
+
+    /*
+     * Order of free block which contains page or -1 if page isn't free.
+     */
+    private int findOrderOfFreeBlock(int page) {
+        for (int order = 0; order <= MAX_ORDER; order++) {
+            int blockStart = page & -(1 << order);
+            if (freeBlocks.get(order).ceiling(blockStart) == blockStart) {
+                return order;
+            }
+        }
+        return -1;
+    }
+
+    private int takeBlock(int order) {
+        int start = (int) freeBlocks.get(order).first();
+        removeBlock(start, order);
+        return start;
+    }
+
+    private void removeBlock(int start, int order) {
+        freeBlocks.get(order).remove(start);
+        freePages -= 1 << order;
+    }
+
+    private void addBlock(int start, int order) {
+        freeBlocks.get(order).add(start);
+        freePages += 1 << order;
+    }
+
+    /*
+     * The smallest order, block of which has at least amountOfPages pages.
+     */
+    private static int getOrderToFit(int amountOfPages) {
+        return 32 - Integer.numberOfLeadingZeros(amountOfPages - 1);
+    }
+}
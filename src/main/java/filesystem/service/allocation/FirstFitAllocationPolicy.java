@@ -0,0 +1,45 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+import filesystem.entity.exception.SegmentAllocatorException;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Takes the first by position free segment where all pages fit, so that allocations are packed to the start
+ * of file system. If there isn't such segment, free segments are taken in order of position.
+ */
+public class FirstFitAllocationPolicy extends MergingAllocationPolicy {
+
+    @Override
+    public List<Segment> allocate(int amountOfPages) {
+        if (getFreePages() < amountOfPages)
+            throw new SegmentAllocatorException("File doesn't have enough free memory!");
+
+        List<Segment> availableSegments = new LinkedList<>();
+
+        Segment fitting = findFitting(amountOfPages);
+        if (fitting != null) {
+            availableSegments.add(take(fitting, amountOfPages));
+            return availableSegments;
+        }
+
+        int leftToAllocate = amountOfPages;
+        while (leftToAllocate != 0) {
+            Segment taken = take(freeSegments.ceilingByStart(0), leftToAllocate);
+            availableSegments.add(taken);
+            leftToAllocate -= taken.getSize();
+        }
+        return availableSegments;
+    }
+
+    @Override
+    protected Segment findFitting(int amountOfPages) {
+        Segment fitting = freeSegments.ceilingByStart(0);
+        while (fitting != null && fitting.getSize() < amountOfPages) {
+            fitting = freeSegments.ceilingByStart(fitting.getEnd() + 1);
+        }
+        return fitting;
+    }
+}
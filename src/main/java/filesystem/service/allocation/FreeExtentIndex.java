@@ -0,0 +1,87 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+
+import static filesystem.service.allocation.SortedLongSet.NONE;
+
+/**
+ * Index of free segments, ordered both by size and by position. Every segment is packed into two longs:
+ * (size, start) for order by size and (start, size) for order by position, so segments of the same size are different
+ * keys and index takes 16 bytes per segment (plus free space of blocks) instead of objects of tree nodes.
+ * Segments are created only for results of lookups.
+ * <p>
+ * Not thread-safe.
+ */
+final class FreeExtentIndex {
+    private final SortedLongSet bySize = new SortedLongSet();
+    private final SortedLongSet byStart = new SortedLongSet();
+
+    void add(Segment segment) {
+        bySize.add(pack(segment.getSize(), segment.getStart()));
+        byStart.add(pack(segment.getStart(), segment.getSize()));
+    }
+
+    void remove(Segment segment) {
+        bySize.remove(pack(segment.getSize(), segment.getStart()));
+        byStart.remove(pack(segment.getStart(), segment.getSize()));
+    }
+
+    /**
+     * @param size needed num of pages
+     * @return the smallest segment with at least size pages (the first by position of them) or null
+     */
+    Segment ceilingBySize(int size) {
+        long packed = bySize.ceiling(pack(size, 0));
+        return packed == NONE ? null : toSegment(low(packed), high(packed));
+    }
+
+    /**
+     * @return the biggest segment (the last by position of them) or null
+     */
+    Segment biggest() {
+        long packed = bySize.last();
+        return packed == NONE ? null : toSegment(low(packed), high(packed));
+    }
+
+    /**
+     * @param start position of page
+     * @return the last segment which starts before or at the position or null
+     */
+    Segment floorByStart(int start) {
+        long packed = byStart.floor(pack(start, Integer.MAX_VALUE));
+        return packed == NONE ? null : toSegment(high(packed), low(packed));
+    }
+
+    /**
+     * @param start position of page
+     * @return the first segment which starts at or after the position or null
+     */
+    Segment ceilingByStart(int start) {
+        long packed = byStart.ceiling(pack(start, 0));
+        return packed == NONE ? null : toSegment(high(packed), low(packed));
+    }
+
+    boolean isEmpty() {
+        return byStart.size() == 0;
+    }
+
+    int size() {
+        return byStart.size();
+    }
+
+    private static long pack(int high, int low) {
+        return (long) high << 32 | low;
+    }
+
+    private static int high(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    private static int low(long packed) {
+        return (int) packed;
+    }
+
+    private static Segment toSegment(int start, int size) {
+        return Segment.of(start, start + size - 1);
+    }
+}
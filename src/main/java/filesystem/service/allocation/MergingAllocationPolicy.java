@@ -0,0 +1,117 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+
+/**
+ * Base of policies which keep free segments as maximal runs of pages in index ordered both by size and by position.
+ * Released segment is merged with adjacent free segments.
+ *
+ * @see FreeExtentIndex
+ */
+abstract class MergingAllocationPolicy implements AllocationPolicy {
+    private static final int MAX_SEGMENTS_NEAR_GOAL = 64; // how many free segments after goal are checked
+    protected final FreeExtentIndex freeSegments = new FreeExtentIndex();
+    private int freePages;
+
+    @Override
+    public void release(Segment segment) {
+        int start = segment.getStart();
+        int end = segment.getEnd();
+
+        Segment left = freeSegments.floorByStart(start - 1);
+        if (left != null && left.getEnd() == start - 1) {
+            start = left.getStart();
+            removeFromSegments(left);
+        }
+
+        Segment right = freeSegments.ceilingByStart(end + 1);
+        if (right != null && right.getStart() == end + 1) {
+            end = right.getEnd();
+            removeFromSegments(right);
+        }
+
+        addToSegments(Segment.of(start, end));
+    }
+
+    @Override
+    public Segment allocateContiguous(int amountOfPages) {
+        Segment fitting = findFitting(amountOfPages);
+        return fitting == null ? null : take(fitting, amountOfPages);
+    }
+
+    @Override
+    public Segment allocateAt(int start, int amountOfPages) {
+        Segment freeSegment = freeSegments.floorByStart(start);
+        if (freeSegment == null || freeSegment.getEnd() < start) {
+            return null;
+        }
+
+        removeFromSegments(freeSegment);
+        if (freeSegment.getStart() < start) {
+            addToSegments(Segment.of(freeSegment.getStart(), start - 1));
+        }
+        int end = (int) Math.min(freeSegment.getEnd(), start + (long) amountOfPages - 1);
+        if (end < freeSegment.getEnd()) {
+            addToSegments(Segment.of(end + 1, freeSegment.getEnd()));
+        }
+        return Segment.of(start, end);
+    }
+
+    /**
+     * Free segment which contains goal is checked first, then the following ones (not more than
+     * MAX_SEGMENTS_NEAR_GOAL, as far segments aren't near anymore).
+     */
+    @Override
+    public Segment allocateNear(int goal, int amountOfPages) {
+        Segment freeSegment = freeSegments.floorByStart(goal);
+        if (freeSegment == null || freeSegment.getEnd() < goal) {
+            freeSegment = freeSegments.ceilingByStart(goal);
+        }
+        for (int i = 0; freeSegment != null && i < MAX_SEGMENTS_NEAR_GOAL; i++) {
+            if (freeSegment.getSize() >= amountOfPages) {
+                return take(freeSegment, amountOfPages);
+            }
+            freeSegment = freeSegments.ceilingByStart(freeSegment.getEnd() + 1);
+        }
+        return null;
+    }
+
+    @Override
+    public int getFreePages() {
+        return freePages;
+    }
+
+    /**
+     * @param amountOfPages how many pages are needed
+     * @return free segment where all pages fit (which one is decided by policy) or null
+     */
+    protected abstract Segment findFitting(int amountOfPages);
+
+    /**
+     * Takes pages from the start of free segment, the rest of it stays free.
+     *
+     * @param freeSegment   one of free segments
+     * @param amountOfPages how many pages are needed
+     * @return taken segment (not bigger than free one)
+     */
+    protected Segment take(Segment freeSegment, int amountOfPages) {
+        removeFromSegments(freeSegment);
+
+        int taken = Math.min(freeSegment.getSize(), amountOfPages);
+        Segment partToReturn = Segment.of(freeSegment.getStart() + taken, freeSegment.getEnd());
+        if (partToReturn.getSize() != 0) {
+            addToSegments(partToReturn);
+        }
+        return Segment.of(freeSegment.getStart(), freeSegment.getStart() + taken - 1);
+    }
+
+    private void removeFromSegments(Segment segment) {
+        freePages -= segment.getSize();
+        freeSegments.remove(segment);
+    }
+
+    private void addToSegments(Segment segment) {
+        freePages += segment.getSize();
+        freeSegments.add(segment);
+    }
+}
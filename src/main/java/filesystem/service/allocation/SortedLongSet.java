@@ -0,0 +1,167 @@
+package filesystem.service.allocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorted set of non-negative longs, stored in primitive arrays (blocks) of limited size without object per value.
+ * Block is found by binary search over first values of blocks and value in block by binary search as well,
+ * so lookups take O(log n) and updates move not more than one block.
+ * <p>
+ * Not thread-safe.
+ */
+final class SortedLongSet {
+    static final long NONE = -1; // returned when there isn't such value
+    private static final int BLOCK_SIZE = 1024;
+
+    private final List<long[]> blocks = new ArrayList<>();
+    private final List<Integer> sizesOfBlocks = new ArrayList<>(); // boxed only per block
+    private int size;
+
+    /**
+     * @param value non-negative value
+     * @return false if value is already in set
+     */
+    boolean add(long value) {
+        if (blocks.isEmpty()) {
+            blocks.add(new long[BLOCK_SIZE]);
+            sizesOfBlocks.add(0);
+        }
+        int blockIndex = findBlock(value);
+        long[] block = blocks.get(blockIndex);
+        int sizeOfBlock = sizesOfBlocks.get(blockIndex);
+
+        int index = Arrays.binarySearch(block, 0, sizeOfBlock, value);
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+
+        if (sizeOfBlock == BLOCK_SIZE) {
+            // the upper half is moved to new block
+            int half = BLOCK_SIZE / 2;
+            long[] upper = new long[BLOCK_SIZE];
+            System.arraycopy(block, half, upper, 0, BLOCK_SIZE - half);
+            blocks.add(blockIndex + 1, upper);
+            sizesOfBlocks.add(blockIndex + 1, BLOCK_SIZE - half);
+            sizesOfBlocks.set(blockIndex, half);
+            sizeOfBlock = half;
+            if (index > half) {
+                block = upper;
+                index -= half;
+                sizeOfBlock = BLOCK_SIZE - half;
+                blockIndex++;
+            }
+        }
+
+        System.arraycopy(block, index, block, index + 1, sizeOfBlock - index);
+        block[index] = value;
+        sizesOfBlocks.set(blockIndex, sizeOfBlock + 1);
+        size++;
+        return true;
+    }
+
+    /**
+     * @param value to remove
+     * @return false if there isn't such value in set
+     */
+    boolean remove(long value) {
+        if (size == 0) {
+            return false;
+        }
+        int blockIndex = findBlock(value);
+        long[] block = blocks.get(blockIndex);
+        int sizeOfBlock = sizesOfBlocks.get(blockIndex);
+
+        int index = Arrays.binarySearch(block, 0, sizeOfBlock, value);
+        if (index < 0) {
+            return false;
+        }
+
+        System.arraycopy(block, index + 1, block, index, sizeOfBlock - index - 1);
+        if (sizeOfBlock == 1 && blocks.size() > 1) {
+            blocks.remove(blockIndex);
+            sizesOfBlocks.remove(blockIndex);
+        } else {
+            sizesOfBlocks.set(blockIndex, sizeOfBlock - 1);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * @return the least value greater than or equal to given one or {@link #NONE}
+     */
+    long ceiling(long value) {
+        if (size == 0) {
+            return NONE;
+        }
+        int blockIndex = findBlock(value);
+        int sizeOfBlock = sizesOfBlocks.get(blockIndex);
+        int index = Arrays.binarySearch(blocks.get(blockIndex), 0, sizeOfBlock, value);
+        if (index >= 0) {
+            return value;
+        }
+        index = -index - 1;
+        if (index < sizeOfBlock) {
+            return blocks.get(blockIndex)[index];
+        }
+        return blockIndex + 1 < blocks.size() ? blocks.get(blockIndex + 1)[0] : NONE;
+    }
+
+    /**
+     * @return the greatest value less than or equal to given one or {@link #NONE}
+     */
+    long floor(long value) {
+        if (size == 0) {
+            return NONE;
+        }
+        int blockIndex = findBlock(value);
+        int index = Arrays.binarySearch(blocks.get(blockIndex), 0, sizesOfBlocks.get(blockIndex), value);
+        if (index >= 0) {
+            return value;
+        }
+        index = -index - 1;
+        return index > 0 ? blocks.get(blockIndex)[index - 1] : NONE; // only the first block can start after value
+    }
+
+    /**
+     * @return the least value or {@link #NONE}
+     */
+    long first() {
+        return size == 0 ? NONE : blocks.get(0)[0];
+    }
+
+    /**
+     * @return the greatest value or {@link #NONE}
+     */
+    long last() {
+        if (size == 0) {
+            return NONE;
+        }
+        int lastBlock = blocks.size() - 1;
+        return blocks.get(lastBlock)[sizesOfBlocks.get(lastBlock) - 1];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /*
+     * The last block which starts before or at value (the first block if there isn't such).
+     */
+    private int findBlock(long value) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (blocks.get(middle)[0] <= value) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
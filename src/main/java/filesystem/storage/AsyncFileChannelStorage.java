@@ -0,0 +1,119 @@
+package filesystem.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Storage based on AsynchronousFileChannel. Asynchronous reads and writes don't park calling thread,
+ * so many of them can be outstanding on the device at once. Completion handlers are run by the default thread pool
+ * of channel, so dependent stages of returned futures shouldn't block.
+ * <p>
+ * Synchronous methods just wait for completion of asynchronous ones.
+ */
+public class AsyncFileChannelStorage implements Storage {
+    private final AsynchronousFileChannel channel;
+
+    /**
+     * @param file to open channel on (should exist)
+     * @throws IOException if file cannot be opened
+     */
+    public AsyncFileChannelStorage(File file) throws IOException {
+        this.channel = AsynchronousFileChannel.open(file.toPath(), READ, WRITE);
+    }
+
+    @Override
+    public void read(ByteBuffer dst, long position) throws IOException {
+        await(readAsync(dst, position));
+    }
+
+    @Override
+    public void write(ByteBuffer src, long position) throws IOException {
+        await(writeAsync(src, position));
+    }
+
+    /**
+     * Channel can read less than requested, then the rest is read by the next call from completion handler.
+     */
+    @Override
+    public CompletableFuture<Void> readAsync(ByteBuffer dst, long position) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        channel.read(dst, position, position, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer read, Long readPosition) {
+                if (read == -1) {
+                    result.completeExceptionally(new EOFException("Cannot read farther than end of file!"));
+                } else if (dst.hasRemaining()) {
+                    channel.read(dst, readPosition + read, readPosition + read, this);
+                } else {
+                    result.complete(null);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, Long readPosition) {
+                result.completeExceptionally(exc);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> writeAsync(ByteBuffer src, long position) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        channel.write(src, position, position, new CompletionHandler<Integer, Long>() {
+            @Override
+            public void completed(Integer written, Long writePosition) {
+                if (src.hasRemaining()) {
+                    channel.write(src, writePosition + written, writePosition + written, this);
+                } else {
+                    result.complete(null);
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, Long writePosition) {
+                result.completeExceptionally(exc);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void await(CompletableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waiting of I/O was interrupted!");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package filesystem.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct ByteBuffers of the same size (usually page size) to do I/O without allocation of new arrays.
+ * Pool of heap buffers can be created as well, for copying through streams which take only arrays.
+ * Acquired buffer has to be released, when it isn't used anymore. Not released buffers are just collected by GC,
+ * so the pool doesn't leak, but allocates new buffers.
+ * <p>
+ * Thread-safe.
+ */
+public class BufferPool {
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+    private final boolean direct;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * @param bufferSize       capacity of every buffer
+     * @param maxPooledBuffers how many released buffers are kept for reuse
+     * @param direct           if false buffers are allocated in heap, so they have accessible arrays
+     */
+    public BufferPool(int bufferSize, int maxPooledBuffers, boolean direct) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size should be positive!");
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.direct = direct;
+    }
+
+    public BufferPool(int bufferSize, int maxPooledBuffers) {
+        this(bufferSize, maxPooledBuffers, true);
+    }
+
+    public BufferPool(int bufferSize) {
+        this(bufferSize, DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    /**
+     * @return cleared buffer of bufferSize capacity
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * @param length needed num of bytes (not more than bufferSize)
+     * @return buffer with limit equal to length
+     */
+    public ByteBuffer acquire(int length) {
+        if (length > bufferSize)
+            throw new IllegalArgumentException("Buffer cannot be bigger than " + bufferSize + "!");
+        ByteBuffer buffer = acquire();
+        buffer.limit(length);
+        return buffer;
+    }
+
+    /**
+     * Returns buffer to the pool, after that buffer mustn't be used.
+     *
+     * @param buffer acquired from this pool buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || buffer.isDirect() != direct)
+            throw new IllegalArgumentException("Buffer wasn't acquired from this pool!");
+        if (pooled.incrementAndGet() > maxPooledBuffers) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return how many buffers were allocated by pool (not taken from it)
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+}
@@ -0,0 +1,272 @@
+package filesystem.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Comparator.comparingLong;
+
+/**
+ * Page cache on top of another storage.
+ * <p>
+ * File is split on pages of pageSize (page index = offset / pageSize), which are kept in memory till they are evicted
+ * by CLOCK algorithm. Writes only change cached pages and mark them dirty. Dirty pages are written back when they are
+ * evicted, by flusher thread every flushInterval, on force and on close. So, if process dies, changes made after
+ * the last flush are lost.
+ * <p>
+ * To let threads work in parallel, cache is split on stripes (page goes to stripe by its index), each of them has
+ * its own lock, pages and clock hand. I/O for missed pages is done under lock of stripe only.
+ */
+public class CachedStorage implements Storage {
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    private static final int MAX_STRIPES = 16;
+
+    private final Storage storage;
+    private final int pageSize;
+    private final Stripe[] stripes;
+    private final AtomicLong size; // writes through cache can enlarge file before pages are written back
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * @param storage      storage to cache pages of
+     * @param pageSize     size of cached page
+     * @param memoryBudget how many bytes cache can take (at least one page)
+     * @throws IOException if size of storage cannot be read
+     */
+    public CachedStorage(Storage storage, int pageSize, long memoryBudget) throws IOException {
+        this(storage, pageSize, memoryBudget, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param storage              storage to cache pages of
+     * @param pageSize             size of cached page
+     * @param memoryBudget         how many bytes cache can take (at least one page)
+     * @param flushIntervalMillis  how often dirty pages are written back, if 0 then only on eviction, force and close
+     * @throws IOException if size of storage cannot be read
+     */
+    public CachedStorage(Storage storage, int pageSize, long memoryBudget, long flushIntervalMillis) throws IOException {
+        if (memoryBudget < pageSize)
+            throw new IllegalArgumentException("Cache should have place for one page at least!");
+
+        this.storage = storage;
+        this.pageSize = pageSize;
+        this.size = new AtomicLong(storage.size());
+
+        long numOfPages = memoryBudget / pageSize;
+        int numOfStripes = (int) min(MAX_STRIPES, numOfPages);
+        stripes = new Stripe[numOfStripes];
+        for (int i = 0; i < numOfStripes; i++) {
+            stripes[i] = new Stripe((int) (numOfPages / numOfStripes + (i < numOfPages % numOfStripes ? 1 : 0)));
+        }
+
+        if (flushIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "page-cache-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushSilently, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public void read(ByteBuffer dst, long position) throws IOException {
+        if (position + dst.remaining() > size.get()) {
+            throw new EOFException("Cannot read farther than end of file!");
+        }
+        while (dst.hasRemaining()) {
+            long pageIndex = position / pageSize;
+            int offsetInPage = (int) (position % pageSize);
+            int length = min(dst.remaining(), pageSize - offsetInPage);
+
+            Stripe stripe = getStripe(pageIndex);
+            synchronized (stripe) {
+                Page page = stripe.getPage(pageIndex, true);
+                dst.put(page.data, offsetInPage, length);
+            }
+            position += length;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            long pageIndex = position / pageSize;
+            int offsetInPage = (int) (position % pageSize);
+            int length = min(src.remaining(), pageSize - offsetInPage);
+
+            Stripe stripe = getStripe(pageIndex);
+            synchronized (stripe) {
+                // page which is overwritten completely isn't read from the file
+                Page page = stripe.getPage(pageIndex, length != pageSize);
+                src.get(page.data, offsetInPage, length);
+                page.dirty = true;
+                page.validLength = max(page.validLength, offsetInPage + length);
+            }
+            position += length;
+            size.accumulateAndGet(position, Math::max);
+        }
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Writes back all dirty pages and forces underlying storage.
+     */
+    @Override
+    public void force() throws IOException {
+        flush();
+        storage.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        try {
+            flush();
+        } finally {
+            storage.close();
+        }
+    }
+
+    /**
+     * Writes back all dirty pages (by ascending index in each stripe).
+     */
+    public void flush() throws IOException {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.flush();
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private void flushSilently() {
+        try {
+            flush();
+        } catch (IOException e) {
+            // pages stay dirty, they will be written back by the next flush
+        }
+    }
+
+    private Stripe getStripe(long pageIndex) {
+        return stripes[(int) (pageIndex % stripes.length)];
+    }
+
+    private static class Page {
+        private long index = -1;
+        private byte[] data;
+        private int validLength; // bytes of page which exist in file (last page of file can be shorter)
+        private boolean dirty;
+        private boolean referenced;
+    }
+
+    private class Stripe {
+        private final Page[] pages;
+        private final Map<Long, Page> pagesByIndex;
+        private int hand;
+
+        Stripe(int numOfPages) {
+            pages = new Page[numOfPages];
+            for (int i = 0; i < numOfPages; i++) {
+                pages[i] = new Page();
+            }
+            pagesByIndex = new HashMap<>(numOfPages * 2);
+        }
+
+        Page getPage(long pageIndex, boolean fill) throws IOException {
+            Page page = pagesByIndex.get(pageIndex);
+            if (page != null) {
+                hits.incrementAndGet();
+                page.referenced = true;
+                return page;
+            }
+            misses.incrementAndGet();
+
+            page = evict();
+            if (page.data == null) {
+                page.data = new byte[pageSize];
+            }
+            page.validLength = 0;
+            if (fill) {
+                long start = pageIndex * pageSize;
+                int toRead = (int) max(0, min(pageSize, storage.size() - start));
+                storage.read(ByteBuffer.wrap(page.data, 0, toRead), start);
+                // data is reused after evicted page, bytes behind end of file shouldn't expose it
+                Arrays.fill(page.data, toRead, pageSize, (byte) 0);
+                page.validLength = toRead;
+            }
+            page.index = pageIndex;
+            page.referenced = true;
+            pagesByIndex.put(pageIndex, page);
+            return page;
+        }
+
+        /*
+         * Clock hand goes over pages giving the second chance to referenced ones.
+         */
+        Page evict() throws IOException {
+            while (true) {
+                Page page = pages[hand];
+                hand = (hand + 1) % pages.length;
+                if (page.referenced) {
+                    page.referenced = false;
+                    continue;
+                }
+                if (page.index != -1) {
+                    if (page.dirty) {
+                        writeBack(page);
+                    }
+                    pagesByIndex.remove(page.index);
+                    page.index = -1;
+                }
+                return page;
+            }
+        }
+
+        void flush() throws IOException {
+            List<Page> dirtyPages = new ArrayList<>();
+            for (Page page : pages) {
+                if (page.dirty) {
+                    dirtyPages.add(page);
+                }
+            }
+            dirtyPages.sort(comparingLong(page -> page.index));
+            for (Page page : dirtyPages) {
+                writeBack(page);
+            }
+        }
+
+        private void writeBack(Page page) throws IOException {
+            storage.write(ByteBuffer.wrap(page.data, 0, page.validLength), page.index * pageSize);
+            page.dirty = false;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package filesystem.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Storage based on positional reads and writes (pread/pwrite) of one FileChannel.
+ * <p>
+ * As position isn't shared between calls, any number of threads can use it simultaneously.
+ * Remember, that interruption of thread during I/O closes channel for all of them.
+ */
+public class FileChannelStorage implements Storage {
+    private final FileChannel channel;
+
+    /**
+     * @param file to open channel on (should exist)
+     * @throws IOException if file cannot be opened
+     */
+    public FileChannelStorage(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), READ, WRITE);
+    }
+
+    @Override
+    public void read(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int read = channel.read(dst, position);
+            if (read == -1) {
+                throw new EOFException("Cannot read farther than end of file!");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    /**
+     * FileChannel doesn't have positional gathering write, so channel's position is used for it.
+     * Only gathering writes depend on the position, that is why they are serialised among themselves only.
+     */
+    @Override
+    public void write(ByteBuffer[] srcs, long position) throws IOException {
+        synchronized (channel) {
+            channel.position(position);
+            ByteBuffer last = srcs[srcs.length - 1];
+            while (last.hasRemaining()) {
+                channel.write(srcs);
+            }
+        }
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return channel.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        return channel.transferFrom(src, position, count);
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,181 @@
+package filesystem.storage;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import static java.lang.Math.min;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Storage which maps file in memory, so reads and writes are plain memory accesses (served by kernel page cache).
+ * <p>
+ * One MappedByteBuffer cannot be bigger than 2GB, that is why file is mapped by windows of fixed size.
+ * Windows are mapped lazily, when they are touched the first time. Window is never shared by position,
+ * each access works with its own duplicate, so storage can be used by many threads.
+ * <p>
+ * Mapped regions are released only by garbage collector, even after close.
+ */
+public class MappedStorage implements Storage {
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private volatile MappedByteBuffer[] windows;
+    private volatile long knownSize; // file is at least so big, so reads within it don't ask channel for size
+
+    /**
+     * @param file to map (should exist)
+     * @throws IOException if file cannot be opened
+     */
+    public MappedStorage(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param file       to map (should exist)
+     * @param windowSize size of one mapped region in bytes
+     * @throws IOException if file cannot be opened
+     */
+    public MappedStorage(File file, int windowSize) throws IOException {
+        if (windowSize <= 0)
+            throw new IllegalArgumentException("Window size should be positive!");
+        this.windowSize = windowSize;
+        this.channel = FileChannel.open(file.toPath(), READ, WRITE);
+        this.knownSize = channel.size();
+        this.windows = new MappedByteBuffer[(int) ((knownSize + windowSize - 1) / windowSize)];
+    }
+
+    @Override
+    public void read(ByteBuffer dst, long position) throws IOException {
+        if (position + dst.remaining() > knownSize && position + dst.remaining() > updateKnownSize()) {
+            throw new EOFException("Cannot read farther than end of file!");
+        }
+        while (dst.hasRemaining()) {
+            int offsetInWindow = (int) (position % windowSize);
+            int length = min(dst.remaining(), windowSize - offsetInWindow);
+
+            ByteBuffer view = getWindow((int) (position / windowSize), offsetInWindow + length).duplicate();
+            view.position(offsetInWindow);
+            view.limit(offsetInWindow + length);
+            dst.put(view);
+
+            position += length;
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            int offsetInWindow = (int) (position % windowSize);
+            int length = min(src.remaining(), windowSize - offsetInWindow);
+
+            ByteBuffer view = getWindow((int) (position / windowSize), offsetInWindow + length).duplicate();
+            view.position(offsetInWindow);
+
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + length);
+            view.put(part);
+            src.position(src.position() + length);
+
+            position += length;
+        }
+    }
+
+    /**
+     * Mapped region is written to the channel directly, without copying.
+     */
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        int offsetInWindow = (int) (position % windowSize);
+        int length = (int) min(min(count, channel.size() - position), windowSize - offsetInWindow);
+        if (length <= 0) {
+            return 0;
+        }
+
+        ByteBuffer view = getWindow((int) (position / windowSize), offsetInWindow + length).duplicate();
+        view.position(offsetInWindow);
+        view.limit(offsetInWindow + length);
+        return target.write(view);
+    }
+
+    /**
+     * Channel reads bytes to mapped region directly, without copying.
+     */
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        int offsetInWindow = (int) (position % windowSize);
+        int length = (int) min(count, windowSize - offsetInWindow);
+
+        ByteBuffer view = getWindow((int) (position / windowSize), offsetInWindow + length).duplicate();
+        view.position(offsetInWindow);
+        view.limit(offsetInWindow + length);
+        return Math.max(0, src.read(view));
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void force() {
+        for (MappedByteBuffer window : windows) {
+            if (window != null) {
+                window.force();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    /*
+     * File can be enlarged by mapping of windows or by somebody else, so its size is asked only when read goes
+     * farther than known end.
+     */
+    private synchronized long updateKnownSize() throws IOException {
+        knownSize = Math.max(knownSize, channel.size());
+        return knownSize;
+    }
+
+    private MappedByteBuffer getWindow(int index, int neededLength) throws IOException {
+        MappedByteBuffer[] current = windows;
+        if (index < current.length && current[index] != null && current[index].capacity() >= neededLength) {
+            return current[index];
+        }
+        return mapWindow(index, neededLength);
+    }
+
+    /*
+     * The last window is mapped only till the end of file. If somebody writes farther, window is mapped again
+     * (mapping in READ_WRITE mode enlarges file).
+     */
+    private synchronized MappedByteBuffer mapWindow(int index, int neededLength) throws IOException {
+        MappedByteBuffer[] current = windows;
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, index + 1);
+        }
+        MappedByteBuffer window = current[index];
+        if (window == null || window.capacity() < neededLength) {
+            long start = index * (long) windowSize;
+            long length = min(windowSize, Math.max(channel.size() - start, neededLength));
+            window = channel.map(READ_WRITE, start, length);
+            current[index] = window;
+            knownSize = Math.max(knownSize, start + length);
+        }
+        windows = current;
+        return window;
+    }
+}
@@ -0,0 +1,137 @@
+package filesystem.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+
+import static java.lang.Math.min;
+
+/**
+ * Positional access to the file which the file system is stored in.
+ * <p>
+ * Implementations don't keep any file pointer, so one instance is shared by all threads working with file system.
+ */
+public interface Storage extends Closeable {
+    int TRANSFER_BUFFER_SIZE = 64 * 1024; // for channel transfers done through buffer
+
+    /**
+     * Reads bytes until buffer is full.
+     *
+     * @param dst      buffer to read in (from its position till its limit)
+     * @param position offset in file to start read from
+     * @throws IOException if file ends before buffer is full
+     */
+    void read(ByteBuffer dst, long position) throws IOException;
+
+    /**
+     * Writes all remaining bytes of buffer.
+     *
+     * @param src      buffer to write (from its position till its limit)
+     * @param position offset in file to start write from
+     */
+    void write(ByteBuffer src, long position) throws IOException;
+
+    /**
+     * Writes all remaining bytes of buffers one after another, starting from position.
+     * Implementations should do it by one gathering (vectored) write, if it is possible.
+     *
+     * @param srcs     buffers to write
+     * @param position offset in file to start write from
+     */
+    default void write(ByteBuffer[] srcs, long position) throws IOException {
+        for (ByteBuffer src : srcs) {
+            int length = src.remaining();
+            write(src, position);
+            position += length;
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #read(ByteBuffer, long)}. Buffer mustn't be touched till future is completed.
+     * By default read is done synchronously by calling thread.
+     *
+     * @param dst      buffer to read in (from its position till its limit)
+     * @param position offset in file to start read from
+     * @return future completed when buffer is full (or exceptionally with EOFException if file ends before)
+     * @see AsyncFileChannelStorage
+     */
+    default CompletableFuture<Void> readAsync(ByteBuffer dst, long position) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            read(dst, position);
+            result.complete(null);
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Asynchronous version of {@link #write(ByteBuffer, long)}. Buffer mustn't be touched till future is completed.
+     * By default write is done synchronously by calling thread.
+     *
+     * @param src      buffer to write (from its position till its limit)
+     * @param position offset in file to start write from
+     * @return future completed when all bytes are written
+     * @see AsyncFileChannelStorage
+     */
+    default CompletableFuture<Void> writeAsync(ByteBuffer src, long position) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            write(src, position);
+            result.complete(null);
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Transfers bytes from the file to the channel. Implementations should do it without copying of data
+     * to java heap, if it is possible.
+     *
+     * @param position offset in file to start transfer from
+     * @param count    max num of bytes to transfer
+     * @param target   channel to write bytes to
+     * @return num of transferred bytes (could be less than count)
+     */
+    default long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) min(count, TRANSFER_BUFFER_SIZE));
+        read(buffer, position);
+        buffer.flip();
+        return target.write(buffer);
+    }
+
+    /**
+     * Transfers bytes from the channel to the file. Implementations should do it without copying of data
+     * to java heap, if it is possible.
+     *
+     * @param src      channel to read bytes from
+     * @param position offset in file to start transfer to
+     * @param count    max num of bytes to transfer
+     * @return num of transferred bytes (could be less than count, 0 if channel has ended)
+     */
+    default long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) min(count, TRANSFER_BUFFER_SIZE));
+        int read = src.read(buffer);
+        if (read <= 0) {
+            return 0;
+        }
+        buffer.flip();
+        write(buffer, position);
+        return read;
+    }
+
+    /**
+     * @return size of underlying file in bytes
+     */
+    long size() throws IOException;
+
+    /**
+     * Forces all written data to be stored on the device.
+     */
+    void force() throws IOException;
+}
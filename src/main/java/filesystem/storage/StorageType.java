@@ -0,0 +1,26 @@
+package filesystem.storage;
+
+/**
+ * Kind of storage the file system works with.
+ */
+public enum StorageType {
+    /**
+     * Positional reads and writes of FileChannel, each of them is a system call.
+     *
+     * @see FileChannelStorage
+     */
+    FILE_CHANNEL,
+    /**
+     * File is mapped in memory by windows, reads and writes are memory accesses.
+     *
+     * @see MappedStorage
+     */
+    MEMORY_MAPPED,
+    /**
+     * Reads and writes of AsynchronousFileChannel, so many of them can be outstanding at once.
+     * Synchronous calls wait for completion.
+     *
+     * @see AsyncFileChannelStorage
+     */
+    ASYNC_FILE_CHANNEL
+}
@@ -1,8 +1,10 @@
 package filesystem.entity.config;
 
+import filesystem.storage.StorageType;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
 
 public class FileSystemConfigurationTest {
     @Test(expected = IllegalArgumentException.class)
@@ -19,4 +21,22 @@ public class FileSystemConfigurationTest {
     public void FileSystemConfigurationWithSmallAmountOfInodesTest() {
         FileSystemConfiguration.of(1025 * 10 + 1, 1025, 1, new File(""), true, 10);
     }
-}
\ No newline at end of file
+
+    @Test(expected = IllegalArgumentException.class)
+    public void FileSystemConfigurationWithPageCacheOfMappedStorageTest() throws IOException {
+        File file = File.createTempFile("test", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration.of(1024 * 1024, 1024, 10, file, true, 10)
+                .withStorageType(StorageType.MEMORY_MAPPED)
+                .withPageCacheSize(1024 * 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void FileSystemConfigurationWithAsyncStorageAfterPageCacheTest() throws IOException {
+        File file = File.createTempFile("test", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration.of(1024 * 1024, 1024, 10, file, true, 10)
+                .withPageCacheSize(1024 * 16)
+                .withStorageType(StorageType.ASYNC_FILE_CHANNEL);
+    }
+}
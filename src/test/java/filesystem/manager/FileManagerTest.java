@@ -6,6 +6,12 @@ import filesystem.entity.exception.FileManagerException;
 import filesystem.entity.filesystem.BaseFileInf;
 import filesystem.entity.filesystem.DirectoryReadResult;
 import filesystem.manager.impl.FileManager;
+import filesystem.service.FreeSpaceBitmap;
+import filesystem.service.SuperBlockService;
+import filesystem.service.allocation.AllocationPolicyType;
+import filesystem.storage.FileChannelStorage;
+import filesystem.storage.Storage;
+import filesystem.storage.StorageType;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -18,6 +24,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -31,6 +44,7 @@ import static org.hamcrest.collection.IsEmptyCollection.empty;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 public class FileManagerTest {
 
@@ -114,6 +128,590 @@ public class FileManagerTest {
         assertEquals("Memory leak", initialSize, fileManager.getSizeInPages());
     }
 
+    @Test
+    public void channelsImageTest() throws IOException {
+        File jpg = new File(classLoader.getResource("test.jpg").getFile());
+        fileManager.createDirectory("", "first");
+        fileManager.createFile("first", "image");
+        fileManager.createFile("first", "streamedImage");
+
+        try (FileChannel in = FileChannel.open(jpg.toPath(), StandardOpenOption.READ)) {
+            fileManager.writeToFileFromChannel("first/image", in);
+        }
+        try (ReadableByteChannel in = Channels.newChannel(classLoader.getResourceAsStream("test.jpg"))) {
+            fileManager.writeToFileFromChannel("first/streamedImage", in);
+        }
+        assertEquals(
+                "Size includes name", fileManager.getFileSize("first/image") + "streamed".length(),
+                fileManager.getFileSize("first/streamedImage")
+        );
+
+        File copiedJpg = File.createTempFile("copied", "copied");
+        copiedJpg.deleteOnExit();
+        try (FileChannel out = FileChannel.open(copiedJpg.toPath(), StandardOpenOption.WRITE)) {
+            fileManager.copyDataFromFileToChannel("first/image", out);
+        }
+        assertBinaryEquals(jpg, copiedJpg);
+
+        ByteArrayOutputStream streamedJpg = new ByteArrayOutputStream();
+        fileManager.copyDataFromFileToChannel("first/streamedImage", Channels.newChannel(streamedJpg));
+        assertArrayEquals(Files.readAllBytes(jpg.toPath()), streamedJpg.toByteArray());
+    }
+
+    @Test
+    public void readFullyTest() throws IOException {
+        byte[] jpg = Files.readAllBytes(new File(classLoader.getResource("test.jpg").getFile()).toPath());
+        fileManager.createFile("", "image");
+        try (InputStream in = classLoader.getResourceAsStream("test.jpg")) {
+            fileManager.writeToFileFromInputStream("image", in);
+        }
+
+        ByteBuffer content = ByteBuffer.allocateDirect(jpg.length + 10);
+        assertEquals(jpg.length, fileManager.readFully("image", content));
+        assertEquals(jpg.length, content.position());
+
+        byte[] actual = new byte[jpg.length];
+        content.flip();
+        content.get(actual);
+        assertArrayEquals(jpg, actual);
+
+        ByteBuffer range = ByteBuffer.allocate(10000);
+        fileManager.readFully("image", 5000, range);
+        assertArrayEquals(Arrays.copyOfRange(jpg, 5000, 15000), range.array());
+    }
+
+    @Test
+    public void readAtTest() throws IOException {
+        byte[] jpg = Files.readAllBytes(new File(classLoader.getResource("test.jpg").getFile()).toPath());
+        fileManager.createFile("", "image");
+        try (InputStream in = classLoader.getResourceAsStream("test.jpg")) {
+            fileManager.writeToFileFromInputStream("image", in);
+        }
+
+        ByteBuffer slice = ByteBuffer.allocate(100);
+        for (int offset : new int[]{20000, 0, 4090, 12345}) {
+            slice.clear();
+            assertEquals(100, fileManager.readAt("image", offset, slice));
+            assertArrayEquals(Arrays.copyOfRange(jpg, offset, offset + 100), slice.array());
+        }
+
+        slice.clear();
+        assertEquals("Only the rest of file is read", 30, fileManager.readAt("image", jpg.length - 30, slice));
+        assertEquals(30, slice.position());
+        assertEquals(-1, fileManager.readAt("image", jpg.length, slice));
+    }
+
+    @Test
+    public void writeAtTest() throws IOException {
+        byte[] jpg = Files.readAllBytes(new File(classLoader.getResource("test.jpg").getFile()).toPath());
+        fileManager.createFile("", "image");
+        fileManager.writeToFile("image", jpg);
+        long sizeInPages = fileManager.getSizeInPages();
+
+        byte[] record = new byte[100];
+        Arrays.fill(record, (byte) 42);
+        for (int offset : new int[]{0, 4050, 20000}) {
+            assertEquals(100, fileManager.writeAt("image", offset, ByteBuffer.wrap(record)));
+            System.arraycopy(record, 0, jpg, offset, record.length);
+        }
+        assertEquals("Overwrite doesn't allocate", sizeInPages, fileManager.getSizeInPages());
+
+        // range which runs past the end of file
+        fileManager.writeAt("image", jpg.length - 50, ByteBuffer.wrap(record));
+        byte[] expected = Arrays.copyOf(jpg, jpg.length + 50);
+        System.arraycopy(record, 0, expected, jpg.length - 50, record.length);
+
+        ByteBuffer content = ByteBuffer.allocate(expected.length);
+        assertEquals(expected.length, fileManager.readFully("image", content));
+        assertArrayEquals(expected, content.array());
+    }
+
+    @Test
+    public void truncateTest() throws IOException {
+        byte[] jpg = Files.readAllBytes(new File(classLoader.getResource("test.jpg").getFile()).toPath());
+        fileManager.createFile("", "image");
+        fileManager.writeToFile("image", jpg);
+        long freePages = fileManager.getSizeInPages();
+        long sizeOfName = fileManager.getFileSize("image") - jpg.length;
+
+        fileManager.truncate("image", jpg.length + 10);
+        assertEquals("Bigger length doesn't change file", jpg.length + sizeOfName, fileManager.getFileSize("image"));
+
+        fileManager.truncate("image", 1000);
+        assertEquals(1000 + sizeOfName, fileManager.getFileSize("image"));
+        assertTrue("Tail is released", fileManager.getSizeInPages() > freePages);
+
+        ByteBuffer content = ByteBuffer.allocate(1000);
+        assertEquals(1000, fileManager.readFully("image", content));
+        assertArrayEquals(Arrays.copyOf(jpg, 1000), content.array());
+
+        // file is continued from the new end
+        fileManager.writeToFile("image", Arrays.copyOfRange(jpg, 1000, jpg.length));
+        content = ByteBuffer.allocate(jpg.length);
+        fileManager.readFully("image", content);
+        assertArrayEquals(jpg, content.array());
+
+        fileManager.truncate("image", 0);
+        assertEquals(-1, fileManager.readAt("image", 0, ByteBuffer.allocate(1)));
+    }
+
+    @Test(expected = FileManagerException.class)
+    public void fileSystemOfOlderFormatIsRejectedTest() throws IOException {
+        File olderFile = File.createTempFile("test", "test");
+        olderFile.deleteOnExit();
+        try (RandomAccessFile file = new RandomAccessFile(olderFile, "rw")) {
+            file.setLength(DEFAULT_SIZE_OF_PAGE * 1024);
+            file.writeInt(100); // older layout starts with numOfInodes
+        }
+
+        new FileManager(olderFile, 10);
+    }
+
+    @Test(expected = FileManagerException.class)
+    public void writeAtFartherThanEndTest() {
+        fileManager.createFile("", "file");
+        fileManager.writeToFile("file", new byte[]{1, 2, 3, 4, 5});
+
+        fileManager.writeAt("file", 6, ByteBuffer.wrap(new byte[]{1}));
+    }
+
+    @Test(expected = FileManagerException.class)
+    public void readFullyToSmallBufferTest() {
+        fileManager.createFile("", "file");
+        fileManager.writeToFile("file", new byte[]{1, 2, 3, 4, 5});
+
+        fileManager.readFully("file", ByteBuffer.allocate(4));
+    }
+
+    @Test(expected = FileManagerException.class)
+    public void readFullyOutOfFileTest() {
+        fileManager.createFile("", "file");
+        fileManager.writeToFile("file", new byte[]{1, 2, 3, 4, 5});
+
+        fileManager.readFully("file", 2, ByteBuffer.allocate(4));
+    }
+
+    @Test
+    public void asyncStorageImageTest() throws IOException {
+        byte[] jpg = Files.readAllBytes(new File(classLoader.getResource("test.jpg").getFile()).toPath());
+        File file = File.createTempFile("test5", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 4096, 4096, 100, file, true, 10)
+                .withStorageType(StorageType.ASYNC_FILE_CHANNEL);
+
+        try (FileManager asyncFileManager = new FileManager(configuration)) {
+            asyncFileManager.createFile("", "image");
+            asyncFileManager.writeToFile("image", jpg);
+
+            ByteBuffer content = ByteBuffer.allocate(jpg.length);
+            assertEquals(jpg.length, (int) asyncFileManager.readFullyAsync("image", content).join());
+            assertArrayEquals(jpg, content.array());
+        }
+    }
+
+    @Test
+    public void memoryMappedStorageImageTest() throws IOException {
+        File file = File.createTempFile("test3", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 4096, 4096, 100, file, true, 10)
+                .withStorageType(StorageType.MEMORY_MAPPED);
+
+        try (FileManager mappedFileManager = new FileManager(configuration)) {
+            mappedFileManager.createDirectory("", "first");
+            mappedFileManager.createFile("first", "image");
+
+            try (InputStream in = classLoader.getResourceAsStream("test.jpg")) {
+                mappedFileManager.writeToFileFromInputStream("first/image", in);
+            }
+
+            File copiedJpg = File.createTempFile("copied", "copied");
+            try (OutputStream out = new FileOutputStream(copiedJpg)) {
+                mappedFileManager.copyDataFromFileToOutputStream("first/image", out);
+            }
+            copiedJpg.deleteOnExit();
+
+            assertBinaryEquals(new File(classLoader.getResource("test.jpg").getFile()), copiedJpg);
+        }
+
+        try (FileManager reopenedFileManager = new FileManager(file, 10, StorageType.MEMORY_MAPPED)) {
+            File copiedJpg = File.createTempFile("copied", "copied");
+            try (OutputStream out = new FileOutputStream(copiedJpg)) {
+                reopenedFileManager.copyDataFromFileToOutputStream("first/image", out);
+            }
+            copiedJpg.deleteOnExit();
+
+            assertBinaryEquals(new File(classLoader.getResource("test.jpg").getFile()), copiedJpg);
+        }
+    }
+
+    @Test
+    public void pageCacheImageTest() throws IOException {
+        File file = File.createTempFile("test4", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 4096, 4096, 100, file, true, 10)
+                .withPageCacheSize(4096 * 16);
+
+        try (FileManager cachedFileManager = new FileManager(configuration)) {
+            cachedFileManager.createDirectory("", "first");
+            cachedFileManager.createFile("first", "image");
+
+            try (InputStream in = classLoader.getResourceAsStream("test.jpg")) {
+                cachedFileManager.writeToFileFromInputStream("first/image", in);
+            }
+        }
+
+        // cached pages should be written back on close
+        try (FileManager reopenedFileManager = new FileManager(file, 10)) {
+            File copiedJpg = File.createTempFile("copied", "copied");
+            try (OutputStream out = new FileOutputStream(copiedJpg)) {
+                reopenedFileManager.copyDataFromFileToOutputStream("first/image", out);
+            }
+            copiedJpg.deleteOnExit();
+
+            assertBinaryEquals(new File(classLoader.getResource("test.jpg").getFile()), copiedJpg);
+        }
+    }
+
+    @Test
+    public void reopenedFileSystemKeepsAllocatedPagesTest() throws IOException {
+        byte[] jpg = Files.readAllBytes(new File(classLoader.getResource("test.jpg").getFile()).toPath());
+        File file = File.createTempFile("test5", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 1024, 4096, 100, file, true, 10);
+
+        int freePages;
+        try (FileManager firstFileManager = new FileManager(configuration)) {
+            firstFileManager.createDirectory("", "first");
+            firstFileManager.createFile("first", "image");
+            firstFileManager.writeToFile("first/image", jpg);
+            freePages = firstFileManager.getSizeInPages();
+        }
+
+        try (FileManager reopenedFileManager = new FileManager(file, 10)) {
+            assertEquals(freePages, reopenedFileManager.getSizeInPages());
+
+            // new file mustn't take pages of the existing one
+            reopenedFileManager.createFile("first", "anotherImage");
+            reopenedFileManager.writeToFile("first/anotherImage", new byte[jpg.length]);
+
+            ByteBuffer content = ByteBuffer.allocate(jpg.length);
+            reopenedFileManager.readFully("first/image", content);
+            assertArrayEquals(jpg, content.array());
+        }
+    }
+
+    @Test
+    public void reopenedAfterCrashFileSystemTest() throws IOException {
+        byte[] jpg = Files.readAllBytes(new File(classLoader.getResource("test.jpg").getFile()).toPath());
+        File file = File.createTempFile("test6", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 1024, 4096, 100, file, true, 10);
+
+        // isn't closed, so free space bitmap isn't clean
+        FileManager crashedFileManager = new FileManager(configuration);
+        crashedFileManager.createDirectory("", "first");
+        crashedFileManager.createFile("first", "image");
+        crashedFileManager.writeToFile("first/image", jpg);
+        crashedFileManager.createFile("", "removed");
+        crashedFileManager.writeToFile("removed", jpg);
+        crashedFileManager.removeFile("removed");
+        int freePages = crashedFileManager.getSizeInPages();
+
+        try (FileManager reopenedFileManager = new FileManager(file, 10)) {
+            assertEquals(freePages, reopenedFileManager.getSizeInPages());
+
+            reopenedFileManager.createFile("first", "anotherImage");
+            reopenedFileManager.writeToFile("first/anotherImage", new byte[jpg.length]);
+
+            ByteBuffer content = ByteBuffer.allocate(jpg.length);
+            reopenedFileManager.readFully("first/image", content);
+            assertArrayEquals(jpg, content.array());
+        }
+    }
+
+    @Test
+    public void tornSequenceIsCutOnRemountTest() throws IOException {
+        File file = File.createTempFile("test6", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 1024, 4096, 100, file, true, 10);
+        byte[] chunk = new byte[4096 * 3];
+
+        // isn't closed, every append of torn file goes to a new segment as other files are placed after it
+        FileManager crashedFileManager = new FileManager(configuration);
+        crashedFileManager.createFile("", "torn");
+        for (int i = 0; i < 3; i++) {
+            Arrays.fill(chunk, (byte) (i + 1));
+            crashedFileManager.writeToFile("torn", chunk);
+            crashedFileManager.createFile("", "other" + i);
+            crashedFileManager.writeToFile("other" + i, chunk);
+        }
+
+        try (Storage storage = new FileChannelStorage(file)) {
+            SuperBlockService superBlockService = new SuperBlockService(storage);
+            long initialOffset = new FreeSpaceBitmap(superBlockService.getSuperBlockOffset(), storage).getEndOffset();
+            // torn file is the only one with several segments, its first segment points out of file
+            superBlockService.forEachUsedInode(0, superBlockService.getNumOfInodes(), (inode, inodeNum) -> {
+                if (inode.getFileType() == FILE && inode.getSegment() != inode.getLastSegment()) {
+                    try {
+                        storage.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE),
+                                initialOffset + inode.getSegment() * 4096L + 4);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+
+        try (FileManager reopenedFileManager = new FileManager(file, 10)) {
+            ByteBuffer content = ByteBuffer.allocate(chunk.length * 3);
+            int read = reopenedFileManager.readFully("torn", content);
+            assertTrue("Data of the first segment is kept", read >= chunk.length && read < chunk.length * 3);
+            for (int i = 0; i < read; i++) {
+                assertEquals((byte) (i / chunk.length + 1), content.get(i));
+            }
+
+            // pages of lost segments are free again, cut sequence can grow
+            reopenedFileManager.writeToFile("torn", chunk);
+            int grown = reopenedFileManager.readFully("torn", ByteBuffer.allocate(chunk.length * 4));
+            assertEquals(read + chunk.length, grown);
+            ByteBuffer other = ByteBuffer.allocate(chunk.length);
+            reopenedFileManager.readFully("other2", other);
+            assertArrayEquals(chunk, other.array());
+        }
+    }
+
+    @Test
+    public void allocationPoliciesImageTest() throws IOException {
+        byte[] jpg = Files.readAllBytes(new File(classLoader.getResource("test.jpg").getFile()).toPath());
+        for (AllocationPolicyType allocationPolicy : AllocationPolicyType.values()) {
+            File file = File.createTempFile("test7", "test");
+            file.deleteOnExit();
+            FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 1024, 4096, 100, file, true, 10)
+                    .withAllocationPolicy(allocationPolicy);
+
+            int freePages;
+            try (FileManager policyFileManager = new FileManager(configuration)) {
+                policyFileManager.createDirectory("", "first");
+                for (int i = 0; i < 5; i++) {
+                    policyFileManager.createFile("first", "image" + i);
+                    policyFileManager.writeToFile("first/image" + i, jpg);
+                }
+                policyFileManager.removeFile("first/image1");
+                policyFileManager.removeFile("first/image3");
+                policyFileManager.writeToFile("first/image2", jpg);
+                freePages = policyFileManager.getSizeInPages();
+            }
+
+            // pages of existing file system are managed by another policy
+            try (FileManager reopenedFileManager = new FileManager(file, 10)) {
+                assertEquals(freePages, reopenedFileManager.getSizeInPages());
+                reopenedFileManager.createFile("first", "image5");
+                reopenedFileManager.writeToFile("first/image5", jpg);
+
+                for (String name : new String[]{"image0", "image4", "image5"}) {
+                    ByteBuffer content = ByteBuffer.allocate(jpg.length);
+                    reopenedFileManager.readFully("first/" + name, content);
+                    assertArrayEquals(allocationPolicy + " " + name, jpg, content.array());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void defragmentFileTest() {
+        fileManager.createFile("", "first");
+        fileManager.createFile("", "second");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        // appends of two files are interleaved, so neither of them can be extended in place
+        for (int i = 0; i < 10; i++) {
+            byte[] chunk = new byte[DEFAULT_SIZE_OF_PAGE];
+            Arrays.fill(chunk, (byte) i);
+            fileManager.writeToFile("first", chunk);
+            fileManager.writeToFile("second", chunk);
+            expected.write(chunk, 0, chunk.length);
+        }
+        int freePages = fileManager.getSizeInPages();
+
+        List<Integer> fragmentedFiles = fileManager.findFragmentedFiles(0, fileManager.getNumOfInodes(), 5);
+        assertEquals(2, fragmentedFiles.size());
+        for (int inodeNum : fragmentedFiles) {
+            assertTrue(fileManager.defragmentFile(inodeNum) > expected.size());
+            assertEquals("File has one segment already", 0, fileManager.defragmentFile(inodeNum));
+        }
+        assertThat(fileManager.findFragmentedFiles(0, fileManager.getNumOfInodes(), 2), is(empty()));
+        assertTrue("Meta data of segments isn't needed anymore", fileManager.getSizeInPages() >= freePages);
+
+        for (String name : Arrays.asList("first", "second")) {
+            ByteBuffer content = ByteBuffer.allocate(expected.size());
+            assertEquals(expected.size(), fileManager.readFully(name, content));
+            assertArrayEquals(expected.toByteArray(), content.array());
+        }
+    }
+
+    @Test
+    public void directoryAffinePlacementTest() throws IOException {
+        File file = File.createTempFile("test10", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 1024, 4096, 400, file, true, 10)
+                .withAllocationGroups(4);
+
+        try (FileManager groupsFileManager = new FileManager(configuration)) {
+            for (String directory : Arrays.asList("first", "second", "third")) {
+                groupsFileManager.createDirectory("", directory);
+                groupsFileManager.createDirectory(directory, "inner");
+                for (int i = 0; i < 20; i++) {
+                    groupsFileManager.createFile(directory, "file" + i);
+                    groupsFileManager.writeToFile(directory + "/file" + i, (directory + i).getBytes());
+                }
+                groupsFileManager.createFile(directory + "/inner", "file");
+                groupsFileManager.writeToFile(directory + "/inner/file", directory.getBytes());
+            }
+        }
+
+        try (FileManager reopenedFileManager = new FileManager(file, 10)) {
+            for (String directory : Arrays.asList("first", "second", "third")) {
+                assertEquals(21, reopenedFileManager.getFilesNamesInDirectory(directory).size());
+                for (int i = 0; i < 20; i++) {
+                    byte[] expected = (directory + i).getBytes();
+                    ByteBuffer content = ByteBuffer.allocate(expected.length);
+                    reopenedFileManager.readFully(directory + "/file" + i, content);
+                    assertArrayEquals(expected, content.array());
+                }
+                ByteBuffer content = ByteBuffer.allocate(directory.length());
+                reopenedFileManager.readFully(directory + "/inner/file", content);
+                assertArrayEquals(directory.getBytes(), content.array());
+            }
+        }
+    }
+
+    @Test
+    public void writeBufferTest() throws IOException {
+        File file = File.createTempFile("test8", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 1024, 4096, 100, file, true, 10)
+                .withWriteBufferSize(4096 * 4);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (FileManager bufferedFileManager = new FileManager(configuration)) {
+            bufferedFileManager.createFile("", "log");
+            bufferedFileManager.createFile("", "anotherLog");
+            int freePages = bufferedFileManager.getSizeInPages();
+
+            for (int i = 0; i < 100; i++) {
+                byte[] line = ("line " + i + "\n").getBytes();
+                bufferedFileManager.writeToFile("log", line);
+                bufferedFileManager.writeToFile("anotherLog", line);
+                expected.write(line);
+            }
+            assertEquals("Allocation is delayed", freePages, bufferedFileManager.getSizeInPages());
+
+            // buffer is written before file is read
+            ByteBuffer content = ByteBuffer.allocate(expected.size());
+            assertEquals(expected.size(), bufferedFileManager.readFully("log", content));
+            assertArrayEquals(expected.toByteArray(), content.array());
+
+            bufferedFileManager.writeToFile("log", new byte[4096 * 5]); // bigger than buffer
+            expected.write(new byte[4096 * 5]);
+        }
+
+        // the rest of buffers is written on close
+        try (FileManager reopenedFileManager = new FileManager(file, 10)) {
+            ByteBuffer content = ByteBuffer.allocate(expected.size());
+            reopenedFileManager.readFully("log", content);
+            assertArrayEquals(expected.toByteArray(), content.array());
+
+            content = ByteBuffer.allocate(expected.size());
+            assertEquals(
+                    expected.size() - 4096 * 5, reopenedFileManager.readFully("anotherLog", content)
+            );
+        }
+    }
+
+    @Test
+    public void preallocationTest() throws IOException {
+        File file = File.createTempFile("test9", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 1024, 4096, 100, file, true, 10)
+                .withPreallocationLimit(64);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        int freePages;
+        try (FileManager preallocatingFileManager = new FileManager(configuration)) {
+            preallocatingFileManager.createFile("", "log");
+            preallocatingFileManager.createFile("", "truncated");
+            freePages = preallocatingFileManager.getSizeInPages();
+
+            for (int i = 0; i < 40; i++) {
+                byte[] chunk = new byte[1000];
+                Arrays.fill(chunk, (byte) i);
+                preallocatingFileManager.writeToFile("log", chunk);
+                preallocatingFileManager.writeToFile("truncated", chunk);
+                expected.write(chunk);
+            }
+
+            // all pages after the new end of file are released
+            preallocatingFileManager.truncate("truncated", 0);
+        }
+
+        // unused pages of "log" are released on close
+        try (FileManager reopenedFileManager = new FileManager(file, 10)) {
+            int dataPages = (int) Math.ceil(expected.size() / 4096.0);
+            assertTrue(freePages - reopenedFileManager.getSizeInPages() <= dataPages);
+
+            ByteBuffer content = ByteBuffer.allocate(expected.size());
+            assertEquals(expected.size(), reopenedFileManager.readFully("log", content));
+            assertArrayEquals(expected.toByteArray(), content.array());
+        }
+    }
+
+    @Test
+    public void inlineDataTest() throws IOException {
+        File file = File.createTempFile("test11", "test");
+        file.deleteOnExit();
+        FileSystemConfiguration configuration = FileSystemConfiguration.of(4096 * 1024, 4096, 100, file, true, 10)
+                .withInlineDataSize(64);
+
+        byte[] grown = new byte[100];
+        Arrays.fill(grown, (byte) 7);
+        try (FileManager inlineFileManager = new FileManager(configuration)) {
+            int freePages = inlineFileManager.getSizeInPages();
+            inlineFileManager.createFile("", "marker");
+            inlineFileManager.createFile("", "config");
+            inlineFileManager.writeToFile("config", new byte[]{1, 2, 3, 4, 5});
+            inlineFileManager.writeAt("config", 3, ByteBuffer.wrap(new byte[]{0, 0, 0}));
+            assertEquals("Small files don't take pages", freePages, inlineFileManager.getSizeInPages());
+
+            inlineFileManager.createFile("", "grown");
+            inlineFileManager.writeToFile("grown", Arrays.copyOf(grown, 40));
+            inlineFileManager.writeToFile("grown", Arrays.copyOfRange(grown, 40, grown.length));
+            assertEquals("File is moved to segments", freePages - 1, inlineFileManager.getSizeInPages());
+        }
+
+        try (FileManager reopenedFileManager = new FileManager(file, 10)) {
+            ByteBuffer content = ByteBuffer.allocate(6);
+            assertEquals(6, reopenedFileManager.readFully("config", content));
+            assertArrayEquals(new byte[]{1, 2, 3, 0, 0, 0}, content.array());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            reopenedFileManager.copyDataFromFileToOutputStream("config", out);
+            assertArrayEquals(new byte[]{1, 2, 3, 0, 0, 0}, out.toByteArray());
+
+            reopenedFileManager.truncate("config", 2);
+            content = ByteBuffer.allocate(4);
+            assertEquals(2, reopenedFileManager.readAt("config", 0, content));
+            assertEquals(-1, reopenedFileManager.readAt("marker", 0, content));
+
+            content = ByteBuffer.allocate(grown.length);
+            assertEquals(grown.length, reopenedFileManager.readFully("grown", content));
+            assertArrayEquals(grown, content.array());
+
+            int freePages = reopenedFileManager.getSizeInPages();
+            reopenedFileManager.removeFile("marker");
+            reopenedFileManager.removeFile("grown");
+            assertEquals(freePages + 1, reopenedFileManager.getSizeInPages());
+        }
+    }
+
     @Test
     public void allocateComplexFileTree() throws IOException {
         File file = File.createTempFile("test2", "test");
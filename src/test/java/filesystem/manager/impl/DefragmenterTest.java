@@ -0,0 +1,149 @@
+package filesystem.manager.impl;
+
+import filesystem.entity.ByteStream;
+import filesystem.entity.config.FileSystemConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DefragmenterTest {
+
+    private final static int SIZE_OF_PAGE = 4096;
+
+    private FileManager fileManager;
+
+    @Before
+    public void init() throws IOException {
+        File file = File.createTempFile("test", "test");
+        file.deleteOnExit();
+        fileManager = new FileManager(FileSystemConfiguration.of(SIZE_OF_PAGE * 1024, SIZE_OF_PAGE, 100, file, true, 10));
+    }
+
+    @After
+    public void close() {
+        fileManager.close();
+    }
+
+    @Test
+    public void fragmentedFilesAreMovedTest() throws InterruptedException {
+        byte[] chunk = new byte[SIZE_OF_PAGE];
+        for (int i = 0; i < 3; i++) {
+            fileManager.createFile("", "file" + i);
+        }
+        for (int i = 0; i < 8; i++) {
+            Arrays.fill(chunk, (byte) i);
+            for (int j = 0; j < 3; j++) {
+                fileManager.writeToFile("file" + j, chunk);
+            }
+        }
+
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        Defragmenter defragmenter = new Defragmenter(
+                fileManager, lock.readLock(), lock.writeLock(), 4, 1024 * 1024 * 1024
+        );
+        assertTrue(defragmenter.pass() >= 3 * 8 * SIZE_OF_PAGE);
+        assertEquals("Files aren't fragmented anymore", 0, defragmenter.pass());
+        assertEquals(0, lock.getReadLockCount());
+        assertFalse(lock.isWriteLocked());
+
+        for (int j = 0; j < 3; j++) {
+            ByteBuffer content = ByteBuffer.allocate(chunk.length);
+            assertEquals(chunk.length, fileManager.readAt("file" + j, 7 * SIZE_OF_PAGE, content));
+            assertArrayEquals(chunk, content.array());
+        }
+    }
+
+    @Test
+    public void failedPassIsRecordedTest() {
+        IllegalStateException failure = new IllegalStateException("lock is broken");
+        Lock brokenLock = new ReentrantLock() {
+            @Override
+            public void lockInterruptibly() {
+                throw failure;
+            }
+        };
+        Defragmenter defragmenter = new Defragmenter(fileManager, brokenLock, brokenLock, 4, 1024);
+        assertNull(defragmenter.getLastFailure());
+
+        defragmenter.runPass();
+        defragmenter.runPass();
+        assertEquals(2, defragmenter.getNumOfFailedPasses());
+        assertSame(failure, defragmenter.getLastFailure());
+    }
+
+    @Test
+    public void moveOfChangedFileIsDiscardedTest() {
+        fileManager.createFile("", "file");
+        fileManager.createFile("", "filler");
+        byte[] chunk = new byte[SIZE_OF_PAGE];
+        for (int i = 0; i < 8; i++) {
+            fileManager.writeToFile("file", chunk);
+            fileManager.writeToFile("filler", chunk);
+        }
+        fileManager.removeFile("filler");
+        int inodeNum = fileManager.findFragmentedFiles(0, fileManager.getNumOfInodes(), 2).get(0);
+        int freePages = fileManager.getSizeInPages();
+
+        FileMove move = fileManager.startMove(inodeNum);
+        assertTrue(fileManager.copyNextChunk(move) > 0);
+        // file is overwritten in place between copying and switching
+        fileManager.writeAt("file", 0, ByteBuffer.wrap(new byte[]{42}));
+        assertEquals("Changed file isn't copied anymore", 0, fileManager.copyNextChunk(move));
+        assertEquals(0, fileManager.finishMove(move));
+
+        assertEquals("The new segment is released", freePages, fileManager.getSizeInPages());
+        assertEquals(singletonList(inodeNum), fileManager.findFragmentedFiles(0, fileManager.getNumOfInodes(), 2));
+        ByteBuffer content = ByteBuffer.allocate(1);
+        fileManager.readAt("file", 0, content);
+        assertEquals(42, content.get(0));
+    }
+
+    @Test
+    public void readFileIsNotMovedTest() {
+        fileManager.createFile("", "file");
+        fileManager.createFile("", "filler");
+        byte[] chunk = new byte[SIZE_OF_PAGE];
+        for (int i = 0; i < 8; i++) {
+            fileManager.writeToFile("file", chunk);
+            fileManager.writeToFile("filler", chunk);
+        }
+        fileManager.removeFile("filler");
+        int inodeNum = fileManager.findFragmentedFiles(0, fileManager.getNumOfInodes(), 2).get(0);
+
+        ByteStream byteStream = fileManager.readFileByByteStream("file");
+        FileMove move = fileManager.startMove(inodeNum);
+        assertNull("Stream reads segments of file", move);
+        byteStream.getString();
+        while (byteStream.hasNext()) {
+            byteStream.getByte();
+        }
+
+        move = fileManager.startMove(inodeNum);
+        fileManager.copyNextChunk(move);
+        // stream is opened after the move is started, but before switching
+        fileManager.readFileByByteStream("file").close();
+        ByteStream openedStream = fileManager.readFileByByteStream("file");
+        assertEquals("Move isn't finished while file is read", 0, fileManager.finishMove(move));
+        openedStream.close();
+
+        ByteBuffer content = ByteBuffer.allocate(chunk.length * 8);
+        fileManager.readFullyAsync("file", content).join();
+        assertTrue("Finished readers don't stop moving", fileManager.defragmentFile(inodeNum) > 0);
+    }
+}
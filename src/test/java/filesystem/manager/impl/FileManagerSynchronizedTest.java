@@ -0,0 +1,106 @@
+package filesystem.manager.impl;
+
+import filesystem.entity.config.FileSystemConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileManagerSynchronizedTest {
+
+    private final static int SIZE_OF_PAGE = 4096;
+    private final static int SIZE_OF_CHUNK = 100;
+    private final static int NUM_OF_FILES = 4;
+    private final static int NUM_OF_CHUNKS = 300;
+
+    private FileManagerSynchronized fileManager;
+
+    @Before
+    public void init() throws IOException {
+        File file = File.createTempFile("test", "test");
+        file.deleteOnExit();
+        fileManager = new FileManagerSynchronized(
+                FileSystemConfiguration.of(SIZE_OF_PAGE * 2048, SIZE_OF_PAGE, 100, file, true, 10)
+                        .withWriteBufferSize(SIZE_OF_CHUNK * 10)
+                        .withBackgroundDefragmentation(2, 1024 * 1024 * 1024)
+        );
+    }
+
+    @After
+    public void close() {
+        fileManager.close();
+    }
+
+    @Test
+    public void bufferedFilesAreReadDuringDefragmentationTest() throws Exception {
+        for (int i = 0; i < NUM_OF_FILES; i++) {
+            fileManager.createFile("", "file" + i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // appends to files are interleaved, so files are fragmented when their buffers are written
+            Future<?> writer = executor.submit(() -> {
+                byte[] chunk = new byte[SIZE_OF_CHUNK];
+                for (int i = 0; i < NUM_OF_CHUNKS; i++) {
+                    Arrays.fill(chunk, (byte) i);
+                    for (int j = 0; j < NUM_OF_FILES; j++) {
+                        fileManager.writeToFile("file" + j, chunk);
+                    }
+                }
+            });
+            List<Future<?>> others = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                others.add(executor.submit(() -> {
+                    while (!writer.isDone()) {
+                        for (int j = 0; j < NUM_OF_FILES; j++) {
+                            checkContent("file" + j);
+                        }
+                    }
+                }));
+            }
+            others.add(executor.submit(() -> {
+                while (!writer.isDone()) {
+                    fileManager.getDefragmenter().pass();
+                }
+                return null;
+            }));
+
+            writer.get(1, TimeUnit.MINUTES);
+            for (Future<?> other : others) {
+                other.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int j = 0; j < NUM_OF_FILES; j++) {
+            assertEquals(SIZE_OF_CHUNK * NUM_OF_CHUNKS, checkContent("file" + j));
+        }
+    }
+
+    /*
+     * Chunk i of every file is filled by i.
+     */
+    private int checkContent(String path) {
+        ByteBuffer content = ByteBuffer.allocate(SIZE_OF_CHUNK * NUM_OF_CHUNKS);
+        int read = fileManager.readFully(path, content);
+        assertEquals("Only whole chunks are appended", 0, read % SIZE_OF_CHUNK);
+        for (int i = 0; i < read; i++) {
+            assertEquals((byte) (i / SIZE_OF_CHUNK), content.get(i));
+        }
+        return read;
+    }
+}
@@ -0,0 +1,133 @@
+package filesystem.manager.impl;
+
+import filesystem.entity.config.FileSystemConfiguration;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class FileSystemClonerTest {
+
+    private final static int SIZE_OF_PAGE = 4096;
+
+    @Test
+    public void cloneIsCompactedTest() throws IOException {
+        File source = File.createTempFile("test", "test");
+        source.deleteOnExit();
+        File target = File.createTempFile("test", "test");
+        target.deleteOnExit();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (FileManager fileManager = new FileManager(
+                FileSystemConfiguration.of(SIZE_OF_PAGE * 1024, SIZE_OF_PAGE, 100, source, true, 10)
+        )) {
+            fileManager.createDirectory("", "first");
+            fileManager.createDirectory("first", "second");
+            fileManager.createFile("first", "file");
+            fileManager.createFile("first/second", "anotherFile");
+            fileManager.createFile("", "removed");
+            // appends are interleaved, so files are fragmented
+            for (int i = 0; i < 8; i++) {
+                byte[] chunk = new byte[SIZE_OF_PAGE];
+                Arrays.fill(chunk, (byte) i);
+                fileManager.writeToFile("first/file", chunk);
+                fileManager.writeToFile("first/second/anotherFile", chunk);
+                fileManager.writeToFile("removed", chunk);
+                expected.write(chunk, 0, chunk.length);
+            }
+            fileManager.removeFile("removed");
+            fileManager.createHardLink("first/file", "first/second", "link");
+        }
+
+        new FileSystemCloner(2).cloneCompacted(source, target);
+        assertTrue("Clone has only used pages", target.length() < source.length());
+
+        try (FileManager clonedFileManager = new FileManager(target, 10)) {
+            assertThat(clonedFileManager.getFilesNamesInDirectory(""), containsInAnyOrder("first"));
+            assertThat(clonedFileManager.getFilesNamesInDirectory("first"), containsInAnyOrder("second", "file"));
+            assertThat(
+                    clonedFileManager.getFilesNamesInDirectory("first/second"),
+                    containsInAnyOrder("anotherFile", "link")
+            );
+            assertThat(
+                    clonedFileManager.findFragmentedFiles(0, clonedFileManager.getNumOfInodes(), 2),
+                    is(empty())
+            );
+            assertEquals("There is no free space in clone", 0, clonedFileManager.getSizeInPages());
+
+            for (String path : Arrays.asList("first/file", "first/second/anotherFile", "first/second/link")) {
+                ByteBuffer content = ByteBuffer.allocate(expected.size());
+                assertEquals(expected.size(), clonedFileManager.readFully(path, content));
+                assertArrayEquals(expected.toByteArray(), content.array());
+            }
+
+            // hard link shares inode, so the file is removed only with the last name
+            clonedFileManager.removeFile("first/file");
+            ByteBuffer content = ByteBuffer.allocate(expected.size());
+            assertEquals(expected.size(), clonedFileManager.readFully("first/second/link", content));
+        }
+    }
+
+    @Test
+    public void inlineDataIsClonedTest() throws IOException {
+        File source = File.createTempFile("test", "test");
+        source.deleteOnExit();
+        File target = File.createTempFile("test", "test");
+        target.deleteOnExit();
+
+        try (FileManager fileManager = new FileManager(
+                FileSystemConfiguration.of(SIZE_OF_PAGE * 1024, SIZE_OF_PAGE, 100, source, true, 10)
+                        .withInlineDataSize(32)
+        )) {
+            fileManager.createFile("", "marker");
+            fileManager.writeToFile("marker", new byte[]{1, 2, 3});
+        }
+
+        new FileSystemCloner(1).cloneCompacted(source, target);
+
+        try (FileManager clonedFileManager = new FileManager(target, 10)) {
+            assertEquals("Only root takes page", 0, clonedFileManager.getSizeInPages());
+            ByteBuffer content = ByteBuffer.allocate(3);
+            assertEquals(3, clonedFileManager.readFully("marker", content));
+            assertArrayEquals(new byte[]{1, 2, 3}, content.array());
+        }
+    }
+
+    @Test
+    public void fileBiggerThanChunkIsClonedTest() throws IOException {
+        File source = File.createTempFile("test", "test");
+        source.deleteOnExit();
+        File target = File.createTempFile("test", "test");
+        target.deleteOnExit();
+
+        byte[] data = new byte[SIZE_OF_PAGE * 200 + 123];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 127);
+        }
+        try (FileManager fileManager = new FileManager(
+                FileSystemConfiguration.of(SIZE_OF_PAGE * 1024, SIZE_OF_PAGE, 100, source, true, 10)
+        )) {
+            fileManager.createFile("", "big");
+            fileManager.writeToFile("big", data);
+        }
+
+        new FileSystemCloner(2).cloneCompacted(source, target);
+
+        try (FileManager clonedFileManager = new FileManager(target, 10)) {
+            ByteBuffer content = ByteBuffer.allocate(data.length);
+            assertEquals(data.length, clonedFileManager.readFully("big", content));
+            assertArrayEquals(data, content.array());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package filesystem.service;
+
+import filesystem.entity.datastorage.ExtentMap;
+import filesystem.entity.datastorage.Inode;
+import filesystem.entity.datastorage.SegmentMetaData;
+import filesystem.storage.FileChannelStorage;
+import filesystem.storage.Storage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+import static filesystem.entity.filesystem.FileType.FILE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AllocationScannerTest {
+
+    private final static int SIZE_OF_PAGE = 1024;
+    private final static int NUM_OF_PAGES = 4000;
+    private final static int NUM_OF_INODES = 1500;
+    private final static int NUM_OF_FILES = 1200; // more than one task of scanner
+
+    private File originalFile;
+    private Storage storage;
+    private SuperBlockService superBlockService;
+    private SegmentAllocatorService segmentAllocatorService;
+
+    @Before
+    public void init() throws IOException {
+        originalFile = File.createTempFile("test", "test");
+        storage = new FileChannelStorage(originalFile);
+        superBlockService = new SuperBlockService(NUM_OF_INODES, SIZE_OF_PAGE, storage);
+        segmentAllocatorService = new SegmentAllocatorService(
+                superBlockService.getSuperBlockOffset(), NUM_OF_PAGES, SIZE_OF_PAGE, storage
+        );
+        originalFile.deleteOnExit();
+    }
+
+    @After
+    public void close() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    public void allocatedPagesAreFoundTest() {
+        BitSet expected = new BitSet();
+        for (int i = 0; i < NUM_OF_FILES; i++) {
+            int segment = segmentAllocatorService.allocateSegments(1 + i % 3);
+            int last = segmentAllocatorService.writeDataToSegment(segment, new byte[SIZE_OF_PAGE * (i % 4)]);
+            int inodeNum = superBlockService.acquireInode(new Inode(segment, 0, FILE, 1, last));
+
+            if (i % 5 == 0) { // released files leave holes
+                segmentAllocatorService.releaseSegment(segment);
+                superBlockService.removeInode(inodeNum);
+            } else {
+                markSequence(segment, expected);
+            }
+        }
+
+        AllocationScanner allocationScanner = new AllocationScanner(
+                superBlockService, storage, superBlockService.getSuperBlockOffset(), SIZE_OF_PAGE, NUM_OF_PAGES
+        );
+        BitSet allocated = allocationScanner.scan(4);
+
+        // pages of last segments after their data are trimmed
+        assertEquals(
+                NUM_OF_PAGES - segmentAllocatorService.getRemainingCapacity(),
+                allocated.cardinality() + allocationScanner.getNumOfTrimmedPages()
+        );
+        assertEquals(expected, allocated);
+    }
+
+    @Test
+    public void tornSequenceIsCutTest() throws IOException {
+        int segment = segmentAllocatorService.allocateSegments(1);
+        int other = segmentAllocatorService.allocateSegments(1);
+        // appends are interleaved, so every of them takes a new segment
+        int last = segment;
+        for (int i = 0; i < 3; i++) {
+            last = segmentAllocatorService.writeDataToSegment(last, new byte[SIZE_OF_PAGE]);
+            segmentAllocatorService.writeDataToSegment(other, new byte[SIZE_OF_PAGE]);
+        }
+        int inodeNum = superBlockService.acquireInode(new Inode(segment, SIZE_OF_PAGE * 3, FILE, 1, last));
+        ExtentMap extentMap = segmentAllocatorService.getExtentMap(segment);
+        assertTrue(extentMap.size() > 2);
+
+        // next segment of the second segment points out of file
+        long nextSegmentOffset = superBlockService.getSuperBlockOffset()
+                + extentMap.getSegment(1) * (long) SIZE_OF_PAGE + 4;
+        storage.write(ByteBuffer.allocate(4).putInt(0, NUM_OF_PAGES + 10), nextSegmentOffset);
+
+        AllocationScanner allocationScanner = new AllocationScanner(
+                superBlockService, storage, superBlockService.getSuperBlockOffset(), SIZE_OF_PAGE, NUM_OF_PAGES
+        );
+        BitSet allocated = allocationScanner.scan(1);
+        assertEquals(1, allocationScanner.getNumOfCutSequences());
+
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 2; i++) {
+            int start = extentMap.getSegment(i);
+            expected.set(start, start + extentMap.getNumOfContinuousBlocks(i));
+        }
+        assertEquals("Segments after torn one aren't marked", expected, allocated);
+
+        Inode inode = superBlockService.readInode(inodeNum);
+        assertEquals(extentMap.getSegment(1), inode.getLastSegment());
+        assertEquals(extentMap.getLogicalStart(2), inode.getSize());
+    }
+
+    @Test
+    public void spareTailOfLastSegmentIsTrimmedTest() throws IOException {
+        // segment is bigger than its data, as if it was preallocated before unclean shutdown
+        int segment = segmentAllocatorService.allocateSegments(4);
+        segmentAllocatorService.writeDataToSegment(segment, new byte[SIZE_OF_PAGE]);
+        superBlockService.acquireInode(new Inode(segment, SIZE_OF_PAGE, FILE, 1));
+
+        AllocationScanner allocationScanner = new AllocationScanner(
+                superBlockService, storage, superBlockService.getSuperBlockOffset(), SIZE_OF_PAGE, NUM_OF_PAGES
+        );
+        BitSet allocated = allocationScanner.scan(1);
+        assertEquals(2, allocationScanner.getNumOfTrimmedPages());
+
+        BitSet expected = new BitSet();
+        expected.set(segment, segment + 2);
+        assertEquals(expected, allocated);
+
+        ByteBuffer metaBytes = ByteBuffer.allocate(SegmentMetaData.getSizeOfStructure());
+        storage.read(metaBytes, superBlockService.getSuperBlockOffset() + segment * (long) SIZE_OF_PAGE);
+        metaBytes.flip();
+        assertEquals(2, SegmentMetaData.fromByteBuffer(metaBytes).getNumsOfContinuousBlocks());
+    }
+
+    /*
+     * Last segment keeps only pages which its data takes.
+     */
+    private void markSequence(int segment, BitSet expected) {
+        ExtentMap extentMap = segmentAllocatorService.getExtentMap(segment);
+        int last = extentMap.size() - 1;
+        for (int i = 0; i < last; i++) {
+            int start = extentMap.getSegment(i);
+            expected.set(start, start + extentMap.getNumOfContinuousBlocks(i));
+        }
+        long occupied = extentMap.getLength() - extentMap.getLogicalStart(last);
+        int usedPages = (int) ((SegmentMetaData.getSizeOfStructure() + occupied + SIZE_OF_PAGE - 1) / SIZE_OF_PAGE);
+        expected.set(extentMap.getSegment(last), extentMap.getSegment(last) + usedPages);
+    }
+}
@@ -0,0 +1,92 @@
+package filesystem.service;
+
+import filesystem.entity.datastorage.Segment;
+import filesystem.storage.FileChannelStorage;
+import filesystem.storage.Storage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FreeSpaceBitmapTest {
+
+    private final static int NUM_OF_PAGES = 100;
+    private final static int OFFSET = 10;
+
+    private File originalFile;
+    private Storage storage;
+
+    @Before
+    public void init() throws IOException {
+        originalFile = File.createTempFile("test", "test");
+        storage = new FileChannelStorage(originalFile);
+        originalFile.deleteOnExit();
+    }
+
+    @After
+    public void close() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    public void allocationStateIsLoadedTest() {
+        FreeSpaceBitmap freeSpaceBitmap = new FreeSpaceBitmap(NUM_OF_PAGES, OFFSET, storage);
+        freeSpaceBitmap.setAllocated(Segment.of(0, 20));
+        freeSpaceBitmap.setAllocated(Segment.of(30, 39));
+        freeSpaceBitmap.setFree(Segment.of(5, 9));
+        freeSpaceBitmap.setAllocated(Segment.of(95, 99));
+
+        FreeSpaceBitmap loaded = new FreeSpaceBitmap(OFFSET, storage);
+        assertEquals(NUM_OF_PAGES, loaded.getNumOfPages());
+        assertTrue(loaded.isAllocated(4));
+        assertFalse(loaded.isAllocated(5));
+
+        List<Segment> freeSegments = loaded.getFreeSegments();
+        assertEquals(3, freeSegments.size());
+        assertSegment(5, 9, freeSegments.get(0));
+        assertSegment(21, 29, freeSegments.get(1));
+        assertSegment(40, 94, freeSegments.get(2));
+    }
+
+    @Test
+    public void cleanFlagAndRebuildTest() {
+        FreeSpaceBitmap freeSpaceBitmap = new FreeSpaceBitmap(NUM_OF_PAGES, OFFSET, storage);
+        freeSpaceBitmap.setAllocated(Segment.of(0, 50));
+        assertFalse("New bitmap isn't clean till close", new FreeSpaceBitmap(OFFSET, storage).isClean());
+
+        BitSet allocated = new BitSet();
+        allocated.set(10, 20);
+        freeSpaceBitmap.rebuild(allocated);
+        freeSpaceBitmap.setClean(true);
+
+        FreeSpaceBitmap loaded = new FreeSpaceBitmap(OFFSET, storage);
+        assertTrue(loaded.isClean());
+        List<Segment> freeSegments = loaded.getFreeSegments();
+        assertEquals(2, freeSegments.size());
+        assertSegment(0, 9, freeSegments.get(0));
+        assertSegment(20, NUM_OF_PAGES - 1, freeSegments.get(1));
+    }
+
+    @Test
+    public void capacityInPagesTest() {
+        int pageSize = 1024;
+        long sizeOfArea = 1024 * 1024;
+        int capacity = FreeSpaceBitmap.getCapacityInPages(sizeOfArea, pageSize);
+
+        assertTrue(FreeSpaceBitmap.getSizeInBytes(capacity) + (long) capacity * pageSize <= sizeOfArea);
+        assertTrue(FreeSpaceBitmap.getSizeInBytes(capacity + 1) + (long) (capacity + 1) * pageSize > sizeOfArea);
+    }
+
+    private static void assertSegment(int start, int end, Segment segment) {
+        assertEquals(start, segment.getStart());
+        assertEquals(end, segment.getEnd());
+    }
+}
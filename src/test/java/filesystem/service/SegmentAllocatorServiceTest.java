@@ -1,11 +1,19 @@
 package filesystem.service;
 
+import filesystem.entity.ByteStream;
+import filesystem.entity.datastorage.ExtentMap;
 import filesystem.entity.datastorage.SegmentMetaData;
 import filesystem.entity.datastorage.SegmentReadResult;
 import filesystem.entity.exception.SegmentAllocatorException;
+import filesystem.service.allocation.AllocationPolicyType;
+import filesystem.storage.AsyncFileChannelStorage;
+import filesystem.storage.FileChannelStorage;
+import filesystem.storage.Storage;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
@@ -27,24 +35,31 @@ public class SegmentAllocatorServiceTest {
 
     private static SegmentAllocatorService segmentAllocatorService;
     private static File originalFile;
+    private static Storage storage;
 
     @Before
     public void init() throws IOException {
         originalFile = File.createTempFile("test", "test");
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
             file.setLength(DEFAULT_SIZE_OF_PAGE * NUM_OF_PAGES);
-            segmentAllocatorService = new SegmentAllocatorService(INITIAL_OFFSET, NUM_OF_PAGES, DEFAULT_SIZE_OF_PAGE, originalFile);
         }
+        storage = new FileChannelStorage(originalFile);
+        segmentAllocatorService = new SegmentAllocatorService(INITIAL_OFFSET, NUM_OF_PAGES, DEFAULT_SIZE_OF_PAGE, storage);
         originalFile.deleteOnExit();
     }
 
+    @After
+    public void close() throws IOException {
+        storage.close();
+    }
+
 
     @Test
     public void allocateSegmentsTest() throws IOException {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
             int toAllocate = 20;
 
-            int segment = segmentAllocatorService.allocateSegments(toAllocate, file);
+            int segment = segmentAllocatorService.allocateSegments(toAllocate);
             assertEquals(NUM_OF_PAGES - toAllocate, segmentAllocatorService.getRemainingCapacity());
 
             file.seek(segmentAllocatorService.getInitialOffset());
@@ -54,7 +69,7 @@ public class SegmentAllocatorServiceTest {
             assertEquals(0, file.readInt());
 
 
-            segmentAllocatorService.writeDataToSegment(segment, new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, file);
+            segmentAllocatorService.writeDataToSegment(segment, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
 
             file.seek(segmentAllocatorService.getInitialOffset() + segment + SegmentMetaData.getSizeOfStructure());
 
@@ -70,7 +85,7 @@ public class SegmentAllocatorServiceTest {
 
             //meta check
 
-            SegmentMetaData meta = readSegmentMetaDataPublicly(segment, file);
+            SegmentMetaData meta = readSegmentMetaDataPublicly(segment);
 
             assertEquals(20, meta.getNumsOfContinuousBlocks());
             assertEquals(8, meta.getOccupied());
@@ -78,28 +93,28 @@ public class SegmentAllocatorServiceTest {
 
             //allocate new data
 
-            segmentAllocatorService.allocateSegments(1, file);
+            segmentAllocatorService.allocateSegments(1);
 
             byte[] ones = new byte[DEFAULT_SIZE_OF_PAGE * 20 - SegmentMetaData.getSizeOfStructure()];
             Arrays.fill(ones, (byte) 1);
             ones[ones.length - 1] = 5;
-            segmentAllocatorService.writeDataToSegment(segment, ones, file);
+            segmentAllocatorService.writeDataToSegment(segment, ones);
 
             //meta check
 
-            meta = readSegmentMetaDataPublicly(segment, file);
+            meta = readSegmentMetaDataPublicly(segment);
 
             assertEquals(20, meta.getNumsOfContinuousBlocks());
             assertEquals(DEFAULT_SIZE_OF_PAGE * 20 - SegmentMetaData.getSizeOfStructure(), meta.getOccupied());
             assertEquals(21, meta.getNextSegment());
 
-            meta = readSegmentMetaDataPublicly(20, file);
+            meta = readSegmentMetaDataPublicly(20);
 
             assertEquals(1, meta.getNumsOfContinuousBlocks());
             assertEquals(0, meta.getOccupied());
             assertEquals(-1, meta.getNextSegment());
 
-            meta = readSegmentMetaDataPublicly(21, file);
+            meta = readSegmentMetaDataPublicly(21);
 
             assertEquals(1, meta.getNumsOfContinuousBlocks());
             assertEquals(8, meta.getOccupied());
@@ -122,7 +137,7 @@ public class SegmentAllocatorServiceTest {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
             int toAllocate = 20;
 
-            int segment = segmentAllocatorService.allocateSegments(toAllocate, file);
+            int segment = segmentAllocatorService.allocateSegments(toAllocate);
             assertEquals(NUM_OF_PAGES - toAllocate, segmentAllocatorService.getRemainingCapacity());
 
             file.seek(segmentAllocatorService.getInitialOffset() + segment);
@@ -131,7 +146,7 @@ public class SegmentAllocatorServiceTest {
             assertEquals(-1, file.readInt());
             assertEquals(0, file.readInt());
 
-            SegmentMetaData metaData = readSegmentMetaDataPublicly(segment, file);
+            SegmentMetaData metaData = readSegmentMetaDataPublicly(segment);
 
             assertEquals(20, metaData.getNumsOfContinuousBlocks());
             assertEquals(0, metaData.getOccupied());
@@ -143,26 +158,26 @@ public class SegmentAllocatorServiceTest {
     public void readDataFromSegmentTest() throws IOException {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
 
-            int segment = segmentAllocatorService.allocateSegments(20, file);
+            int segment = segmentAllocatorService.allocateSegments(20);
 
-            segmentAllocatorService.allocateSegments(2, file);
+            segmentAllocatorService.allocateSegments(2);
 
 
             byte[] ones = new byte[DEFAULT_SIZE_OF_PAGE * 22 - SegmentMetaData.getSizeOfStructure()];
             Arrays.fill(ones, (byte) 1);
             ones[ones.length - 1] = 5;
-            segmentAllocatorService.writeDataToSegment(segment, ones, file);
+            segmentAllocatorService.writeDataToSegment(segment, ones);
 
-            segmentAllocatorService.allocateSegments(2, file);
+            segmentAllocatorService.allocateSegments(2);
 
             byte[] twos = new byte[DEFAULT_SIZE_OF_PAGE * 3 - SegmentMetaData.getSizeOfStructure()];
             Arrays.fill(twos, (byte) 2);
             twos[twos.length - 1] = 6;
-            segmentAllocatorService.writeDataToSegment(segment, twos, file);
+            segmentAllocatorService.writeDataToSegment(segment, twos);
 
-            SegmentReadResult readResult = segmentAllocatorService.readDataFromSegment(segment, file);
-            SegmentReadResult readResult1 = segmentAllocatorService.readDataFromSegment(readResult.getNextSegment(), file);
-            SegmentReadResult readResult2 = segmentAllocatorService.readDataFromSegment(readResult1.getNextSegment(), file);
+            SegmentReadResult readResult = segmentAllocatorService.readDataFromSegment(segment);
+            SegmentReadResult readResult1 = segmentAllocatorService.readDataFromSegment(readResult.getNextSegment());
+            SegmentReadResult readResult2 = segmentAllocatorService.readDataFromSegment(readResult1.getNextSegment());
 
             byte[] actual = new byte[readResult.getArr().length + readResult1.getArr().length + readResult2.getArr().length];
 
@@ -184,10 +199,296 @@ public class SegmentAllocatorServiceTest {
         }
     }
 
+    @Test
+    public void writeDataToFragmentedSegmentsTest() {
+        int first = segmentAllocatorService.allocateSegments(1);
+        segmentAllocatorService.allocateSegments(1); // so that first segment cannot be extended in place
+        int hole = segmentAllocatorService.allocateSegments(3);
+        segmentAllocatorService.allocateSegments(1);
+        int anotherHole = segmentAllocatorService.allocateSegments(4);
+        segmentAllocatorService.allocateSegments(NUM_OF_PAGES - 10);
+
+        segmentAllocatorService.releaseSegment(hole);
+        segmentAllocatorService.releaseSegment(anotherHole);
+
+        byte[] data = new byte[DEFAULT_SIZE_OF_PAGE * 8 - SegmentMetaData.getSizeOfStructure() * 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        int last = segmentAllocatorService.writeDataToSegment(first, data);
+
+        assertEquals("Written to all free pages", 0, segmentAllocatorService.getRemainingCapacity());
+        assertEquals("Bigger hole is taken first", anotherHole, readSegmentMetaDataPublicly(first).getNextSegment());
+        assertEquals("Last segment is returned", hole, last);
+
+        ByteBuffer actual = ByteBuffer.allocate(data.length);
+        int segment = first;
+        while (segment != -1) {
+            SegmentReadResult readResult = segmentAllocatorService.readDataFromSegment(segment);
+            actual.put(readResult.getArr());
+            segment = readResult.getNextSegment();
+        }
+        assertArrayEquals(data, actual.array());
+    }
+
+    @Test
+    public void extentMapIsUpdatedByWritesTest() throws IOException {
+        int first = segmentAllocatorService.allocateSegments(1);
+        segmentAllocatorService.allocateSegments(1); // so that first segment cannot be extended in place
+        int hole = segmentAllocatorService.allocateSegments(3);
+        segmentAllocatorService.allocateSegments(1);
+        int anotherHole = segmentAllocatorService.allocateSegments(4);
+        segmentAllocatorService.allocateSegments(NUM_OF_PAGES - 10);
+
+        segmentAllocatorService.releaseSegment(hole);
+        segmentAllocatorService.releaseSegment(anotherHole);
+
+        byte[] data = new byte[DEFAULT_SIZE_OF_PAGE * 8 - SegmentMetaData.getSizeOfStructure() * 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        int half = data.length / 2;
+        int middle = segmentAllocatorService.writeDataToSegment(first, Arrays.copyOf(data, half));
+
+        ExtentMap extentMap = segmentAllocatorService.getExtentMap(first);
+        int last = segmentAllocatorService.writeDataToSegment(
+                middle, Arrays.copyOfRange(data, half, data.length)
+        );
+        assertEquals(hole, last);
+
+        assertEquals("Map is cached", extentMap, segmentAllocatorService.getExtentMap(first));
+        assertEquals(data.length, extentMap.getLength());
+        assertEquals(3, extentMap.size());
+        for (int i = 0; i < extentMap.size(); i++) {
+            int segment = extentMap.getSegment(i);
+            ByteBuffer metaBytes = ByteBuffer.allocate(SegmentMetaData.getSizeOfStructure());
+            storage.read(metaBytes, segmentAllocatorService.getMetaDataOffset(segment));
+            assertEquals(
+                    SegmentMetaData.fromByteArray(metaBytes.array()).toString(),
+                    extentMap.getMetaData(i).toString()
+            );
+        }
+
+        long position = DEFAULT_SIZE_OF_PAGE * 5 + 7;
+        ByteStream stream = segmentAllocatorService.readDataFromSegmentByByteStream(first, position);
+        for (int i = (int) position; i < data.length; i++) {
+            assertEquals(data[i], stream.getByte());
+        }
+
+        segmentAllocatorService.releaseSegment(first);
+        int reallocated = segmentAllocatorService.allocateSegments(1);
+        assertEquals("Released map isn't cached", 0, segmentAllocatorService.getExtentMap(reallocated).getLength());
+    }
+
+    @Test
+    public void truncateSegmentTest() {
+        int first = segmentAllocatorService.allocateSegments(1);
+        segmentAllocatorService.allocateSegments(1); // so that first segment cannot be extended in place
+        int hole = segmentAllocatorService.allocateSegments(3);
+        segmentAllocatorService.allocateSegments(1);
+        int anotherHole = segmentAllocatorService.allocateSegments(4);
+        segmentAllocatorService.allocateSegments(NUM_OF_PAGES - 10);
+
+        segmentAllocatorService.releaseSegment(hole);
+        segmentAllocatorService.releaseSegment(anotherHole);
+
+        byte[] data = new byte[DEFAULT_SIZE_OF_PAGE * 8 - SegmentMetaData.getSizeOfStructure() * 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        segmentAllocatorService.writeDataToSegment(first, data);
+
+        // cuts in the middle of the second segment, so the third one and unused pages of the second one are released
+        int length = DEFAULT_SIZE_OF_PAGE * 2;
+        assertEquals(anotherHole, segmentAllocatorService.truncateSegment(first, length));
+        assertEquals(5, segmentAllocatorService.getRemainingCapacity());
+        assertEquals(-1, readSegmentMetaDataPublicly(anotherHole).getNextSegment());
+
+        ExtentMap extentMap = segmentAllocatorService.getExtentMap(first);
+        assertEquals(2, extentMap.size());
+        assertEquals(length, extentMap.getLength());
+
+        ByteBuffer actual = ByteBuffer.allocate(length);
+        segmentAllocatorService.readDataFromSegment(first, 0, actual);
+        assertArrayEquals(Arrays.copyOf(data, length), actual.array());
+
+        assertEquals(first, segmentAllocatorService.truncateSegment(first, 0));
+        assertEquals(7, segmentAllocatorService.getRemainingCapacity());
+        assertEquals("Released segments are free again", anotherHole, segmentAllocatorService.allocateSegments(4));
+        assertEquals(hole, segmentAllocatorService.allocateSegments(3));
+    }
+
+    @Test
+    public void extendInPlaceTest() {
+        int first = segmentAllocatorService.allocateSegments(1);
+
+        byte[] data = new byte[DEFAULT_SIZE_OF_PAGE * 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        int last = segmentAllocatorService.writeDataToSegment(first, Arrays.copyOf(data, 100));
+        last = segmentAllocatorService.writeDataToSegment(last, Arrays.copyOfRange(data, 100, data.length));
+
+        assertEquals("Pages after segment are taken by it", first, last);
+        ExtentMap extentMap = segmentAllocatorService.getExtentMap(first);
+        assertEquals(1, extentMap.size());
+        assertEquals(4, extentMap.getNumOfContinuousBlocks(0));
+        assertEquals(4, readSegmentMetaDataPublicly(first).getNumsOfContinuousBlocks());
+        assertEquals(NUM_OF_PAGES - 4, segmentAllocatorService.getRemainingCapacity());
+
+        ByteBuffer actual = ByteBuffer.allocate(data.length);
+        segmentAllocatorService.readDataFromSegment(first, 0, actual);
+        assertArrayEquals(data, actual.array());
+    }
+
+    @Test
+    public void preallocationTest() throws IOException {
+        SegmentAllocatorService preallocatingService = new SegmentAllocatorService(
+                new FreeSpaceBitmap(NUM_OF_PAGES, INITIAL_OFFSET, storage), DEFAULT_SIZE_OF_PAGE, storage,
+                SegmentAllocatorService.DEFAULT_EXTENT_MAP_CACHE_SIZE, AllocationPolicyType.BEST_FIT, 1, 16
+        );
+        int first = preallocatingService.allocateSegments(1);
+        preallocatingService.allocateSegments(1); // so that first segment cannot be extended in place
+
+        byte[] chunk = new byte[DEFAULT_SIZE_OF_PAGE];
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        int last = first;
+        for (int i = 0; i < 10; i++) {
+            Arrays.fill(chunk, (byte) i);
+            last = preallocatingService.writeDataToSegment(last, chunk);
+            expected.write(chunk, 0, chunk.length);
+        }
+
+        // the new segment takes 2 pages and then it is doubled in place: 4, 8, 16 pages
+        ExtentMap extentMap = preallocatingService.getExtentMap(first);
+        assertEquals(2, extentMap.size());
+        assertEquals(16, extentMap.getNumOfContinuousBlocks(1));
+        assertEquals(NUM_OF_PAGES - 18, preallocatingService.getRemainingCapacity());
+
+        preallocatingService.trimPreallocatedSegments();
+        int usedPages = (int) Math.ceil(
+                (SegmentMetaData.getSizeOfStructure() + extentMap.getOccupied(1)) / (double) DEFAULT_SIZE_OF_PAGE
+        );
+        assertEquals(usedPages, extentMap.getNumOfContinuousBlocks(1));
+        assertEquals(NUM_OF_PAGES - 2 - usedPages, preallocatingService.getRemainingCapacity());
+        ByteBuffer metaBytes = ByteBuffer.allocate(SegmentMetaData.getSizeOfStructure());
+        storage.read(metaBytes, preallocatingService.getMetaDataOffset(last));
+        metaBytes.flip();
+        assertEquals(usedPages, SegmentMetaData.fromByteBuffer(metaBytes).getNumsOfContinuousBlocks());
+
+        ByteBuffer actual = ByteBuffer.allocate(expected.size());
+        preallocatingService.readDataFromSegment(first, 0, actual);
+        assertArrayEquals(expected.toByteArray(), actual.array());
+    }
+
+    @Test
+    public void allocateContiguousSegmentTest() {
+        int first = segmentAllocatorService.allocateSegments(1);
+        segmentAllocatorService.allocateSegments(1);
+        int hole = segmentAllocatorService.allocateSegments(3);
+        segmentAllocatorService.allocateSegments(1);
+        segmentAllocatorService.releaseSegment(hole);
+
+        byte[] data = new byte[DEFAULT_SIZE_OF_PAGE * 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        segmentAllocatorService.writeDataToSegment(first, data);
+        assertEquals(2, segmentAllocatorService.countSegments(first));
+        int freePages = segmentAllocatorService.getRemainingCapacity();
+
+        int copy = segmentAllocatorService.allocateContiguousSegment(first);
+        assertEquals(1, segmentAllocatorService.countSegments(copy));
+        assertEquals(4, readSegmentMetaDataPublicly(copy).getNumsOfContinuousBlocks());
+        assertEquals(freePages - 4, segmentAllocatorService.getRemainingCapacity());
+
+        // data is copied by chunks of caller
+        ByteBuffer chunk = ByteBuffer.allocate(DEFAULT_SIZE_OF_PAGE);
+        for (long copied = 0; copied < data.length; copied += chunk.capacity()) {
+            chunk.clear();
+            segmentAllocatorService.readDataFromSegment(first, copied, chunk);
+            chunk.flip();
+            segmentAllocatorService.overwriteDataInSegment(copy, copied, chunk);
+        }
+        ByteBuffer actual = ByteBuffer.allocate(data.length);
+        segmentAllocatorService.readDataFromSegment(copy, 0, actual);
+        assertArrayEquals(data, actual.array());
+        assertEquals("Original sequence isn't changed", 2, segmentAllocatorService.countSegments(first));
+    }
+
+    @Test
+    public void readaheadByteStreamTest() {
+        int first = segmentAllocatorService.allocateSegments(1);
+        int hole = segmentAllocatorService.allocateSegments(7);
+        segmentAllocatorService.allocateSegments(1);
+        segmentAllocatorService.releaseSegment(hole);
+
+        // big fragmented file, so windows are read from many segments
+        byte[] data = new byte[DEFAULT_SIZE_OF_PAGE * (NUM_OF_PAGES - 2) - SegmentMetaData.getSizeOfStructure() * 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        segmentAllocatorService.writeDataToSegment(first, data);
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            ByteStream stream = segmentAllocatorService.readDataFromSegmentByByteStream(first);
+            ByteBuffer actual = ByteBuffer.allocate(data.length);
+            byte[] buffer = new byte[1000];
+            while (stream.hasNext()) {
+                actual.put(buffer, 0, stream.getArr(buffer));
+            }
+            assertArrayEquals(data, actual.array());
+
+            // partially read stream, which has prefetched window
+            try (ByteStream partialStream = segmentAllocatorService.readDataFromSegmentByByteStream(first)) {
+                for (int i = 0; i < DEFAULT_SIZE_OF_PAGE * 3; i++) {
+                    assertEquals(data[i], partialStream.getByte());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void asyncWriteAndReadTest() throws IOException {
+        try (Storage asyncStorage = new AsyncFileChannelStorage(originalFile)) {
+            SegmentAllocatorService asyncService =
+                    new SegmentAllocatorService(INITIAL_OFFSET, NUM_OF_PAGES, DEFAULT_SIZE_OF_PAGE, asyncStorage);
+
+            int first = asyncService.allocateSegments(1);
+            int hole = asyncService.allocateSegments(3);
+            asyncService.allocateSegments(1);
+            asyncService.releaseSegment(hole);
+
+            byte[] data = new byte[DEFAULT_SIZE_OF_PAGE * 10];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i * 7);
+            }
+            int last = asyncService.writeDataToSegmentAsync(first, data, data.length).join();
+            assertEquals(last, asyncService.getExtentMap(first).getSegment(asyncService.getExtentMap(first).size() - 1));
+
+            ByteBuffer whole = ByteBuffer.allocateDirect(data.length);
+            asyncService.readDataFromSegmentAsync(first, 0, whole).join();
+            assertEquals(data.length, whole.position());
+            byte[] actual = new byte[data.length];
+            whole.flip();
+            whole.get(actual);
+            assertArrayEquals(data, actual);
+
+            // the other service doesn't have cached extent map, so it is read asynchronously
+            SegmentAllocatorService anotherService =
+                    new SegmentAllocatorService(INITIAL_OFFSET, NUM_OF_PAGES, DEFAULT_SIZE_OF_PAGE, asyncStorage);
+            ByteBuffer range = ByteBuffer.allocate(DEFAULT_SIZE_OF_PAGE * 5);
+            anotherService.readDataFromSegmentAsync(first, DEFAULT_SIZE_OF_PAGE * 3 + 5, range).join();
+            assertArrayEquals(
+                    Arrays.copyOfRange(data, DEFAULT_SIZE_OF_PAGE * 3 + 5, DEFAULT_SIZE_OF_PAGE * 8 + 5), range.array()
+            );
+        }
+    }
+
     @Test(expected = SegmentAllocatorException.class)
     public void tryAllocateMoreThanPossiblePages() throws IOException {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
-            segmentAllocatorService.allocateSegments(NUM_OF_PAGES + 1, file);
+            segmentAllocatorService.allocateSegments(NUM_OF_PAGES + 1);
         }
     }
 
@@ -196,8 +497,8 @@ public class SegmentAllocatorServiceTest {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
 
             int initialSize = segmentAllocatorService.getRemainingCapacity();
-            int segment = segmentAllocatorService.allocateSegments(NUM_OF_PAGES, file);
-            segmentAllocatorService.releaseSegment(segment, file);
+            int segment = segmentAllocatorService.allocateSegments(NUM_OF_PAGES);
+            segmentAllocatorService.releaseSegment(segment);
             assertEquals("Size should be the same!", initialSize, segmentAllocatorService.getRemainingCapacity());
         }
     }
@@ -212,36 +513,36 @@ public class SegmentAllocatorServiceTest {
             byte[] ones3 = new byte[DEFAULT_SIZE_OF_PAGE * 3 - SegmentMetaData.getSizeOfStructure()];
 
             List<Integer> owners = Arrays.asList(
-                    segmentAllocatorService.allocateSegments(20, file),
-                    segmentAllocatorService.allocateSegments(20, file),
-                    segmentAllocatorService.allocateSegments(20, file));
+                    segmentAllocatorService.allocateSegments(20),
+                    segmentAllocatorService.allocateSegments(20),
+                    segmentAllocatorService.allocateSegments(20));
 
-            segmentAllocatorService.writeDataToSegment(owners.get(0), ones, file);
-            segmentAllocatorService.writeDataToSegment(owners.get(1), ones, file);
-            segmentAllocatorService.writeDataToSegment(owners.get(2), ones, file);
+            segmentAllocatorService.writeDataToSegment(owners.get(0), ones);
+            segmentAllocatorService.writeDataToSegment(owners.get(1), ones);
+            segmentAllocatorService.writeDataToSegment(owners.get(2), ones);
 
             for (int i = 0; i < 10; i++) {
-                segmentAllocatorService.writeDataToSegment(owners.get(0), ones1, file);
-                segmentAllocatorService.writeDataToSegment(owners.get(1), ones2, file);
-                segmentAllocatorService.writeDataToSegment(owners.get(2), ones3, file);
+                segmentAllocatorService.writeDataToSegment(owners.get(0), ones1);
+                segmentAllocatorService.writeDataToSegment(owners.get(1), ones2);
+                segmentAllocatorService.writeDataToSegment(owners.get(2), ones3);
             }
 
-            segmentAllocatorService.releaseSegment(owners.get(0), file);
-            segmentAllocatorService.releaseSegment(owners.get(1), file);
-            segmentAllocatorService.releaseSegment(owners.get(2), file);
+            segmentAllocatorService.releaseSegment(owners.get(0));
+            segmentAllocatorService.releaseSegment(owners.get(1));
+            segmentAllocatorService.releaseSegment(owners.get(2));
 
             assertEquals(NUM_OF_PAGES, segmentAllocatorService.getRemainingCapacity());
         }
     }
 
 
-    private static SegmentMetaData readSegmentMetaDataPublicly(int segment, RandomAccessFile file) {
+    private static SegmentMetaData readSegmentMetaDataPublicly(int segment) {
         try {
             Method method = Arrays.stream(segmentAllocatorService.getClass()
                     .getDeclaredMethods()).filter(it -> it.getName().equals("readSegmentMetaData"))
                     .collect(Collectors.toList()).get(0);
             method.setAccessible(true);
-            Object result = method.invoke(segmentAllocatorService, segment, file);
+            Object result = method.invoke(segmentAllocatorService, segment);
             return (SegmentMetaData) result;
         } catch (IllegalAccessException | InvocationTargetException e) {
             throw new RuntimeException("this is test!", e);
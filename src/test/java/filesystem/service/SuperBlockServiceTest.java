@@ -1,19 +1,26 @@
 package filesystem.service;
 
+import filesystem.entity.ByteStream;
 import filesystem.entity.datastorage.Inode;
 import filesystem.entity.exception.SuperBlockException;
+import filesystem.storage.FileChannelStorage;
+import filesystem.storage.Storage;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.stream.IntStream;
 
 import static filesystem.entity.filesystem.FileType.DIRECTORY;
 import static filesystem.entity.filesystem.FileType.FILE;
-import static filesystem.service.SuperBlockService.getInodeOffsetByIndex;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class SuperBlockServiceTest {
 
@@ -21,6 +28,7 @@ public class SuperBlockServiceTest {
     private static int NUM_OF_INODES = 10;
 
     private File originalFile;
+    private Storage storage;
     private SuperBlockService superBlockService;
 
     @Before
@@ -31,11 +39,17 @@ public class SuperBlockServiceTest {
             file.setLength(DEFAULT_SIZE_OF_PAGE * 20);
         }
 
-        superBlockService = new SuperBlockService(NUM_OF_INODES, DEFAULT_SIZE_OF_PAGE, originalFile);
+        storage = new FileChannelStorage(originalFile);
+        superBlockService = new SuperBlockService(NUM_OF_INODES, DEFAULT_SIZE_OF_PAGE, storage);
 
         originalFile.deleteOnExit();
     }
 
+    @After
+    public void close() throws IOException {
+        storage.close();
+    }
+
     @Test
     public void initialiseSuperBlockTest() throws IOException {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
@@ -43,9 +57,12 @@ public class SuperBlockServiceTest {
             assertEquals("Error of inodeNumInitialisation!", NUM_OF_INODES, superBlockService.getNumOfInodes());
 
             assertEquals("Super block offset after initialisation",
-                    4 + 4 + NUM_OF_INODES * (Inode.getSizeOfStructure() + 1), superBlockService.getSuperBlockOffset());
+                    4 + 4 + 4 + 4 + NUM_OF_INODES * (Inode.getSizeOfStructure() + 1), superBlockService.getSuperBlockOffset());
 
+            assertEquals("Magic of file system", 0x4F4E4546, file.readInt());
+            assertEquals(SuperBlockService.FORMAT_VERSION, file.readInt());
             assertEquals("Inodes should be the same as during initialisation!", NUM_OF_INODES, file.readInt());
+            assertEquals("Inline data is off by default", 0, superBlockService.getInlineDataSize());
 
             /*
              * Inode (in this file system) will look like
@@ -59,7 +76,7 @@ public class SuperBlockServiceTest {
              * ------------------
              */
             for (int i = 0; i < NUM_OF_INODES; i++) {
-                file.seek(4 + i * (Inode.getSizeOfStructure() + 1));
+                file.seek(superBlockService.getInodeOffsetByIndex(i));
 
                 assertEquals("Not used", 0, file.read());
                 assertEquals("Without next segment", -1, file.readInt());
@@ -80,22 +97,22 @@ public class SuperBlockServiceTest {
             Inode inode = new Inode(1, Long.MAX_VALUE, FILE, 1);
 
             for (int i = 0; i < 5; i++) {
-                superBlockService.acquireInode(inode, file);
+                superBlockService.acquireInode(inode);
             }
 
             // --------------------------------------------
 
             // reads it again from file
-            SuperBlockService superBlockServiceFromFile = new SuperBlockService(originalFile);
+            SuperBlockService superBlockServiceFromFile = new SuperBlockService(storage);
 
             assertEquals("numOfInodes", superBlockServiceFromFile.getNumOfInodes(), NUM_OF_INODES);
             assertEquals("pageSize", superBlockServiceFromFile.getPageSize(), DEFAULT_SIZE_OF_PAGE);
 
             // try to allocate new inode
             Inode dummyInode = new Inode(13, 113, FILE, 3, 333);
-            int index = superBlockServiceFromFile.acquireInode(dummyInode, file);
+            int index = superBlockServiceFromFile.acquireInode(dummyInode);
 
-            file.seek(getInodeOffsetByIndex(index));
+            file.seek(superBlockService.getInodeOffsetByIndex(index));
 
             assertEquals("index should be min one", index, 5);
             assertEquals("used", 1, file.read());
@@ -112,8 +129,8 @@ public class SuperBlockServiceTest {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
 
             Inode inode = new Inode(1000, 1001, DIRECTORY, 1002);
-            int index = superBlockService.acquireInode(inode, file);
-            file.seek(getInodeOffsetByIndex(index));
+            int index = superBlockService.acquireInode(inode);
+            file.seek(superBlockService.getInodeOffsetByIndex(index));
 
             // super block should allocate the first free inode (=> with 0 index)
             assertEquals("should be zero as the first inode in the empty super block", 0, index);
@@ -124,10 +141,10 @@ public class SuperBlockServiceTest {
             assertEquals("counter", inode.getCounter(), file.readInt());
 
             Inode inode1 = new Inode(2000, 2001, FILE, 2002);
-            int index1 = superBlockService.acquireInode(inode1, file);
+            int index1 = superBlockService.acquireInode(inode1);
 
             // super block should allocate the first free inode (=> with 1 index)
-            file.seek(getInodeOffsetByIndex(index1));
+            file.seek(superBlockService.getInodeOffsetByIndex(index1));
 
             assertEquals("should be one as the second inode in the empty super block", 1, index1);
             assertEquals("used", 1, file.read());
@@ -137,19 +154,37 @@ public class SuperBlockServiceTest {
             assertEquals("counter", inode1.getCounter(), file.readInt());
 
             // remove allocated inodes and check that them are free now
-            superBlockService.removeInode(1, file);
+            superBlockService.removeInode(1);
 
-            file.seek(getInodeOffsetByIndex(index1));
+            file.seek(superBlockService.getInodeOffsetByIndex(index1));
             assertEquals("Inode should be marked as unused!", 0, file.read());
 
-            superBlockService.removeInode(0, file);
-            file.seek(getInodeOffsetByIndex(index));
+            superBlockService.removeInode(0);
+            file.seek(superBlockService.getInodeOffsetByIndex(index));
             assertEquals("Inode should be marked as unused!", 0, file.read());
 
             assertEquals("All inodes are free!", superBlockService.getNumOfFreeInodes(), superBlockService.getNumOfInodes());
         }
     }
 
+    @Test
+    public void acquireInodeNearGoalTest() {
+        Inode dummyInode = new Inode(1, 11, FILE, 111);
+        assertEquals(5, superBlockService.acquireInode(dummyInode, 5));
+        assertEquals(6, superBlockService.acquireInode(dummyInode, 5));
+        assertEquals("The lowest free inode by default", 0, superBlockService.acquireInode(dummyInode));
+
+        superBlockService.removeInode(5);
+        assertEquals(5, superBlockService.acquireInode(dummyInode, 5));
+
+        // search wraps around the end of inode table
+        for (int i = 7; i < NUM_OF_INODES; i++) {
+            superBlockService.acquireInode(dummyInode, i);
+        }
+        assertEquals(1, superBlockService.acquireInode(dummyInode, NUM_OF_INODES - 1));
+        assertEquals(NUM_OF_INODES - 7, superBlockService.getNumOfFreeInodes());
+    }
+
     @Test
     public void acquireInodeTest() throws IOException {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
@@ -158,7 +193,7 @@ public class SuperBlockServiceTest {
             // allocate inodes
             Inode dummyInode = new Inode(1, 11, FILE, 111);
             for (int i = 0; i < numTakenFirstInodes; i++) {
-                superBlockService.acquireInode(dummyInode, file);
+                superBlockService.acquireInode(dummyInode);
             }
             /*
              * Inode (in this file system) will look like
@@ -173,7 +208,7 @@ public class SuperBlockServiceTest {
              */
             // check that they are represented in memory
             for (int i = 0; i < numTakenFirstInodes; i++) {
-                file.seek(4 + i * (Inode.getSizeOfStructure() + 1));
+                file.seek(superBlockService.getInodeOffsetByIndex(i));
 
                 assertEquals("used", 1, file.read());
                 assertEquals("next segment", dummyInode.getSegment(), file.readInt());
@@ -194,11 +229,11 @@ public class SuperBlockServiceTest {
             int numTakenFirstInodes = NUM_OF_INODES - 3;
 
             for (int i = 0; i < numTakenFirstInodes; i++) {
-                superBlockService.acquireInode(new Inode(i, Integer.MAX_VALUE + i, FILE, i, i - 1), file);
+                superBlockService.acquireInode(new Inode(i, Integer.MAX_VALUE + i, FILE, i, i - 1));
             }
 
             for (int i = 0; i < numTakenFirstInodes; i++) {
-                Inode inode = superBlockService.readInode(i, file);
+                Inode inode = superBlockService.readInode(i);
 
                 assertEquals("next segment", i, inode.getSegment());
                 assertEquals("size", Integer.MAX_VALUE + i, inode.getSize());
@@ -215,14 +250,14 @@ public class SuperBlockServiceTest {
 
             for (int i = 0; i < 5; i++) {
                 Inode inode = new Inode(i, Integer.MAX_VALUE + i, FILE, i);
-                superBlockService.acquireInode(inode, file);
+                superBlockService.acquireInode(inode);
             }
 
 
             Inode updatedInode = new Inode(3333, 33333, DIRECTORY, 33333, 3333333);
-            superBlockService.updateInode(3, updatedInode, file);
+            superBlockService.updateInode(3, updatedInode);
 
-            Inode inode = superBlockService.readInode(3, file);
+            Inode inode = superBlockService.readInode(3);
 
             // didn't want to use equals on all fields (if it is will be generated for another usage then replace it)
             assertEquals("segments should be the same", inode.getSegment(), updatedInode.getSegment());
@@ -233,11 +268,63 @@ public class SuperBlockServiceTest {
         }
     }
 
+    @Test
+    public void asyncUpdateAndReadInodeTest() {
+        for (int i = 0; i < 5; i++) {
+            superBlockService.acquireInode(new Inode(i, i, FILE, i));
+        }
+
+        Inode updatedInode = new Inode(3333, 33333, DIRECTORY, 33333, 3333333);
+        superBlockService.updateInodeAsync(3, updatedInode).join();
+
+        Inode inode = superBlockService.readInodeAsync(3).join();
+        assertEquals("segments should be the same", inode.getSegment(), updatedInode.getSegment());
+        assertEquals("size should be the same", inode.getSize(), updatedInode.getSize());
+        assertEquals("counter should be the same", inode.getCounter(), updatedInode.getCounter());
+        assertEquals("file type should be the same", inode.getFileType(), updatedInode.getFileType());
+        assertEquals("lastSegment type should be the same", inode.getLastSegment(), updatedInode.getLastSegment());
+    }
+
+    @Test
+    public void inlineDataTest() throws IOException {
+        SuperBlockService inlineSuperBlockService = new SuperBlockService(NUM_OF_INODES, DEFAULT_SIZE_OF_PAGE, 16, storage);
+        int index = inlineSuperBlockService.acquireInode(new Inode(Inode.INLINE_SEGMENT, 5, FILE, 1));
+        inlineSuperBlockService.writeInlineData(index, 0, ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}));
+
+        // reads it again from file
+        SuperBlockService superBlockServiceFromFile = new SuperBlockService(storage);
+        ByteBuffer formatVersion = ByteBuffer.allocate(4);
+        storage.read(formatVersion, 4);
+        assertEquals(SuperBlockService.FORMAT_VERSION_WITH_INLINE_DATA, formatVersion.getInt(0));
+        assertEquals(16, superBlockServiceFromFile.getInlineDataSize());
+        assertEquals(DEFAULT_SIZE_OF_PAGE, SuperBlockService.readPageSize(storage));
+        assertEquals(
+                4 + 4 + 4 + 4 + 4 + NUM_OF_INODES * (Inode.getSizeOfStructure() + 1 + 16),
+                superBlockServiceFromFile.getSuperBlockOffset()
+        );
+
+        ByteBuffer data = ByteBuffer.allocate(3);
+        superBlockServiceFromFile.readInlineData(index, 2, data);
+        assertArrayEquals(new byte[]{3, 4, 5}, data.array());
+
+        try (ByteStream stream = superBlockServiceFromFile.readInlineDataByByteStream(index)) {
+            byte[] all = new byte[16];
+            assertEquals("Only data of file is read", 5, stream.getArr(all));
+            assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, Arrays.copyOf(all, 5));
+        }
+    }
+
+    @Test(expected = SuperBlockException.class)
+    public void writeOutOfInlineDataTest() {
+        SuperBlockService inlineSuperBlockService = new SuperBlockService(NUM_OF_INODES, DEFAULT_SIZE_OF_PAGE, 16, storage);
+        inlineSuperBlockService.writeInlineData(0, 10, ByteBuffer.allocate(7));
+    }
+
     @Test(expected = SuperBlockException.class)
     public void readOutOfBoundInodeTest() throws IOException {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
 
-            superBlockService.readInode(NUM_OF_INODES, file);
+            superBlockService.readInode(NUM_OF_INODES);
         }
     }
 
@@ -245,19 +332,30 @@ public class SuperBlockServiceTest {
     public void updateOutOfBoundInodeTest() throws IOException {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
 
-            superBlockService.updateInode(NUM_OF_INODES, new Inode(1, 1, FILE, 1), file);
+            superBlockService.updateInode(NUM_OF_INODES, new Inode(1, 1, FILE, 1));
         }
     }
 
     @Test(expected = SuperBlockException.class)
     public void acquireMoreThanPossibleInodesTest() throws IOException {
         try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
-            IntStream.range(0, NUM_OF_INODES + 1).forEach(it -> superBlockService.acquireInode(new Inode(1, 1, FILE, 1), file));
+            IntStream.range(0, NUM_OF_INODES + 1).forEach(it -> superBlockService.acquireInode(new Inode(1, 1, FILE, 1)));
         }
     }
 
     @Test(expected = SuperBlockException.class)
     public void initialiseSuperBlockWithSmallAmountOfInodesTest() {
-        new SuperBlockService(1, DEFAULT_SIZE_OF_PAGE, originalFile);
+        new SuperBlockService(1, DEFAULT_SIZE_OF_PAGE, storage);
+    }
+
+    @Test(expected = SuperBlockException.class)
+    public void superBlockOfOlderLayoutIsRejectedTest() throws IOException {
+        // older layout starts with numOfInodes and has no free space bitmap
+        ByteBuffer header = ByteBuffer.allocate(4).putInt(NUM_OF_INODES);
+        header.flip();
+        storage.write(header, 0);
+
+        assertFalse(SuperBlockService.isSupportedFormat(storage));
+        new SuperBlockService(storage);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+import filesystem.entity.exception.SegmentAllocatorException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static filesystem.service.allocation.AllocationGroups.NO_GOAL;
+import static filesystem.service.allocation.AllocationPolicyType.BEST_FIT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class AllocationGroupsTest {
+
+    @Test
+    public void pagesAreTakenFromGroupOfGoalTest() {
+        AllocationGroups allocationGroups = new AllocationGroups(100, 4, BEST_FIT);
+        allocationGroups.release(Segment.of(0, 99)); // released by groups
+
+        List<Segment> segments = allocationGroups.allocate(5, 60);
+        assertEquals(1, segments.size());
+        assertEquals(2, allocationGroups.getGroupOfPage(segments.get(0).getStart()));
+
+        // group of goal is full, so the next one is used
+        allocationGroups.allocate(20, 60);
+        assertEquals(3, allocationGroups.getGroupOfPage(allocationGroups.allocate(5, 60).get(0).getStart()));
+        assertEquals(70, allocationGroups.getFreePages());
+    }
+
+    @Test
+    public void pagesAreTakenFromAllGroupsTest() {
+        AllocationGroups allocationGroups = new AllocationGroups(100, 4, BEST_FIT);
+        allocationGroups.release(Segment.of(0, 99));
+
+        List<Segment> segments = allocationGroups.allocate(60, 0);
+        assertEquals(60, segments.stream().mapToInt(Segment::getSize).sum());
+        assertEquals(40, allocationGroups.getFreePages());
+    }
+
+    @Test
+    public void pagesAreTakenNearGoalTest() {
+        AllocationGroups allocationGroups = new AllocationGroups(100, 4, BEST_FIT);
+        allocationGroups.release(Segment.of(0, 99));
+        allocationGroups.allocate(10, 50); // [50..59]
+
+        Segment segment = allocationGroups.allocateNear(55, 5);
+        assertEquals(60, segment.getStart());
+        assertNull("Group of goal doesn't have so many pages after goal", allocationGroups.allocateNear(55, 16));
+    }
+
+    @Test
+    public void freestGroupTest() {
+        AllocationGroups allocationGroups = new AllocationGroups(100, 4, BEST_FIT);
+        allocationGroups.release(Segment.of(0, 99));
+        assertEquals(0, allocationGroups.getFirstPageOfFreestGroup());
+
+        allocationGroups.allocate(1, 0);
+        assertEquals(25, allocationGroups.getFirstPageOfFreestGroup());
+        allocationGroups.allocate(1, 25);
+        allocationGroups.allocate(1, 50);
+        assertEquals(75, allocationGroups.getFirstPageOfFreestGroup());
+    }
+
+    @Test(expected = SegmentAllocatorException.class)
+    public void allocateMoreThanFreeTest() {
+        AllocationGroups allocationGroups = new AllocationGroups(100, 4, BEST_FIT);
+        allocationGroups.release(Segment.of(0, 49));
+
+        try {
+            allocationGroups.allocate(51, NO_GOAL);
+        } finally {
+            assertEquals("Taken pages are returned", 50, allocationGroups.getFreePages());
+        }
+    }
+
+    @Test
+    public void concurrentAllocationsDontOverlapTest() throws Exception {
+        int numOfPages = 40000;
+        AllocationGroups allocationGroups = new AllocationGroups(numOfPages, 8, BEST_FIT);
+        allocationGroups.release(Segment.of(0, numOfPages - 1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<Segment>>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                List<Segment> taken = new ArrayList<>();
+                for (int j = 0; j < 1000; j++) {
+                    taken.addAll(allocationGroups.allocate(1 + j % 9, NO_GOAL));
+                    if (j % 3 == 0) {
+                        allocationGroups.release(taken.remove(taken.size() - 1));
+                    }
+                }
+                return taken;
+            }));
+        }
+
+        BitSet allocated = new BitSet();
+        int allocatedPages = 0;
+        for (Future<List<Segment>> future : futures) {
+            for (Segment segment : future.get()) {
+                BitSet overlap = allocated.get(segment.getStart(), segment.getEnd() + 1);
+                assertFalse("Pages are allocated twice", overlap.cardinality() > 0);
+                allocated.set(segment.getStart(), segment.getEnd() + 1);
+                allocatedPages += segment.getSize();
+            }
+        }
+        executor.shutdown();
+        assertEquals(numOfPages - allocatedPages, allocationGroups.getFreePages());
+    }
+}
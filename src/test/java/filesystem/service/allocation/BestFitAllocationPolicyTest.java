@@ -0,0 +1,63 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BestFitAllocationPolicyTest {
+
+    @Test
+    public void theSmallestFittingSegmentIsTakenTest() {
+        AllocationPolicy policy = new BestFitAllocationPolicy();
+        policy.release(Segment.of(0, 9));
+        policy.release(Segment.of(20, 22));
+        policy.release(Segment.of(30, 33));
+        policy.release(Segment.of(40, 42)); // the same size as another segment
+
+        assertEquals(20, policy.allocate(3).get(0).getStart());
+        assertEquals(40, policy.allocate(3).get(0).getStart());
+
+        // nothing fits, so the biggest segments are taken
+        List<Segment> segments = policy.allocate(12);
+        assertEquals(2, segments.size());
+        assertEquals(0, segments.get(0).getStart());
+        assertEquals(30, segments.get(1).getStart());
+        assertEquals(2, policy.getFreePages());
+    }
+
+    @Test
+    public void contiguousSegmentIsTakenOnlyIfItFitsTest() {
+        AllocationPolicy policy = new BestFitAllocationPolicy();
+        policy.release(Segment.of(0, 3));
+        policy.release(Segment.of(10, 17));
+
+        assertNull(policy.allocateContiguous(9));
+        assertEquals(12, policy.getFreePages());
+
+        Segment segment = policy.allocateContiguous(5);
+        assertEquals(10, segment.getStart());
+        assertEquals(5, segment.getSize());
+        assertEquals(7, policy.getFreePages());
+    }
+
+    @Test
+    public void pagesAreTakenFromGivenPositionTest() {
+        AllocationPolicy policy = new BestFitAllocationPolicy();
+        policy.release(Segment.of(10, 19));
+
+        assertNull(policy.allocateAt(5, 2));
+        Segment segment = policy.allocateAt(12, 3);
+        assertEquals(12, segment.getStart());
+        assertEquals(14, segment.getEnd());
+
+        // only pages till the end of free segment are taken
+        assertEquals(19, policy.allocateAt(17, 5).getEnd());
+        assertEquals(10, policy.allocateContiguous(2).getStart());
+        assertEquals(15, policy.allocateContiguous(2).getStart());
+        assertEquals(0, policy.getFreePages());
+    }
+}
@@ -0,0 +1,96 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+import filesystem.entity.exception.SegmentAllocatorException;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BuddyAllocationPolicyTest {
+
+    @Test
+    public void blocksAreSplitAndMergedTest() {
+        AllocationPolicy policy = new BuddyAllocationPolicy();
+        policy.release(Segment.of(0, 15));
+
+        Segment one = policy.allocate(1).get(0);
+        Segment three = policy.allocate(3).get(0);
+        Segment another = policy.allocate(1).get(0);
+        assertSegment(0, 0, one);
+        assertSegment(4, 7, three); // rounded up to power of two
+        assertSegment(1, 1, another); // buddy of the first block
+        assertEquals(10, policy.getFreePages());
+
+        policy.release(one);
+        policy.release(another);
+        policy.release(three);
+        assertEquals(16, policy.getFreePages());
+        assertSegment(0, 15, policy.allocate(16).get(0));
+    }
+
+    @Test
+    public void contiguousBlockIsSplitTest() {
+        AllocationPolicy policy = new BuddyAllocationPolicy();
+        policy.release(Segment.of(0, 7));
+        policy.release(Segment.of(9, 9));
+
+        assertNull("There isn't free block of 16 pages", policy.allocateContiguous(9));
+        assertSegment(0, 3, policy.allocateContiguous(3));
+        assertSegment(9, 9, policy.allocateContiguous(1)); // block of needed order is preferred to split one
+        assertEquals(4, policy.getFreePages());
+    }
+
+    @Test
+    public void pagesAreTakenFromGivenPositionTest() {
+        AllocationPolicy policy = new BuddyAllocationPolicy();
+        policy.release(Segment.of(0, 15));
+        policy.allocateContiguous(1); // [0]
+
+        assertNull("Page isn't free", policy.allocateAt(0, 1));
+        // run crosses blocks [1], [2..3], [4..7]
+        assertSegment(1, 5, policy.allocateAt(1, 5));
+        assertEquals(10, policy.getFreePages());
+        assertSegment(6, 7, policy.allocateContiguous(2));
+        assertSegment(8, 15, policy.allocateContiguous(8));
+    }
+
+    @Test
+    public void nearestBlockIsTakenTest() {
+        AllocationPolicy policy = new BuddyAllocationPolicy();
+        policy.release(Segment.of(0, 31));
+        policy.allocateAt(16, 4); // [16..19]
+
+        assertSegment(20, 21, policy.allocateNear(17, 2));
+        assertSegment(24, 27, policy.allocateNear(21, 3));
+        assertNull(policy.allocateNear(1, 32));
+        assertEquals(22, policy.getFreePages());
+    }
+
+    @Test
+    public void unalignedRunIsReleasedByAlignedBlocksTest() {
+        AllocationPolicy policy = new BuddyAllocationPolicy();
+        policy.release(Segment.of(3, 12));
+        assertEquals(10, policy.getFreePages());
+
+        // [3], [4..7], [8..11], [12]: the biggest block has 4 pages
+        List<Segment> segments = policy.allocate(10);
+        assertEquals(4, segments.size());
+        assertEquals(10, segments.stream().mapToInt(Segment::getSize).sum());
+        assertEquals(0, policy.getFreePages());
+    }
+
+    @Test(expected = SegmentAllocatorException.class)
+    public void allocateMoreThanFreeTest() {
+        AllocationPolicy policy = new BuddyAllocationPolicy();
+        policy.release(Segment.of(0, 6));
+        policy.allocate(8);
+    }
+
+    private static void assertSegment(int start, int end, Segment segment) {
+        assertEquals(start, segment.getStart());
+        assertEquals(end, segment.getEnd());
+    }
+}
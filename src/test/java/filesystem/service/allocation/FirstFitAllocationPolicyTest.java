@@ -0,0 +1,55 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FirstFitAllocationPolicyTest {
+
+    @Test
+    public void theFirstFittingSegmentIsTakenTest() {
+        AllocationPolicy policy = new FirstFitAllocationPolicy();
+        policy.release(Segment.of(0, 1));
+        policy.release(Segment.of(5, 7));
+        policy.release(Segment.of(10, 30));
+
+        assertEquals(5, policy.allocate(3).get(0).getStart());
+        assertEquals(0, policy.allocate(1).get(0).getStart());
+
+        // nothing fits, so segments are taken by position
+        List<Segment> segments = policy.allocate(22);
+        assertEquals(2, segments.size());
+        assertEquals(1, segments.get(0).getStart());
+        assertEquals(10, segments.get(1).getStart());
+        assertEquals(0, policy.getFreePages());
+    }
+
+    @Test
+    public void theFirstFittingSegmentFromGoalIsTakenTest() {
+        AllocationPolicy policy = new FirstFitAllocationPolicy();
+        policy.release(Segment.of(0, 9));
+        policy.release(Segment.of(20, 21));
+        policy.release(Segment.of(30, 39));
+
+        assertEquals(30, policy.allocateNear(15, 3).getStart());
+        assertEquals("Segment with goal is taken from its start", 0, policy.allocateNear(5, 3).getStart());
+        assertNull(policy.allocateNear(25, 10));
+        assertEquals(16, policy.getFreePages());
+    }
+
+    @Test
+    public void releasedSegmentsAreMergedTest() {
+        AllocationPolicy policy = new FirstFitAllocationPolicy();
+        policy.release(Segment.of(0, 2));
+        policy.release(Segment.of(6, 9));
+        policy.release(Segment.of(3, 5));
+
+        List<Segment> segments = policy.allocate(10);
+        assertEquals(1, segments.size());
+        assertEquals(0, segments.get(0).getStart());
+    }
+}
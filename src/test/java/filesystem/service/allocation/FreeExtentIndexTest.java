@@ -0,0 +1,34 @@
+package filesystem.service.allocation;
+
+import filesystem.entity.datastorage.Segment;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FreeExtentIndexTest {
+
+    @Test
+    public void segmentsOfTheSameSizeAreKeptTest() {
+        FreeExtentIndex index = new FreeExtentIndex();
+        index.add(Segment.of(30, 33));
+        index.add(Segment.of(10, 13));
+        index.add(Segment.of(20, 29));
+        assertEquals(3, index.size());
+
+        assertEquals(10, index.ceilingBySize(4).getStart());
+        assertEquals(20, index.ceilingBySize(5).getStart());
+        assertEquals(20, index.biggest().getStart());
+        assertNull(index.ceilingBySize(11));
+
+        index.remove(Segment.of(10, 13));
+        assertEquals(30, index.ceilingBySize(4).getStart());
+
+        Segment left = index.floorByStart(25);
+        assertEquals(20, left.getStart());
+        assertEquals(29, left.getEnd());
+        assertEquals(30, index.ceilingByStart(21).getStart());
+        assertNull(index.floorByStart(19));
+        assertNull(index.ceilingByStart(31));
+    }
+}
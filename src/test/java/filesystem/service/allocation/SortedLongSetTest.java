@@ -0,0 +1,46 @@
+package filesystem.service.allocation;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static filesystem.service.allocation.SortedLongSet.NONE;
+import static org.junit.Assert.assertEquals;
+
+public class SortedLongSetTest {
+
+    @Test
+    public void behavesAsTreeSetTest() {
+        Random random = new Random(42);
+        SortedLongSet set = new SortedLongSet();
+        TreeSet<Long> expected = new TreeSet<>();
+
+        // enough values to split and remove blocks
+        for (int i = 0; i < 20000; i++) {
+            long value = random.nextInt(10000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+
+            long probe = random.nextInt(10000);
+            assertEquals(orNone(expected.ceiling(probe)), set.ceiling(probe));
+            assertEquals(orNone(expected.floor(probe)), set.floor(probe));
+        }
+        assertEquals(expected.size(), set.size());
+        assertEquals((long) expected.first(), set.first());
+        assertEquals((long) expected.last(), set.last());
+
+        for (long value : new TreeSet<>(expected)) {
+            set.remove(value);
+        }
+        assertEquals(0, set.size());
+        assertEquals(NONE, set.ceiling(0));
+    }
+
+    private static long orNone(Long value) {
+        return value == null ? NONE : value;
+    }
+}
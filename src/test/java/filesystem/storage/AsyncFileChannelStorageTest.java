@@ -0,0 +1,89 @@
+package filesystem.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncFileChannelStorageTest {
+
+    private final static int SIZE_OF_PAGE = 4096;
+    private final static int NUM_OF_PAGES = 64;
+
+    private File originalFile;
+    private Storage storage;
+
+    @Before
+    public void init() throws IOException {
+        originalFile = File.createTempFile("test", "test");
+        try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
+            file.setLength(SIZE_OF_PAGE * NUM_OF_PAGES);
+        }
+        storage = new AsyncFileChannelStorage(originalFile);
+        originalFile.deleteOnExit();
+    }
+
+    @After
+    public void close() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    public void manyOutstandingReadsAndWritesTest() {
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < NUM_OF_PAGES; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(SIZE_OF_PAGE);
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) i);
+            }
+            buffer.flip();
+            writes.add(storage.writeAsync(buffer, i * (long) SIZE_OF_PAGE));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        List<CompletableFuture<Void>> reads = new ArrayList<>();
+        for (int i = 0; i < NUM_OF_PAGES; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(SIZE_OF_PAGE);
+            buffers.add(buffer);
+            reads.add(storage.readAsync(buffer, i * (long) SIZE_OF_PAGE));
+        }
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).join();
+
+        for (int i = 0; i < NUM_OF_PAGES; i++) {
+            ByteBuffer buffer = buffers.get(i);
+            assertEquals("Page should be read fully", SIZE_OF_PAGE, buffer.position());
+            assertEquals("Each write has its own page", (byte) i, buffer.get(0));
+            assertEquals("Each write has its own page", (byte) i, buffer.get(SIZE_OF_PAGE - 1));
+        }
+    }
+
+    @Test
+    public void asyncReadAfterEndOfFileTest() throws IOException {
+        CompletableFuture<Void> read = storage.readAsync(ByteBuffer.allocate(2), storage.size() - 1);
+        try {
+            read.join();
+            fail("Read should fail");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof EOFException);
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void readAfterEndOfFileTest() throws IOException {
+        storage.read(ByteBuffer.allocate(2), storage.size() - 1);
+    }
+}
@@ -0,0 +1,70 @@
+package filesystem.storage;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest {
+
+    private final static int SIZE_OF_PAGE = 4096;
+
+    @Test
+    public void releasedBufferIsReusedTest() {
+        BufferPool bufferPool = new BufferPool(SIZE_OF_PAGE, 2);
+
+        ByteBuffer buffer = bufferPool.acquire();
+        assertTrue(buffer.isDirect());
+        buffer.putInt(42);
+        bufferPool.release(buffer);
+
+        ByteBuffer reused = bufferPool.acquire(12);
+        assertSame(buffer, reused);
+        assertEquals("Buffer is cleared", 0, reused.position());
+        assertEquals(12, reused.limit());
+        assertEquals(1, bufferPool.getAllocatedCount());
+    }
+
+    @Test
+    public void poolKeepsLimitedNumOfBuffersTest() {
+        BufferPool bufferPool = new BufferPool(SIZE_OF_PAGE, 2);
+
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = bufferPool.acquire();
+        }
+        for (ByteBuffer buffer : buffers) {
+            bufferPool.release(buffer);
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = bufferPool.acquire();
+        }
+
+        assertEquals("Only two buffers were kept", 6, bufferPool.getAllocatedCount());
+    }
+
+    @Test
+    public void heapBuffersAreReusedTest() {
+        BufferPool bufferPool = new BufferPool(SIZE_OF_PAGE, 2, false);
+
+        ByteBuffer buffer = bufferPool.acquire();
+        assertTrue(buffer.hasArray());
+        bufferPool.release(buffer);
+
+        assertSame(buffer, bufferPool.acquire());
+        assertEquals(1, bufferPool.getAllocatedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void releaseOfForeignBufferTest() {
+        new BufferPool(SIZE_OF_PAGE).release(ByteBuffer.allocate(SIZE_OF_PAGE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void acquireOfTooBigBufferTest() {
+        new BufferPool(SIZE_OF_PAGE).acquire(SIZE_OF_PAGE + 1);
+    }
+}
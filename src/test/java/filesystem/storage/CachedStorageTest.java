@@ -0,0 +1,130 @@
+package filesystem.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CachedStorageTest {
+
+    private final static int SIZE_OF_PAGE = 1024;
+    private final static int NUM_OF_PAGES = 64;
+    private final static int PAGES_IN_CACHE = 8;
+
+    private File originalFile;
+    private Storage fileStorage;
+    private CachedStorage storage;
+
+    @Before
+    public void init() throws IOException {
+        originalFile = File.createTempFile("test", "test");
+        try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
+            file.setLength(SIZE_OF_PAGE * NUM_OF_PAGES);
+        }
+        fileStorage = new FileChannelStorage(originalFile);
+        storage = new CachedStorage(fileStorage, SIZE_OF_PAGE, SIZE_OF_PAGE * PAGES_IN_CACHE, 0);
+        originalFile.deleteOnExit();
+    }
+
+    @After
+    public void close() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    public void repeatedReadsAreServedByCacheTest() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE_OF_PAGE);
+        for (int i = 0; i < PAGES_IN_CACHE; i++) {
+            buffer.clear();
+            storage.read(buffer, i * SIZE_OF_PAGE);
+        }
+        assertEquals(PAGES_IN_CACHE, storage.getMissCount());
+
+        for (int i = 0; i < PAGES_IN_CACHE; i++) {
+            buffer.clear();
+            storage.read(buffer, i * SIZE_OF_PAGE);
+        }
+        assertEquals(PAGES_IN_CACHE, storage.getMissCount());
+        assertEquals(PAGES_IN_CACHE, storage.getHitCount());
+    }
+
+    @Test
+    public void evictedDirtyPagesAreWrittenBackTest() throws IOException {
+        // touches more pages than cache can hold, so most of them are evicted
+        for (int i = 0; i < NUM_OF_PAGES; i++) {
+            storage.write(ByteBuffer.allocate(4).putInt(0, i), i * SIZE_OF_PAGE + 10);
+        }
+
+        for (int i = 0; i < NUM_OF_PAGES; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            storage.read(buffer, i * SIZE_OF_PAGE + 10);
+            assertEquals(i, buffer.getInt(0));
+        }
+    }
+
+    @Test
+    public void flushWritesDirtyPagesToFileTest() throws IOException {
+        storage.write(ByteBuffer.allocate(4).putInt(0, 42), SIZE_OF_PAGE * 3 - 2);
+
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        fileStorage.read(buffer, SIZE_OF_PAGE * 3 - 2);
+        assertEquals("Write is kept in cache", 0, buffer.getInt(0));
+
+        storage.flush();
+
+        buffer.clear();
+        fileStorage.read(buffer, SIZE_OF_PAGE * 3 - 2);
+        assertEquals(42, buffer.getInt(0));
+    }
+
+    @Test
+    public void writeBehindEndOfFileTest() throws IOException {
+        long position = SIZE_OF_PAGE * NUM_OF_PAGES + 100;
+        storage.write(ByteBuffer.allocate(4).putInt(0, 7), position);
+        assertEquals(position + 4, storage.size());
+
+        storage.force();
+        assertEquals(position + 4, fileStorage.size());
+
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        fileStorage.read(buffer, position);
+        assertEquals(7, buffer.getInt(0));
+    }
+
+    @Test
+    public void partialWriteToNewPageDoesNotExposeEvictedPageTest() throws IOException {
+        ByteBuffer page = ByteBuffer.allocate(SIZE_OF_PAGE);
+        Arrays.fill(page.array(), (byte) 1);
+        for (int i = 0; i < PAGES_IN_CACHE; i++) {
+            page.clear();
+            storage.write(page, i * SIZE_OF_PAGE);
+        }
+
+        // page behind end of file takes data array of evicted one
+        long pageStart = SIZE_OF_PAGE * NUM_OF_PAGES;
+        storage.write(ByteBuffer.allocate(4).putInt(0, 7), pageStart + 100);
+
+        ByteBuffer buffer = ByteBuffer.allocate(100);
+        storage.read(buffer, pageStart);
+        assertArrayEquals(new byte[100], buffer.array());
+
+        storage.force();
+        buffer.clear();
+        fileStorage.read(buffer, pageStart);
+        assertArrayEquals(new byte[100], buffer.array());
+    }
+
+    @Test(expected = EOFException.class)
+    public void readAfterEndOfFileTest() throws IOException {
+        storage.read(ByteBuffer.allocate(10), SIZE_OF_PAGE * NUM_OF_PAGES - 5);
+    }
+}
@@ -0,0 +1,88 @@
+package filesystem.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileChannelStorageTest {
+
+    private final static int SIZE_OF_PAGE = 4096;
+    private final static int NUM_OF_PAGES = 64;
+
+    private File originalFile;
+    private Storage storage;
+
+    @Before
+    public void init() throws IOException {
+        originalFile = File.createTempFile("test", "test");
+        try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
+            file.setLength(SIZE_OF_PAGE * NUM_OF_PAGES);
+        }
+        storage = new FileChannelStorage(originalFile);
+        originalFile.deleteOnExit();
+    }
+
+    @After
+    public void close() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    public void concurrentPositionalReadAndWriteTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < NUM_OF_PAGES; i++) {
+                int page = i;
+                writes.add(executor.submit(() -> {
+                    ByteBuffer buffer = ByteBuffer.allocate(SIZE_OF_PAGE);
+                    while (buffer.hasRemaining()) {
+                        buffer.put((byte) page);
+                    }
+                    buffer.flip();
+                    storage.write(buffer, page * (long) SIZE_OF_PAGE);
+                    return null;
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+
+            List<Future<ByteBuffer>> reads = new ArrayList<>();
+            for (int i = 0; i < NUM_OF_PAGES; i++) {
+                int page = i;
+                reads.add(executor.submit(() -> {
+                    ByteBuffer buffer = ByteBuffer.allocate(SIZE_OF_PAGE);
+                    storage.read(buffer, page * (long) SIZE_OF_PAGE);
+                    return buffer;
+                }));
+            }
+            for (int i = 0; i < NUM_OF_PAGES; i++) {
+                ByteBuffer buffer = reads.get(i).get();
+                assertEquals("Page should be read fully", SIZE_OF_PAGE, buffer.position());
+                assertEquals("Each thread writes its own page", (byte) i, buffer.get(0));
+                assertEquals("Each thread writes its own page", (byte) i, buffer.get(SIZE_OF_PAGE - 1));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void readAfterEndOfFileTest() throws IOException {
+        storage.read(ByteBuffer.allocate(2), storage.size() - 1);
+    }
+}
@@ -0,0 +1,77 @@
+package filesystem.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MappedStorageTest {
+
+    private final static int WINDOW_SIZE = 1000;
+    private final static int FILE_SIZE = WINDOW_SIZE * 10 + 123;
+
+    private File originalFile;
+    private Storage storage;
+
+    @Before
+    public void init() throws IOException {
+        originalFile = File.createTempFile("test", "test");
+        try (RandomAccessFile file = new RandomAccessFile(originalFile, "rw")) {
+            file.setLength(FILE_SIZE);
+        }
+        storage = new MappedStorage(originalFile, WINDOW_SIZE);
+        originalFile.deleteOnExit();
+    }
+
+    @After
+    public void close() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    public void readAndWriteAcrossWindowsTest() throws IOException {
+        byte[] data = new byte[WINDOW_SIZE * 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        long position = WINDOW_SIZE / 2;
+        storage.write(ByteBuffer.wrap(data), position);
+
+        byte[] read = new byte[data.length];
+        storage.read(ByteBuffer.wrap(read), position);
+        assertArrayEquals("Data should be the same across windows", data, read);
+
+        storage.force();
+        try (RandomAccessFile file = new RandomAccessFile(originalFile, "r")) {
+            byte[] fromFile = new byte[data.length];
+            file.seek(position);
+            file.readFully(fromFile);
+            assertArrayEquals("Data should be in the file", data, fromFile);
+        }
+    }
+
+    @Test
+    public void writeToTheLastWindowTest() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(4).putInt(12345);
+        data.flip();
+        storage.write(data, FILE_SIZE - 4);
+
+        ByteBuffer read = ByteBuffer.allocate(4);
+        storage.read(read, FILE_SIZE - 4);
+        assertEquals(12345, read.getInt(0));
+        assertEquals("File shouldn't be enlarged", FILE_SIZE, storage.size());
+    }
+
+    @Test(expected = EOFException.class)
+    public void readAfterEndOfFileTest() throws IOException {
+        storage.read(ByteBuffer.allocate(2), FILE_SIZE - 1);
+    }
+}